@@ -0,0 +1,62 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+/**
+ * Measures the construction of {@link ConfigurationService}, both when the parsed {@code srcdeps.yaml} can be
+ * reused and when it has to be parsed anew because the file has changed.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigurationServiceBenchmark {
+    private Path dir;
+    private long modification;
+
+    @Param({ "10", "100" })
+    public int repositories;
+
+    private Path srcdepsYaml;
+
+    @Benchmark
+    public ConfigurationService cached() {
+        return new ConfigurationService(srcdepsYaml);
+    }
+
+    @Benchmark
+    public ConfigurationService changed() throws IOException {
+        /* a different mtime invalidates the cached configuration */
+        Files.setLastModifiedTime(srcdepsYaml, FileTime.fromMillis(++modification * 1000L));
+        return new ConfigurationService(srcdepsYaml);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("srcdeps-jmh-config");
+        srcdepsYaml = dir.resolve("srcdeps.yaml");
+        SyntheticConfigurations.write(srcdepsYaml, repositories);
+        modification = Files.getLastModifiedTime(srcdepsYaml).toMillis() / 1000L;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SrcdepsCoreUtils.deleteDirectory(dir);
+    }
+}
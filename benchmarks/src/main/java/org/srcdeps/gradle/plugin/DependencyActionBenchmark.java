@@ -0,0 +1,138 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sisu.space.BeanScanning;
+import org.gradle.api.artifacts.DependencyResolveDetails;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.srcdeps.core.Gavtc;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+import org.srcdeps.gradle.plugin.SrcdepsResolver.DependencyAction;
+
+/**
+ * Measures {@code SrcdepsResolver.DependencyAction.execute()}, i.e. the per dependency edge overhead the plugin adds
+ * to Gradle's dependency resolution, for a regular dependency and for a source dependency already available in the
+ * Local Maven Repository.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DependencyActionBenchmark {
+
+    /**
+     * A minimal {@link DependencyResolveDetails} that does not allow any changes.
+     */
+    static class Details implements DependencyResolveDetails, ModuleVersionSelector {
+        private final String group;
+        private final String name;
+        private final String version;
+
+        Details(String group, String name, String version) {
+            super();
+            this.group = group;
+            this.name = name;
+            this.version = version;
+        }
+
+        @Override
+        public String getGroup() {
+            return group;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public ModuleVersionSelector getRequested() {
+            return this;
+        }
+
+        @Override
+        public ModuleVersionSelector getTarget() {
+            return this;
+        }
+
+        @Override
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public boolean matchesStrictly(ModuleVersionIdentifier identifier) {
+            return group.equals(identifier.getGroup()) && name.equals(identifier.getName())
+                    && version.equals(identifier.getVersion());
+        }
+
+        @Override
+        public void useTarget(Object notation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void useVersion(String version) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final int REPOSITORIES = 100;
+
+    private DependencyAction action;
+    private Path dir;
+    private Details regular;
+    private SrcdepsService srcdepsService;
+    private Details source;
+
+    @Benchmark
+    public void regular() {
+        action.execute(regular);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("srcdeps-jmh-action");
+        final Path srcdepsYaml = dir.resolve("srcdeps.yaml");
+        SyntheticConfigurations.write(srcdepsYaml, REPOSITORIES);
+
+        final String groupId = SyntheticConfigurations.groupId(REPOSITORIES / 2);
+        final String version = "1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567";
+        final MavenLocalRepository localRepository = new MavenLocalRepository(dir.resolve("repository"));
+        final Path jar = localRepository.resolve(new Gavtc(groupId, "artifact", version, "jar"));
+        Files.createDirectories(jar.getParent());
+        Files.write(jar, new byte[0]);
+
+        srcdepsService = Wiring
+                .createInjector(srcdepsYaml, localRepository, dir.resolve("srcdeps"), BeanScanning.INDEX)
+                .getInstance(SrcdepsService.class);
+        action = new DependencyAction(srcdepsService);
+        regular = new Details("org.example.regular", "artifact", "1.0");
+        source = new Details(groupId, "artifact", version);
+    }
+
+    @Benchmark
+    public void source() {
+        action.execute(source);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        srcdepsService.buildFinished();
+        SrcdepsCoreUtils.deleteDirectory(dir);
+    }
+}
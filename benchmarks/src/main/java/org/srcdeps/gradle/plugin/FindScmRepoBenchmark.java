@@ -0,0 +1,79 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.srcdeps.core.config.ScmRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+/**
+ * Measures the lookup of the {@link ScmRepository} of a source dependency as done by {@code SrcdepsService}
+ * through the {@link ScmRepositoryIndex}, with the linear search through all repositories as a baseline.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FindScmRepoBenchmark {
+    private static final String VERSION = "1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567";
+
+    private Path dir;
+    private String firstGroupId;
+    private ScmRepositoryIndex index;
+    private String lastGroupId;
+
+    @Param({ "10", "100", "1000" })
+    public int repositories;
+
+    private List<ScmRepository> repositoryList;
+
+    @Benchmark
+    public ScmRepository indexedFirst() {
+        return index.find(firstGroupId, "artifact", VERSION);
+    }
+
+    @Benchmark
+    public ScmRepository indexedLast() {
+        return index.find(lastGroupId, "artifact", VERSION);
+    }
+
+    @Benchmark
+    public ScmRepository linearLast() {
+        for (ScmRepository repo : repositoryList) {
+            if (repo.getGavSet().contains(lastGroupId, "artifact", VERSION)) {
+                return repo;
+            }
+        }
+        return null;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("srcdeps-jmh-find");
+        final Path srcdepsYaml = dir.resolve("srcdeps.yaml");
+        SyntheticConfigurations.write(srcdepsYaml, repositories);
+        final ConfigurationService configurationService = new ConfigurationService(srcdepsYaml);
+        index = configurationService.getScmRepositoryIndex();
+        repositoryList = configurationService.getConfiguration().getRepositories();
+        firstGroupId = SyntheticConfigurations.groupId(1);
+        lastGroupId = SyntheticConfigurations.groupId(repositories - 1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SrcdepsCoreUtils.deleteDirectory(dir);
+    }
+}
@@ -0,0 +1,49 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates {@code srcdeps.yaml} files for the microbenchmarks.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+final class SyntheticConfigurations {
+
+    /**
+     * @param index
+     *            the index of the repository
+     * @return the groupId included by the repository with the given {@code index}
+     */
+    static String groupId(int index) {
+        return "org.example.group" + index;
+    }
+
+    /**
+     * Writes a {@code srcdeps.yaml} file with the given number of repositories. Every tenth repository includes a
+     * whole groupId subtree through a wildcard, the other ones include just one groupId.
+     *
+     * @param srcdepsYaml
+     *            the file to write
+     * @param repositoryCount
+     *            the number of repositories to generate
+     * @throws IOException
+     */
+    static void write(Path srcdepsYaml, int repositoryCount) throws IOException {
+        final StringBuilder yaml = new StringBuilder("configModelVersion: 2.2\nrepositories:\n");
+        for (int i = 0; i < repositoryCount; i++) {
+            yaml.append("  repo").append(i).append(":\n") //
+                    .append("    includes:\n") //
+                    .append("    - '").append(groupId(i)).append(i % 10 == 0 ? ".*" : "").append("'\n") //
+                    .append("    urls:\n") //
+                    .append("    - git:https://git.example.org/repo").append(i).append(".git\n");
+        }
+        Files.createDirectories(srcdepsYaml.getParent());
+        Files.write(srcdepsYaml, yaml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private SyntheticConfigurations() {
+    }
+}
@@ -0,0 +1,122 @@
+package org.srcdeps.gradle.plugin.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.gradle.testkit.runner.GradleRunner;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+/**
+ * Compares the wall time of a series of nested builds of several revisions of the same local git repository in the
+ * {@code fork} and {@code warm} nested build modes.
+ * <p>
+ * Arguments: {@code <work-dir> <srcdeps-gradle-plugin-version> [<revision-count>]}
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class NestedBuildModeBenchmark {
+    private static final String GROUP_ID = "org.srcdeps.benchmarks.nested";
+    private static final String[] MODES = { "fork", "warm" };
+
+    /**
+     * Creates a git repository containing a trivial Gradle project and commits {@code revisionCount} revisions of
+     * it.
+     */
+    private static List<String> createUpstreamRepo(Path dir, int revisionCount) throws IOException, GitAPIException {
+        SrcdepsCoreUtils.deleteDirectory(dir);
+        Files.createDirectories(dir.resolve("src/main/java/bench"));
+        write(dir.resolve("settings.gradle"), "rootProject.name = 'bench-lib'\n");
+        write(dir.resolve("build.gradle"), "apply plugin: 'java'\n" //
+                + "apply plugin: 'maven'\n" //
+                + "sourceCompatibility = 1.7\n" //
+                + "group = '" + GROUP_ID + "'\n" //
+                + "version = '0.0.1-SNAPSHOT'\n");
+        final List<String> result = new ArrayList<>(revisionCount);
+        try (Git git = Git.init().setDirectory(dir.toFile()).call()) {
+            for (int i = 0; i < revisionCount; i++) {
+                write(dir.resolve("src/main/java/bench/Lib.java"),
+                        "package bench;\npublic class Lib {\n    public static final int REVISION = " + i + ";\n}\n");
+                git.add().addFilepattern(".").call();
+                final RevCommit commit = git.commit().setMessage("Revision " + i).call();
+                result.add(commit.getId().getName());
+            }
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Path workDir = Paths.get(args[0]).toAbsolutePath();
+        final String pluginVersion = args[1];
+        final int revisionCount = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        final Path upstreamDir = workDir.resolve("upstream");
+        final List<String> revisions = createUpstreamRepo(upstreamDir, revisionCount);
+        final MavenLocalRepository localRepo = MavenLocalRepository.autodetect();
+
+        final StringBuilder report = new StringBuilder();
+        for (String mode : MODES) {
+            long total = 0;
+            for (int i = 0; i < revisions.size(); i++) {
+                final String version = "0.0.1-SRC-revision-" + revisions.get(i);
+                final Path outerDir = workDir.resolve("outer-" + mode);
+                writeOuterProject(outerDir, pluginVersion, upstreamDir, version);
+                SrcdepsCoreUtils.deleteDirectory(localRepo.resolveGroup(GROUP_ID));
+
+                final long start = System.nanoTime();
+                GradleRunner.create() //
+                        .withProjectDir(outerDir.toFile()) //
+                        .withArguments("compileJava", "-Dsrcdeps.gradle.nested.mode=" + mode) //
+                        .build();
+                final long millis = (System.nanoTime() - start) / 1000000;
+                total += millis;
+                report.append(String.format("%-5s revision %d: %6d ms%n", mode, i, millis));
+            }
+            report.append(String.format("%-5s total:      %6d ms%n", mode, total));
+        }
+        System.out.print(report);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeOuterProject(Path dir, String pluginVersion, Path upstreamDir, String version)
+            throws IOException {
+        Files.createDirectories(dir);
+        write(dir.resolve("settings.gradle"), "rootProject.name = 'bench-app'\n");
+        write(dir.resolve("build.gradle"), "buildscript {\n" //
+                + "    repositories {\n" //
+                + "        mavenLocal()\n" //
+                + "        mavenCentral()\n" //
+                + "    }\n" //
+                + "    dependencies {\n" //
+                + "        classpath 'org.srcdeps.gradle.plugin:srcdeps-gradle-plugin:" + pluginVersion + "'\n" //
+                + "    }\n" //
+                + "}\n" //
+                + "apply plugin: 'java'\n" //
+                + "apply plugin: 'org.srcdeps.gradle.plugin'\n" //
+                + "repositories {\n" //
+                + "    mavenLocal()\n" //
+                + "    mavenCentral()\n" //
+                + "}\n" //
+                + "dependencies {\n" //
+                + "    compile '" + GROUP_ID + ":bench-lib:" + version + "'\n" //
+                + "}\n");
+        write(dir.resolve("srcdeps.yaml"), "configModelVersion: 2.2\n" //
+                + "repositories:\n" //
+                + "  " + GROUP_ID + ":\n" //
+                + "    includes:\n" //
+                + "    - " + GROUP_ID + "\n" //
+                + "    urls:\n" //
+                + "    - git:" + upstreamDir.toUri() + "\n");
+    }
+}
@@ -0,0 +1,167 @@
+package org.srcdeps.gradle.plugin.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.gradle.testkit.runner.GradleRunner;
+import org.srcdeps.core.Gavtc;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+/**
+ * Measures the configuration time and the dependency resolution time of a generated multi project build with
+ * hundreds of subprojects, several configurations per subproject and a mix of regular and source dependencies, once
+ * without and once with the srcdeps plugin applied. All dependencies are pre-installed in a synthetic Local Maven
+ * Repository, so that the numbers show the overhead of the plugin and not the nested builds.
+ * <p>
+ * Arguments: {@code <work-dir> <srcdeps-gradle-plugin-version> [<subproject-count> [<configurations-per-project>
+ * [<runs>]]]}
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class SyntheticBuildBenchmark {
+    private static final String GROUP_ID = "org.srcdeps.benchmarks.synthetic";
+    private static final int REGULAR_ARTIFACTS = 20;
+    private static final int SOURCE_ARTIFACTS = 5;
+    private static final String SOURCE_GROUP_ID = GROUP_ID + ".src";
+    private static final String SOURCE_VERSION = "1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567";
+    private static final String[] TASKS = { "help", "resolveAll" };
+
+    private static void install(MavenLocalRepository localRepo, String groupId, String artifactId, String version)
+            throws IOException {
+        final Path pom = localRepo.resolve(new Gavtc(groupId, artifactId, version, "pom"));
+        Files.createDirectories(pom.getParent());
+        write(pom, "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n" //
+                + "  <modelVersion>4.0.0</modelVersion>\n" //
+                + "  <groupId>" + groupId + "</groupId>\n" //
+                + "  <artifactId>" + artifactId + "</artifactId>\n" //
+                + "  <version>" + version + "</version>\n" //
+                + "</project>\n");
+        Files.write(localRepo.resolve(new Gavtc(groupId, artifactId, version, "jar")), new byte[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Path workDir = Paths.get(args[0]).toAbsolutePath();
+        final String pluginVersion = args[1];
+        final int subprojects = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        final int configurations = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        final int runs = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        /* the plugin itself comes from the real Local Maven Repository */
+        final Path pluginRepo = MavenLocalRepository.autodetect().getRootDirectory();
+        final Path syntheticRepo = workDir.resolve("repository");
+        SrcdepsCoreUtils.deleteDirectory(workDir);
+        final MavenLocalRepository localRepo = new MavenLocalRepository(syntheticRepo);
+        for (int i = 0; i < REGULAR_ARTIFACTS; i++) {
+            install(localRepo, GROUP_ID, "regular-" + i, "1.0");
+        }
+        for (int i = 0; i < SOURCE_ARTIFACTS; i++) {
+            install(localRepo, SOURCE_GROUP_ID, "src-" + i, SOURCE_VERSION);
+        }
+
+        final StringBuilder report = new StringBuilder(String.format(
+                "%d subprojects, %d configurations each, median of %d runs%n", subprojects, configurations, runs));
+        final long[][] medians = new long[2][TASKS.length];
+        for (int variant = 0; variant < 2; variant++) {
+            final boolean withPlugin = variant == 1;
+            final Path projectDir = workDir.resolve(withPlugin ? "with-srcdeps" : "without-srcdeps");
+            writeProject(projectDir, pluginVersion, pluginRepo, withPlugin, subprojects, configurations);
+            for (int t = 0; t < TASKS.length; t++) {
+                final long[] millis = new long[runs];
+                for (int run = -1; run < runs; run++) {
+                    final long start = System.nanoTime();
+                    GradleRunner.create() //
+                            .withProjectDir(projectDir.toFile()) //
+                            .withArguments(TASKS[t], "--offline", "-Dmaven.repo.local=" + syntheticRepo) //
+                            .build();
+                    if (run >= 0) {
+                        /* run -1 is a warm-up */
+                        millis[run] = (System.nanoTime() - start) / 1000000;
+                    }
+                }
+                Arrays.sort(millis);
+                medians[variant][t] = millis[runs / 2];
+                report.append(String.format("%-16s %-10s %6d ms%n", projectDir.getFileName(), TASKS[t],
+                        medians[variant][t]));
+            }
+        }
+        for (int t = 0; t < TASKS.length; t++) {
+            report.append(String.format("overhead of srcdeps in %-10s %+6d ms%n", TASKS[t],
+                    medians[1][t] - medians[0][t]));
+        }
+        System.out.print(report);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeProject(Path dir, String pluginVersion, Path pluginRepo, boolean withPlugin,
+            int subprojects, int configurations) throws IOException {
+        Files.createDirectories(dir);
+        final StringBuilder settings = new StringBuilder("rootProject.name = 'synthetic'\n");
+        for (int i = 0; i < subprojects; i++) {
+            settings.append("include 'p").append(i).append("'\n");
+        }
+        write(dir.resolve("settings.gradle"), settings.toString());
+
+        write(dir.resolve("build.gradle"), "buildscript {\n" //
+                + "    repositories {\n" //
+                + "        maven { url '" + pluginRepo.toUri() + "' }\n" //
+                + "        mavenCentral()\n" //
+                + "    }\n" //
+                + "    dependencies {\n" //
+                + "        classpath 'org.srcdeps.gradle.plugin:srcdeps-gradle-plugin:" + pluginVersion + "'\n" //
+                + "    }\n" //
+                + "}\n" //
+                + "allprojects {\n" //
+                + "    apply plugin: 'java'\n" //
+                + (withPlugin ? "    apply plugin: 'org.srcdeps.gradle.plugin'\n" : "") //
+                + "    repositories {\n" //
+                + "        mavenLocal()\n" //
+                + "    }\n" //
+                + "    task resolveAll {\n" //
+                + "        doLast {\n" //
+                + "            configurations.findAll { it.canBeResolved }.each { it.resolve() }\n" //
+                + "        }\n" //
+                + "    }\n" //
+                + "}\n");
+
+        write(dir.resolve("srcdeps.yaml"), "configModelVersion: 2.2\n" //
+                + "repositories:\n" //
+                + "  " + SOURCE_GROUP_ID + ":\n" //
+                + "    includes:\n" //
+                + "    - " + SOURCE_GROUP_ID + "\n" //
+                + "    urls:\n" //
+                + "    - git:https://git.example.org/synthetic.git\n");
+
+        for (int i = 0; i < subprojects; i++) {
+            final Path projectDir = dir.resolve("p" + i);
+            Files.createDirectories(projectDir);
+            final StringBuilder build = new StringBuilder("configurations {\n");
+            for (int c = 0; c < configurations; c++) {
+                build.append("    conf").append(c).append("\n");
+            }
+            build.append("}\ndependencies {\n");
+            build.append("    compile '").append(GROUP_ID).append(":regular-").append(i % REGULAR_ARTIFACTS)
+                    .append(":1.0'\n");
+            if (i > 0) {
+                build.append("    compile project(':p").append(i - 1).append("')\n");
+            }
+            for (int c = 0; c < configurations; c++) {
+                build.append("    conf").append(c).append(" '").append(GROUP_ID).append(":regular-")
+                        .append((i + c) % REGULAR_ARTIFACTS).append(":1.0'\n");
+                if ((i + c) % 4 == 0) {
+                    build.append("    conf").append(c).append(" '").append(SOURCE_GROUP_ID).append(":src-")
+                            .append((i + c) % SOURCE_ARTIFACTS).append(':').append(SOURCE_VERSION).append("'\n");
+                }
+            }
+            build.append("}\n");
+            write(projectDir.resolve("build.gradle"), build.toString());
+        }
+    }
+}
@@ -1,36 +1,175 @@
 package org.srcdeps.gradle.plugin;
 
+import groovy.json.JsonOutput
+
 import org.gradle.api.GradleException
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration
 import org.gradle.api.artifacts.dsl.RepositoryHandler;
+import org.gradle.api.invocation.Gradle
+import org.gradle.api.plugins.ExtraPropertiesExtension
 
 /**
  * A Gradle plugin that scans given project's dependencies and in case a source dependency is found, it is built and
  * installed to Local Maven Repository unless it there already.
+ * <p>
+ * The source dependencies of all projects having this plugin applied are collected once all projects are evaluated
+ * and their builds are scheduled in parallel, before Gradle starts resolving any configuration. The srcdeps
+ * {@link Wiring} is performed just once per build and only if there are some source dependencies.
+ * <p>
+ * A {@link SrcdepsResolver} is attached only to the configurations that can possibly resolve a source version, see
+ * {@link SourceVersionReachability}. The check is deferred until the given configuration is about to be resolved,
+ * i.e. typically until all projects are evaluated.
+ * <p>
+ * If {@link SrcdepsGradleOptions#TASKS} is enabled, each distinct source revision is built by a
+ * {@link SrcdepsBuildTask} instead. The builds required by the task graph are started in parallel as soon as the
+ * task graph is ready and the tasks just wait for them. The dependency resolution hooks do nothing until the task
+ * graph is ready, see {@link SrcdepsResolver#isDeferred(Project)}; then they stay in place as a fallback for the
+ * source dependencies not covered by any task, e.g. those required by released artifacts.
+ * <p>
+ * If any eviction limits are set, the least recently used build directories are removed by the
+ * {@link BuildDirectoryEvictor} in the background while the build runs. The {@link SrcdepsEvictTask} does the same
+ * on demand.
+ * <p>
+ * The {@link SrcdepsPlanTask} reports what would be built without building anything; no builds are scheduled if it
+ * is requested.
+ * <p>
+ * At the end of the build, the time spent in the individual phases of the source dependency builds is written to
+ * {@code build/srcdeps-report.json} in the root project and summarized on the console, see {@link BuildTimings}.
  *
  * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
  */
 public class SrcdepsGradlePlugin implements Plugin<Project> {
+    private static final String BUILD_HOOKS_REGISTERED = 'srcdepsBuildHooksRegistered'
+    private static final String REACHABILITY = 'srcdepsReachability'
+    private static final String REPORT_FILE = 'srcdeps-report.json'
 
     @Override
     public void apply(Project project) {
 
-        project.afterEvaluate {
-            org.srcdeps.gradle.plugin.Wiring.init(project);
+        registerBuildHooks(project.gradle)
 
+        project.afterEvaluate {
             project.configurations.findAll { it.state != Configuration.State.UNRESOLVED }.each { configuration ->
-                new SrcdepsResolver(configuration).resolveArtifacts()
+                new SrcdepsResolver(project, configuration).resolveArtifacts()
             }
             def capturedProject = project
             project.configurations.findAll { it.state == Configuration.State.UNRESOLVED }.each { configuration ->
                 configuration.incoming.beforeResolve {
-                    new SrcdepsResolver(configuration).resolveArtifacts()
+                    if (getReachability(capturedProject).canReachSourceVersions(configuration)) {
+                        new SrcdepsResolver(capturedProject, configuration).resolveArtifacts()
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * @return the {@link SourceVersionReachability} of the current build
+     */
+    private static synchronized SourceVersionReachability getReachability(Project project) {
+        ExtraPropertiesExtension ext = project.rootProject.extensions.extraProperties
+        if (!ext.has(REACHABILITY)) {
+            ext.set(REACHABILITY, new SourceVersionReachability(project))
+        }
+        return ext.get(REACHABILITY)
+    }
+
+    /**
+     * Registers the build-wide hooks just once per {@link Gradle} invocation, no matter how many projects apply this
+     * plugin.
+     */
+    private static void registerBuildHooks(Gradle gradle) {
+        ExtraPropertiesExtension ext = gradle.rootProject.extensions.extraProperties
+        if (ext.has(BUILD_HOOKS_REGISTERED)) {
+            return
+        }
+        ext.set(BUILD_HOOKS_REGISTERED, true)
+
+        if (gradle.rootProject.tasks.findByName(SrcdepsEvictTask.NAME) == null) {
+            gradle.rootProject.tasks.create(SrcdepsEvictTask.NAME, SrcdepsEvictTask)
+        }
+        if (gradle.rootProject.tasks.findByName(SrcdepsLockTask.NAME) == null) {
+            gradle.rootProject.tasks.create(SrcdepsLockTask.NAME, SrcdepsLockTask)
+        }
+        if (gradle.rootProject.tasks.findByName(SrcdepsPlanTask.NAME) == null) {
+            gradle.rootProject.tasks.create(SrcdepsPlanTask.NAME, SrcdepsPlanTask)
+        }
+
+        gradle.projectsEvaluated {
+            if (SrcdepsPlanTask.isRequested(gradle.startParameter.taskNames)) {
+                /* a dry run: neither build nor evict anything */
+                return
+            }
+            def srcdepsProjects = gradle.rootProject.allprojects.findAll { it.plugins.hasPlugin(SrcdepsGradlePlugin) }
+            if (SrcdepsGradleOptions.getEvictionLimits().isEnabled()) {
+                Wiring.getInjector(srcdepsProjects.first()).getInstance(BuildDirectoryEvictor).evictInBackground()
+            }
+            def sourceDependencies = SourceDependencyCollector.collect(srcdepsProjects)
+            if (sourceDependencies.isEmpty()) {
+                return
+            }
+            SrcdepsService srcdepsService = Wiring.getInjector(srcdepsProjects.first()).getInstance(SrcdepsService)
+            if (SrcdepsGradleOptions.isTasks()) {
+                srcdepsProjects.each { registerBuildTasks(it, srcdepsService) }
+                gradle.taskGraph.whenReady { graph ->
+                    gradle.rootProject.extensions.extraProperties.set(SrcdepsResolver.TASK_GRAPH_READY, true)
+                    def buildTasks = graph.allTasks.findAll { it instanceof SrcdepsBuildTask }
+                    buildTasks.each { it.addCommitInput(srcdepsService) }
+                    def scheduled = buildTasks.collectMany { it.dependencies }
+                    srcdepsService.scheduleBuilds(scheduled, gradle.startParameter.maxWorkerCount)
                 }
+            } else {
+                srcdepsService.scheduleBuilds(sourceDependencies, gradle.startParameter.maxWorkerCount)
+            }
+        }
+        gradle.buildFinished {
+            def injector = Wiring.findInjector(gradle)
+            if (injector != null) {
+                injector.getInstance(SrcdepsService).buildFinished()
+                injector.getInstance(BuildDirectoryEvictor).awaitBackgroundEviction()
+                writeReport(gradle, injector.getInstance(BuildTimings))
             }
         }
+    }
 
+    /**
+     * Writes the given {@link BuildTimings} to {@value #REPORT_FILE} in the build directory of the root project,
+     * logs a one line summary and clears the {@link BuildTimings} for the next build.
+     */
+    private static void writeReport(Gradle gradle, BuildTimings timings) {
+        if (timings.isEmpty()) {
+            return
+        }
+        File reportFile = new File(gradle.rootProject.buildDir, REPORT_FILE)
+        try {
+            reportFile.parentFile.mkdirs()
+            reportFile.setText(JsonOutput.prettyPrint(JsonOutput.toJson(timings.toReport())), 'UTF-8')
+            gradle.rootProject.logger.lifecycle("${timings.toSummary()}; see ${reportFile}")
+        } catch (IOException e) {
+            gradle.rootProject.logger.warn("srcdeps: Could not write ${reportFile}", e)
+            gradle.rootProject.logger.lifecycle(timings.toSummary())
+        } finally {
+            timings.clear()
+        }
+    }
+
+    /**
+     * Adds a {@link SrcdepsBuildTask} for each distinct source revision required by the given {@code project} and
+     * makes the configurations declaring the source dependencies depend on the respective tasks, so that the tasks
+     * get executed before anything that resolves those configurations.
+     */
+    private static void registerBuildTasks(Project project, SrcdepsService srcdepsService) {
+        project.configurations.findAll { it.state == Configuration.State.UNRESOLVED }.each { configuration ->
+            def tasks = SourceDependencyCollector.collect(configuration).collect { dep ->
+                SrcdepsBuildTask.register(project, srcdepsService, dep)
+            }.findAll { it != null }.unique()
+            if (!tasks.isEmpty()) {
+                project.dependencies.add(configuration.name, project.files().builtBy(tasks))
+            }
+        }
     }
 
 }
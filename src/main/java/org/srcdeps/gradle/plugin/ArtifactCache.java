@@ -0,0 +1,281 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.srcdeps.core.BuildService;
+import org.srcdeps.core.MavenLocalRepository;
+
+/**
+ * A content-addressed cache of the artifacts produced by nested builds. The cache entries are keyed by a hash of all
+ * inputs of the nested build (see {@link KeyBuilder}) and stored as zip archives of the respective version
+ * directories of the Local Maven Repository. The cache directory can be shared among machines, e.g. via a network
+ * file system; new entries are published atomically.
+ * <p>
+ * The cache is disabled unless {@link SrcdepsGradleOptions#CACHE_DIRECTORY} is set.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class ArtifactCache {
+
+    /**
+     * Computes a cache key out of a sequence of named build inputs.
+     */
+    public static class KeyBuilder {
+        private final MessageDigest digest;
+
+        private KeyBuilder() {
+            super();
+            try {
+                this.digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            input("srcdeps-core", BuildService.class.getPackage().getImplementationVersion());
+            input("srcdeps-gradle-plugin", ArtifactCache.class.getPackage().getImplementationVersion());
+        }
+
+        /**
+         * @return the hex representation of the hash of all inputs passed so far
+         */
+        public String build() {
+            final byte[] bytes = digest.digest();
+            final StringBuilder result = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                result.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+            return result.toString();
+        }
+
+        /**
+         * Adds a named input.
+         *
+         * @param name
+         *            the name of the input
+         * @param value
+         *            the value of the input, may be {@code null}
+         * @return this {@link KeyBuilder}
+         */
+        public KeyBuilder input(String name, Object value) {
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return this;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Logger log = LoggerFactory.getLogger(ArtifactCache.class);
+
+    /**
+     * @return a new {@link KeyBuilder} pre-filled with the versions of srcdeps itself
+     */
+    public static KeyBuilder newKeyBuilder() {
+        return new KeyBuilder();
+    }
+
+    private final Path cacheDirectory;
+    private final MavenLocalRepository localRepository;
+
+    @Inject
+    public ArtifactCache(MavenLocalRepository localRepository) {
+        this(localRepository, SrcdepsGradleOptions.getCacheDirectory());
+    }
+
+    ArtifactCache(MavenLocalRepository localRepository, Path cacheDirectory) {
+        super();
+        this.localRepository = localRepository;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * @param key
+     *            the cache key produced by {@link KeyBuilder#build()}
+     * @return {@code true} if there is an entry stored under the given {@code key}; {@code false} otherwise
+     */
+    public boolean contains(String key) {
+        return isEnabled() && Files.exists(resolveEntry(key));
+    }
+
+    /**
+     * @param version
+     *            the version to look for
+     * @param groupIds
+     *            the exact groupIds whose artifact directories in the Local Maven Repository should be looked at; the
+     *            directories of other groupIds nested in them are not searched through
+     * @return the {@code <groupId>/<artifactId>/<version>} directories of the given {@code groupIds} and
+     *         {@code version}
+     * @throws IOException
+     */
+    List<Path> findVersionDirectories(String version, Collection<String> groupIds) throws IOException {
+        final List<Path> result = new ArrayList<>();
+        for (String groupId : groupIds) {
+            final Path groupDir = localRepository.resolveGroup(groupId);
+            if (!Files.isDirectory(groupDir)) {
+                continue;
+            }
+            try (DirectoryStream<Path> artifactDirs = Files.newDirectoryStream(groupDir)) {
+                for (Path artifactDir : artifactDirs) {
+                    final Path versionDir = artifactDir.resolve(version);
+                    if (Files.isDirectory(versionDir) && !result.contains(versionDir)) {
+                        result.add(versionDir);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return {@code true} if {@link SrcdepsGradleOptions#CACHE_DIRECTORY} is set; {@code false} otherwise
+     */
+    public boolean isEnabled() {
+        return cacheDirectory != null;
+    }
+
+    private Path resolveEntry(String key) {
+        return cacheDirectory.resolve(key.substring(0, 2)).resolve(key + ".zip");
+    }
+
+    /**
+     * Unpacks the cache entry stored under the given {@code key} to the Local Maven Repository, if there is any
+     * such entry.
+     *
+     * @param key
+     *            the cache key produced by {@link KeyBuilder#build()}
+     * @return {@code true} if the entry was found and unpacked; {@code false} otherwise
+     * @throws IOException
+     */
+    public boolean restore(String key) throws IOException {
+        if (!isEnabled()) {
+            return false;
+        }
+        final Path entry = resolveEntry(key);
+        if (!Files.exists(entry)) {
+            log.debug("srcdeps: No entry {} in the artifact cache", entry);
+            return false;
+        }
+        final Path root = localRepository.getRootDirectory().normalize();
+        int count = 0;
+        try (ZipInputStream zip = new ZipInputStream(
+                new BufferedInputStream(Files.newInputStream(entry), BUFFER_SIZE))) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zip.getNextEntry()) != null) {
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                final Path target = root.resolve(zipEntry.getName()).normalize();
+                if (!target.startsWith(root)) {
+                    throw new IOException(String.format("Unexpected entry [%s] in the artifact cache entry [%s]",
+                            zipEntry.getName(), entry));
+                }
+                Files.createDirectories(target.getParent());
+                final Path tmp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+                try {
+                    Files.copy(zip, tmp);
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+                count++;
+            }
+        }
+        log.info("srcdeps: Restored {} file(s) from the artifact cache entry {}", count, entry);
+        return true;
+    }
+
+    /**
+     * Packs the directories of the given {@code version} under the given {@code groupIds} and publishes them in the
+     * cache under the given {@code key}. Failures are logged rather than thrown, because the cache is just an
+     * optimization.
+     *
+     * @param key
+     *            the cache key produced by {@link KeyBuilder#build()}
+     * @param version
+     *            the version whose artifacts should be stored
+     * @param groupIds
+     *            the groupIds under which the artifacts of the given {@code version} should be searched for
+     */
+    public void store(String key, String version, Collection<String> groupIds) {
+        if (!isEnabled()) {
+            return;
+        }
+        final Path entry = resolveEntry(key);
+        if (Files.exists(entry)) {
+            return;
+        }
+        Path tmp = null;
+        try {
+            final List<Path> versionDirs = findVersionDirectories(version, groupIds);
+            if (versionDirs.isEmpty()) {
+                log.warn("srcdeps: Found no artifacts of version {} to store in the artifact cache", version);
+                return;
+            }
+            Files.createDirectories(entry.getParent());
+            tmp = entry.resolveSibling(entry.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            final Path root = localRepository.getRootDirectory();
+            try (final ZipOutputStream zip = new ZipOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))) {
+                for (Path versionDir : versionDirs) {
+                    Files.walkFileTree(versionDir, new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                            final String name = root.relativize(file).toString().replace('\\', '/');
+                            zip.putNextEntry(new ZipEntry(name));
+                            Files.copy(file, zip);
+                            zip.closeEntry();
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+                }
+            }
+            try {
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.info("srcdeps: Stored {} in the artifact cache entry {}", versionDirs, entry);
+        } catch (IOException e) {
+            log.warn("srcdeps: Could not store the artifacts of version {} in the artifact cache entry {}", version,
+                    entry, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.debug("srcdeps: Could not delete {}", tmp, e);
+                }
+            }
+        }
+    }
+
+}
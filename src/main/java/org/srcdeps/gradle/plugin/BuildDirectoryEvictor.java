@@ -0,0 +1,583 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.srcdeps.core.fs.BuildDirectoriesManager;
+import org.srcdeps.core.fs.PathLock;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+/**
+ * Removes the least recently used build directories handed out by the {@link BuildDirectoriesManager}, Git mirrors
+ * and nested build logs under the srcdeps directory once the {@link Limits} configured via
+ * {@link SrcdepsGradleOptions#EVICT_SIZE}, {@link SrcdepsGradleOptions#EVICT_AGE} and
+ * {@link SrcdepsGradleOptions#EVICT_REVISIONS} are exceeded. The size and age limits apply to all of them together,
+ * the limit of revisions per SCM repository to the build directories only.
+ * <p>
+ * A build directory is recognized by its {@link PathLock} file {@code <build-dir>.lock}, so that the search never
+ * descends into the checkouts. The last access to a build directory is recorded by {@link #access(Path)} in a
+ * sibling marker file {@code <build-dir>.srcdeps-access}: its modification time is the time of the last access and
+ * its content is the size of the build directory as of the end of that access, so that the size limit does not need
+ * to walk all checkouts on every build. The build directories that were not accessed since this mechanism exists
+ * count as last accessed at their modification time; their size is computed once and stored in a new marker. The
+ * accessing build holds a lock of the marker file as long as it holds the {@link PathLock} of the build directory.
+ * The eviction skips the build directories whose marker file or whose {@link PathLock} file it cannot lock. The
+ * latter covers the short time before the marker is locked as well as the builds not using this class at all, such
+ * as srcdeps-maven builds sharing the srcdeps directory.
+ * <p>
+ * A Git mirror counts as last accessed when it was last fetched into, see {@link GitMirrors}, and is skipped while its
+ * lock is held or while a build directory that is kept borrows its objects. A log file counts as last accessed when
+ * it was last written.
+ * <p>
+ * An evicted directory is first renamed and only then deleted, so that an interrupted eviction never leaves a half
+ * deleted checkout behind.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class BuildDirectoryEvictor {
+
+    /**
+     * The limits of the srcdeps build directory tree. A non-positive value means no limit.
+     */
+    public static class Limits {
+        private final long maxAgeMs;
+        private final int maxRevisionsPerRepository;
+        private final long maxSize;
+
+        public Limits(long maxSize, long maxAgeMs, int maxRevisionsPerRepository) {
+            super();
+            this.maxSize = maxSize;
+            this.maxAgeMs = maxAgeMs;
+            this.maxRevisionsPerRepository = maxRevisionsPerRepository;
+        }
+
+        /**
+         * @return {@code true} if at least one of the limits is set; {@code false} otherwise
+         */
+        public boolean isEnabled() {
+            return maxSize > 0 || maxAgeMs > 0 || maxRevisionsPerRepository > 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Limits [maxSize=" + maxSize + ", maxAgeMs=" + maxAgeMs + ", maxRevisionsPerRepository="
+                    + maxRevisionsPerRepository + "]";
+        }
+    }
+
+    /**
+     * A build directory, a Git mirror or a log file.
+     */
+    private static class Entry {
+        /** the build directory, the mirror directory or the log file */
+        private final Path path;
+        private final Kind kind;
+        private final long lastAccess;
+        /** the lock file to hold while removing the {@link #path} or {@code null} if there is none */
+        private final Path lockFile;
+        /** the size in bytes or {@code -1} if not known yet */
+        private long size;
+
+        private Entry(Kind kind, Path path, Path lockFile, long lastAccess, long size) {
+            super();
+            this.kind = kind;
+            this.path = path;
+            this.lockFile = lockFile;
+            this.lastAccess = lastAccess;
+            this.size = size;
+        }
+    }
+
+    private enum Kind {
+        buildDirectory, log, mirror
+    }
+
+    private static final String EVICTING_INFIX = ".srcdeps-evicting-";
+    private static final long LOCK_RETRY_MS = 100L;
+    private static final Logger log = LoggerFactory.getLogger(BuildDirectoryEvictor.class);
+    static final String MARKER_SUFFIX = ".srcdeps-access";
+    /** The suffix of the lock file the {@link PathLock} of a build directory holds */
+    static final String PATH_LOCK_SUFFIX = ".lock";
+
+    private static Path markerOf(Path buildDirectory) {
+        return buildDirectory.resolveSibling(buildDirectory.getFileName() + MARKER_SUFFIX);
+    }
+
+    private static Path pathLockOf(Path buildDirectory) {
+        return buildDirectory.resolveSibling(buildDirectory.getFileName() + PATH_LOCK_SUFFIX);
+    }
+
+    /**
+     * @param marker
+     *            the marker file to read
+     * @return the size stored in the given {@code marker} or {@code -1} if none is stored there
+     */
+    private static long readSize(Path marker) {
+        try {
+            final String content = new String(Files.readAllBytes(marker), StandardCharsets.US_ASCII).trim();
+            return content.isEmpty() ? -1L : Long.parseLong(content);
+        } catch (IOException | NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Moves the given {@code dir} out of the way and deletes it.
+     *
+     * @param dir
+     *            the directory to remove
+     * @return {@code true} if the given {@code dir} existed; {@code false} otherwise
+     * @throws IOException
+     */
+    private static boolean remove(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return false;
+        }
+        final Path renamed = dir.resolveSibling(dir.getFileName() + EVICTING_INFIX + UUID.randomUUID());
+        Files.move(dir, renamed);
+        log.debug("srcdeps: Evicting {}", dir);
+        SrcdepsCoreUtils.deleteDirectory(renamed);
+        return true;
+    }
+
+    /**
+     * @param buildDirectory
+     *            the build directory whose {@code objects/info/alternates} should be read
+     * @param mirrors
+     *            the set to add the mirror directories referenced by the given {@code buildDirectory} to
+     */
+    private static void addReferencedMirrors(Path buildDirectory, Set<Path> mirrors) {
+        final Path alternates = buildDirectory.resolve(".git/objects/info/alternates");
+        if (!Files.exists(alternates)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(alternates, StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    mirrors.add(Paths.get(line.trim()).toAbsolutePath().normalize().getParent());
+                }
+            }
+        } catch (IOException | InvalidPathException e) {
+            log.debug("srcdeps: Could not read {}", alternates, e);
+        }
+    }
+
+    private static void writeSize(FileChannel channel, long size) throws IOException {
+        channel.truncate(0L);
+        channel.write(ByteBuffer.wrap(Long.toString(size).getBytes(StandardCharsets.US_ASCII)), 0L);
+    }
+
+    /**
+     * @param channel
+     *            the channel to lock
+     * @return the acquired {@link FileLock} or {@code null} if the lock is held by this or another process
+     * @throws IOException
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static long size(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0L;
+        }
+        final long[] result = new long[1];
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                result[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * @param entry
+     *            the entry whose size should be returned
+     * @return the size of the given {@code entry}, computed only if it is not known yet
+     * @throws IOException
+     */
+    private static long size(Entry entry) throws IOException {
+        if (entry.size < 0) {
+            /* mirrors consist of a few pack files, so only the checkouts are worth storing the size for */
+            entry.size = size(entry.path);
+            if (entry.kind == Kind.buildDirectory) {
+                final Path marker = markerOf(entry.path);
+                try (FileChannel channel = FileChannel.open(marker, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+                    if (tryLock(channel) != null) {
+                        writeSize(channel, entry.size);
+                        Files.setLastModifiedTime(marker, FileTime.fromMillis(entry.lastAccess));
+                    }
+                }
+            }
+        }
+        return entry.size;
+    }
+
+    private FutureTask<Long> backgroundEviction;
+    private final Limits limits;
+    private final Path srcdepsDirectory;
+
+    @Inject
+    public BuildDirectoryEvictor(@Named(Wiring.SRCDEPS_DIRECTORY) Path srcdepsDirectory) {
+        this(srcdepsDirectory, SrcdepsGradleOptions.getEvictionLimits());
+    }
+
+    BuildDirectoryEvictor(Path srcdepsDirectory, Limits limits) {
+        super();
+        this.srcdepsDirectory = srcdepsDirectory;
+        this.limits = limits;
+    }
+
+    /**
+     * Records an access to the given {@code buildDirectory} and protects it from eviction until the returned
+     * {@link Closeable} is closed. Supposed to be called right after the {@link PathLock} of the given
+     * {@code buildDirectory} was acquired. If a size limit is set, the size of the {@code buildDirectory} is stored
+     * in its marker file on close.
+     *
+     * @param buildDirectory
+     *            the build directory to protect
+     * @return a {@link Closeable} to close together with the {@link PathLock} of the given {@code buildDirectory}
+     * @throws IOException
+     */
+    public Closeable access(final Path buildDirectory) throws IOException {
+        final Path marker = markerOf(buildDirectory);
+        Files.createDirectories(marker.getParent());
+        while (true) {
+            final FileChannel channel = FileChannel.open(marker, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = null;
+            try {
+                lock = channel.lock();
+            } catch (OverlappingFileLockException e) {
+                /* the eviction running in this JVM holds the lock */
+            }
+            if (lock != null && Files.exists(marker)) {
+                /* the size is going to change */
+                channel.truncate(0L);
+                Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+                return new Closeable() {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            if (limits.maxSize > 0) {
+                                writeSize(channel, size(buildDirectory));
+                            }
+                        } finally {
+                            channel.close();
+                        }
+                    }
+                };
+            }
+            /* the marker was evicted in the meantime or is being evicted by this JVM */
+            channel.close();
+            if (lock == null) {
+                try {
+                    Thread.sleep(LOCK_RETRY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks until the eviction started by {@link #evictInBackground()} is finished.
+     */
+    public void awaitBackgroundEviction() {
+        final FutureTask<Long> task;
+        synchronized (this) {
+            task = backgroundEviction;
+            backgroundEviction = null;
+        }
+        if (task != null) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warn("srcdeps: Could not evict build directories", e.getCause());
+            }
+        }
+    }
+
+    private List<Entry> collect() throws IOException {
+        final List<Entry> result = new ArrayList<>();
+        if (!Files.isDirectory(srcdepsDirectory)) {
+            return result;
+        }
+        final Path mirrors = srcdepsDirectory.resolve("mirrors");
+        final Path logs = srcdepsDirectory.resolve("logs");
+        final Path refs = srcdepsDirectory.resolve("refs");
+        Files.walkFileTree(srcdepsDirectory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(srcdepsDirectory)) {
+                    return FileVisitResult.CONTINUE;
+                } else if (dir.getFileName().toString().contains(EVICTING_INFIX)) {
+                    /* a leftover of an interrupted eviction */
+                    SrcdepsCoreUtils.deleteDirectory(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                } else if (dir.equals(mirrors)) {
+                    collectMirrors(mirrors, result);
+                    return FileVisitResult.SKIP_SUBTREE;
+                } else if (dir.equals(logs)) {
+                    collectLogs(logs, result);
+                    return FileVisitResult.SKIP_SUBTREE;
+                } else if (dir.equals(refs)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                final Path marker = markerOf(dir);
+                final Path pathLock = pathLockOf(dir);
+                if (Files.exists(marker)) {
+                    result.add(new Entry(Kind.buildDirectory, dir, pathLock,
+                            Files.getLastModifiedTime(marker).toMillis(), readSize(marker)));
+                    return FileVisitResult.SKIP_SUBTREE;
+                } else if (Files.exists(pathLock) || Files.exists(dir.resolve(".git"))) {
+                    /* a build directory not accessed since the markers exist */
+                    result.add(new Entry(Kind.buildDirectory, dir, pathLock, attrs.lastModifiedTime().toMillis(),
+                            -1L));
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result;
+    }
+
+    private static void collectLogs(Path logs, final List<Entry> result) throws IOException {
+        Files.walkFileTree(logs, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (file.getFileName().toString().endsWith(".log")) {
+                    result.add(new Entry(Kind.log, file, null, attrs.lastModifiedTime().toMillis(), attrs.size()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void collectMirrors(Path mirrors, List<Entry> result) throws IOException {
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(mirrors)) {
+            for (Path dir : dirs) {
+                final String fileName = dir.getFileName().toString();
+                if (!Files.isDirectory(dir)) {
+                    continue;
+                } else if (fileName.contains(EVICTING_INFIX)) {
+                    /* a leftover of an interrupted eviction */
+                    SrcdepsCoreUtils.deleteDirectory(dir);
+                } else if (fileName.endsWith(".git")) {
+                    /* GitMirrors.fetch() touches the lock file on every fetch */
+                    final Path lockFile = dir.resolveSibling(fileName + PATH_LOCK_SUFFIX);
+                    final Path lastAccess = Files.exists(lockFile) ? lockFile : dir;
+                    result.add(new Entry(Kind.mirror, dir, lockFile, Files.getLastModifiedTime(lastAccess).toMillis(),
+                            -1L));
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used build directories, mirrors and logs exceeding the {@link Limits}. The build
+     * directories and mirrors in use are skipped.
+     *
+     * @return the number of bytes freed
+     * @throws IOException
+     */
+    public long evict() throws IOException {
+        if (!limits.isEnabled()) {
+            log.info("srcdeps: No eviction limits set; see {}, {} and {}", SrcdepsGradleOptions.EVICT_SIZE,
+                    SrcdepsGradleOptions.EVICT_AGE, SrcdepsGradleOptions.EVICT_REVISIONS);
+            return 0L;
+        }
+        final long start = System.currentTimeMillis();
+        final List<Entry> entries = collect();
+        /* most recently used first */
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                return Long.compare(e2.lastAccess, e1.lastAccess);
+            }
+        });
+
+        final Map<Path, Integer> revisionsPerRepository = new HashMap<>();
+        final List<Entry> victims = new ArrayList<>();
+        final List<Entry> kept = new ArrayList<>();
+        long totalSize = 0L;
+        for (Entry entry : entries) {
+            boolean exceeds = limits.maxAgeMs > 0 && start - entry.lastAccess > limits.maxAgeMs;
+            if (entry.kind == Kind.buildDirectory) {
+                final Path repository = entry.path.getParent();
+                final Integer count = revisionsPerRepository.get(repository);
+                final int revisions = count == null ? 1 : count.intValue() + 1;
+                revisionsPerRepository.put(repository, revisions);
+                exceeds |= limits.maxRevisionsPerRepository > 0 && revisions > limits.maxRevisionsPerRepository;
+            }
+            if (limits.maxSize > 0) {
+                totalSize += size(entry);
+                exceeds |= totalSize > limits.maxSize;
+            }
+            (exceeds ? victims : kept).add(entry);
+        }
+
+        long freed = 0L;
+        int evicted = 0;
+        final List<Entry> mirrorVictims = new ArrayList<>();
+        /* least recently used first */
+        Collections.reverse(victims);
+        for (Entry victim : victims) {
+            if (victim.kind == Kind.mirror) {
+                /* only after it is known which build directories stay */
+                mirrorVictims.add(victim);
+            } else if (evict(victim)) {
+                freed += Math.max(victim.size, 0L);
+                evicted++;
+            } else {
+                kept.add(victim);
+            }
+        }
+        final Set<Path> referencedMirrors = new HashSet<>();
+        for (Entry entry : kept) {
+            if (entry.kind == Kind.buildDirectory) {
+                addReferencedMirrors(entry.path, referencedMirrors);
+            }
+        }
+        for (Entry victim : mirrorVictims) {
+            if (referencedMirrors.contains(victim.path.toAbsolutePath().normalize())) {
+                log.debug("srcdeps: Not evicting {} because a build directory uses its objects", victim.path);
+            } else if (evict(victim)) {
+                freed += Math.max(victim.size, 0L);
+                evicted++;
+            }
+        }
+        log.info("srcdeps: Evicted {} of {} build directories, mirrors and logs{} in {} ms", evicted,
+                entries.size(), limits.maxSize > 0 ? String.format(", freed %d MB", freed / (1024 * 1024)) : "",
+                System.currentTimeMillis() - start);
+        return freed;
+    }
+
+    /**
+     * @param entry
+     *            the build directory, mirror or log to remove
+     * @return {@code true} if the given {@code entry} was removed; {@code false} if it is in use
+     * @throws IOException
+     */
+    private boolean evict(Entry entry) throws IOException {
+        if (entry.kind == Kind.log) {
+            return Files.deleteIfExists(entry.path);
+        }
+        try (FileChannel lockChannel = FileChannel.open(entry.lockFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            if (tryLock(lockChannel) == null) {
+                log.debug("srcdeps: Not evicting {} because it is in use", entry.path);
+                return false;
+            }
+            if (entry.kind == Kind.mirror) {
+                return remove(entry.path);
+            }
+            final Path marker = markerOf(entry.path);
+            try (FileChannel markerChannel = Files.exists(marker)
+                    ? FileChannel.open(marker, StandardOpenOption.WRITE) : null) {
+                if (markerChannel != null && tryLock(markerChannel) == null) {
+                    log.debug("srcdeps: Not evicting {} because it is in use", entry.path);
+                    return false;
+                }
+                final boolean removed = remove(entry.path);
+                Files.deleteIfExists(marker);
+                return removed;
+            }
+        } catch (NoSuchFileException e) {
+            /* evicted by another process in the meantime */
+            return false;
+        }
+    }
+
+    /**
+     * Starts {@link #evict()} in a background thread unless no {@link Limits} are set. Use
+     * {@link #awaitBackgroundEviction()} to wait for it to finish.
+     */
+    public void evictInBackground() {
+        if (!limits.isEnabled()) {
+            return;
+        }
+        final FutureTask<Long> task = new FutureTask<>(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                return evict();
+            }
+        });
+        synchronized (this) {
+            if (backgroundEviction != null) {
+                return;
+            }
+            backgroundEviction = task;
+        }
+        final Thread thread = new Thread(task, "srcdeps-eviction");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the {@link Limits} in effect
+     */
+    public Limits getLimits() {
+        return limits;
+    }
+}
@@ -0,0 +1,181 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers how long the nested builds of each SCM repository took, so that the duration of a future build can be
+ * estimated, e.g. by the {@link SrcdepsPlanTask}. The durations are kept per SCM repository rather than per version,
+ * because the versions to be estimated are typically those that were never built before. Only the last
+ * {@value #MAX_SAMPLES} durations of each SCM repository are kept in {@code <srcdeps-dir>/}{@value #FILE_NAME}, so
+ * that the estimates follow the growth of the source trees.
+ * <p>
+ * The durations are {@link #record(String, long) recorded} in memory and {@link #save() saved} at the end of the
+ * outer build, merged with whatever other processes saved in the meantime.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class BuildHistory {
+    private static final Logger log = LoggerFactory.getLogger(BuildHistory.class);
+
+    static final String FILE_NAME = "build-history.properties";
+
+    /** The number of the most recent durations kept per SCM repository */
+    static final int MAX_SAMPLES = 5;
+
+    /**
+     * @param samples
+     *            the durations to append to
+     * @param millis
+     *            the durations to append
+     */
+    private static void append(List<Long> samples, List<Long> millis) {
+        samples.addAll(millis);
+        if (samples.size() > MAX_SAMPLES) {
+            samples.subList(0, samples.size() - MAX_SAMPLES).clear();
+        }
+    }
+
+    /**
+     * @param file
+     *            the file to read
+     * @return the durations stored in the given {@code file} by SCM repository id or an empty {@link Map} if the
+     *         file does not exist or cannot be read
+     */
+    static Map<String, List<Long>> read(Path file) {
+        final Map<String, List<Long>> result = new TreeMap<>();
+        if (Files.exists(file)) {
+            final Properties props = new Properties();
+            try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(r);
+                for (String repositoryId : props.stringPropertyNames()) {
+                    final List<Long> samples = new ArrayList<>();
+                    for (String millis : props.getProperty(repositoryId).trim().split(",")) {
+                        samples.add(Long.valueOf(millis.trim()));
+                    }
+                    result.put(repositoryId, samples);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("srcdeps: Ignoring {} that cannot be read", file, e);
+                result.clear();
+            }
+        }
+        return result;
+    }
+
+    private final Path historyFile;
+
+    /** The durations recorded since the last {@link #save()} by SCM repository id; guarded by {@code this} */
+    private final Map<String, List<Long>> pending = new TreeMap<>();
+
+    /** The durations read from {@link #historyFile}, read lazily; guarded by {@code this} */
+    private Map<String, List<Long>> saved;
+
+    @Inject
+    public BuildHistory(@Named(Wiring.SRCDEPS_DIRECTORY) Path srcdepsDirectory) {
+        super();
+        this.historyFile = srcdepsDirectory.resolve(FILE_NAME);
+    }
+
+    /**
+     * @param repositoryId
+     *            the id of the SCM repository to estimate
+     * @return the average duration of the last nested builds of the given SCM repository in milliseconds or
+     *         {@code null} if it was never built
+     */
+    public synchronized Long estimate(String repositoryId) {
+        if (saved == null) {
+            saved = read(historyFile);
+        }
+        final List<Long> samples = new ArrayList<>();
+        if (saved.containsKey(repositoryId)) {
+            samples.addAll(saved.get(repositoryId));
+        }
+        if (pending.containsKey(repositoryId)) {
+            append(samples, pending.get(repositoryId));
+        }
+        if (samples.isEmpty()) {
+            return null;
+        }
+        long sum = 0;
+        for (Long millis : samples) {
+            sum += millis;
+        }
+        return sum / samples.size();
+    }
+
+    /**
+     * Records the duration of a successful nested build. Call {@link #save()} to make it persistent.
+     *
+     * @param repositoryId
+     *            the id of the SCM repository that was built
+     * @param millis
+     *            the duration of the build in milliseconds
+     */
+    public synchronized void record(String repositoryId, long millis) {
+        List<Long> samples = pending.get(repositoryId);
+        if (samples == null) {
+            samples = new ArrayList<>();
+            pending.put(repositoryId, samples);
+        }
+        append(samples, Collections.singletonList(millis));
+    }
+
+    /**
+     * Stores the durations recorded since the last call of this method, if any. The file is re-read before, so that
+     * the durations saved by other processes are kept.
+     */
+    public synchronized void save() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final Map<String, List<Long>> merged = read(historyFile);
+        for (Map.Entry<String, List<Long>> e : pending.entrySet()) {
+            List<Long> samples = merged.get(e.getKey());
+            if (samples == null) {
+                samples = new ArrayList<>();
+                merged.put(e.getKey(), samples);
+            }
+            append(samples, e.getValue());
+        }
+        final Path tmp = historyFile.resolveSibling(historyFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(historyFile.getParent());
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write("# The durations of the last nested builds in milliseconds by SCM repository\n");
+                for (Map.Entry<String, List<Long>> e : merged.entrySet()) {
+                    final StringBuilder line = new StringBuilder(e.getKey()).append('=');
+                    for (int i = 0; i < e.getValue().size(); i++) {
+                        line.append(i == 0 ? "" : ",").append(e.getValue().get(i));
+                    }
+                    w.write(line.append('\n').toString());
+                }
+            }
+            Files.move(tmp, historyFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("srcdeps: Could not write {}", historyFile, e);
+        }
+        saved = merged;
+        pending.clear();
+    }
+}
@@ -0,0 +1,60 @@
+package org.srcdeps.gradle.plugin;
+
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.config.ScmRepository;
+
+/**
+ * A unit of source dependency building: a {@link ScmRepository} id together with a {@link SrcVersion}. All
+ * {@link SourceDependency}s mapping to equal {@link BuildKey}s are produced by one and the same nested build.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public final class BuildKey {
+    private final int hashCode;
+    private final String scmRepositoryId;
+    private final SrcVersion srcVersion;
+
+    public BuildKey(String scmRepositoryId, SrcVersion srcVersion) {
+        super();
+        this.scmRepositoryId = scmRepositoryId;
+        this.srcVersion = srcVersion;
+        this.hashCode = 31 * scmRepositoryId.hashCode() + srcVersion.toString().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BuildKey)) {
+            return false;
+        }
+        BuildKey other = (BuildKey) obj;
+        return hashCode == other.hashCode && scmRepositoryId.equals(other.scmRepositoryId)
+                && srcVersion.toString().equals(other.srcVersion.toString());
+    }
+
+    /**
+     * @return the id of the {@link ScmRepository} as configured in {@code srcdeps.yaml}
+     */
+    public String getScmRepositoryId() {
+        return scmRepositoryId;
+    }
+
+    /**
+     * @return the {@link SrcVersion} to build
+     */
+    public SrcVersion getSrcVersion() {
+        return srcVersion;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return scmRepositoryId + "@" + srcVersion;
+    }
+}
@@ -0,0 +1,130 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.config.ScmRepository;
+
+/**
+ * Manages the files the output of the nested builds is written to if {@link SrcdepsGradleOptions#OUTPUT} is
+ * {@link SrcdepsGradleOptions.Output#file}. There is one file per SCM repository and source version under
+ * {@code <srcdeps-dir>/logs}, overwritten by every new build of the given version. The nested build process writes
+ * to the file directly, so that neither the console nor a thread of the outer build is involved, and the output of
+ * concurrent nested builds never gets interleaved. Only a bounded number of the last lines is read back by
+ * {@link #tail(Path, int)} to be shown in the console.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class BuildLogs {
+
+    /** The size of the blocks read from the end of a log file when looking for the last lines */
+    private static final int BLOCK_SIZE = 8192;
+
+    /**
+     * Reads the last {@code maxLines} lines of the given {@code file}, reading it backwards from the end so that the
+     * time and memory needed do not depend on the size of the file.
+     *
+     * @param file
+     *            the file to read
+     * @param maxLines
+     *            the maximal number of lines to return
+     * @return the last {@code maxLines} lines of the given {@code file} or less if there are less lines in the file
+     * @throws IOException
+     */
+    public static List<String> tail(Path file, int maxLines) throws IOException {
+        if (maxLines <= 0) {
+            return Collections.emptyList();
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long end = size;
+            /* a trailing line separator does not start a new line */
+            if (end > 0 && byteAt(channel, end - 1) == '\n') {
+                end--;
+                if (end > 0 && byteAt(channel, end - 1) == '\r') {
+                    end--;
+                }
+            }
+            long start = end;
+            int lines = 0;
+            final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+            search: while (start > 0) {
+                final long blockStart = Math.max(0, start - BLOCK_SIZE);
+                block.clear().limit((int) (start - blockStart));
+                readFully(channel, blockStart, block);
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n' && ++lines == maxLines) {
+                        start = blockStart + i + 1;
+                        break search;
+                    }
+                }
+                start = blockStart;
+            }
+            final ByteBuffer tail = ByteBuffer.allocate((int) (end - start));
+            readFully(channel, start, tail);
+            if (tail.position() == 0) {
+                return Collections.emptyList();
+            }
+            final String text = new String(tail.array(), 0, tail.position(), StandardCharsets.UTF_8);
+            final List<String> result = new ArrayList<>(Arrays.asList(text.split("\r?\n", -1)));
+            return result.size() > maxLines ? result.subList(result.size() - maxLines, result.size()) : result;
+        }
+    }
+
+    private static byte byteAt(SeekableByteChannel channel, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(1);
+        readFully(channel, position, buffer);
+        return buffer.get(0);
+    }
+
+    private static void readFully(SeekableByteChannel channel, long position, ByteBuffer buffer) throws IOException {
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException(String.format("Unexpected end of file at position %d", channel.position()));
+            }
+        }
+    }
+
+    private final Path logsDirectory;
+
+    @Inject
+    public BuildLogs(@Named(Wiring.SRCDEPS_DIRECTORY) Path srcdepsDirectory) {
+        super();
+        this.logsDirectory = srcdepsDirectory.resolve("logs");
+    }
+
+    /**
+     * Creates or truncates the log file of the given {@code scmRepo} and {@code srcVersion}. The caller is supposed
+     * to hold the build directory lock of the given {@code srcVersion}.
+     *
+     * @param scmRepo
+     *            the {@link ScmRepository} to build from
+     * @param srcVersion
+     *            the {@link SrcVersion} to build
+     * @return the path of the new empty log file
+     * @throws IOException
+     */
+    public Path newLogFile(ScmRepository scmRepo, SrcVersion srcVersion) throws IOException {
+        final Path file = logsDirectory.resolve(scmRepo.getIdAsPath()).resolve(srcVersion.toString() + ".log");
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[0]);
+        return file;
+    }
+}
@@ -0,0 +1,262 @@
+package org.srcdeps.gradle.plugin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A directed acyclic graph of nested builds, one node per {@link BuildKey}, where an edge means that the source tree
+ * of one node depends on a source version built by another node. The graph is discovered incrementally by
+ * {@link #explore()}, starting from the nodes {@link #add(BuildKey, Callable) added} by the caller and asking the
+ * {@link Explorer} for the dependencies of each node.
+ * <p>
+ * A node is submitted to the {@link Executor} once it is explored and all its dependencies have finished, so that
+ * the builds run in topological order and independent branches of the graph build concurrently. No worker thread
+ * ever blocks waiting for another node. Each node is registered in the {@link BuildRegistry} as soon as it is known,
+ * so that it is built at most once per outer build and so that other threads asking for it join the planned build
+ * instead of starting their own. Edges that would close a cycle are dropped.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class BuildPlan {
+
+    /**
+     * Finds the dependencies of a node of a {@link BuildPlan}.
+     */
+    public interface Explorer {
+        /**
+         * @param key
+         *            the {@link BuildKey} of the node to explore
+         * @return the builds the build of the given {@code key} depends on, by {@link BuildKey}
+         * @throws Exception
+         *             if the dependencies cannot be determined, in which case the node is assumed to have none
+         */
+        Map<BuildKey, Callable<Void>> explore(BuildKey key) throws Exception;
+    }
+
+    /**
+     * A node of the graph.
+     */
+    private final class Node {
+        private boolean completed;
+        private final Set<Node> dependencies = new HashSet<>();
+        private final Set<Node> dependents = new LinkedHashSet<>();
+        private final BuildKey key;
+        /** The number of unfinished dependencies plus one as long as the node is not explored */
+        private int pending = 1;
+        private final FutureTask<Void> task;
+
+        private Node(BuildKey key, Callable<Void> build) {
+            super();
+            this.key = key;
+            this.task = new FutureTask<Void>(build) {
+                @Override
+                protected void done() {
+                    completed(Node.this);
+                }
+            };
+        }
+
+        /**
+         * @param other
+         *            the node to look for
+         * @return {@code true} if this node depends on the given {@code other} node, possibly transitively
+         */
+        private boolean dependsOn(Node other) {
+            final Set<Node> visited = new HashSet<>();
+            final Deque<Node> stack = new ArrayDeque<>(dependencies);
+            while (!stack.isEmpty()) {
+                final Node n = stack.pop();
+                if (n == other) {
+                    return true;
+                }
+                if (visited.add(n)) {
+                    stack.addAll(n.dependencies);
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(BuildPlan.class);
+
+    private final Executor executor;
+    private final Explorer explorer;
+    private final Map<BuildKey, Node> nodes = new LinkedHashMap<>();
+    private final BuildRegistry registry;
+    private int remaining;
+    private final Deque<Node> unexplored = new ArrayDeque<>();
+
+    /**
+     * @param registry
+     *            the {@link BuildRegistry} to register the nodes in
+     * @param executor
+     *            the {@link Executor} to run the builds on
+     * @param explorer
+     *            the {@link Explorer} to find the dependencies of the nodes
+     */
+    public BuildPlan(BuildRegistry registry, Executor executor, Explorer explorer) {
+        super();
+        this.registry = registry;
+        this.executor = executor;
+        this.explorer = explorer;
+    }
+
+    /**
+     * Adds a node to the plan unless there is a build registered for the given {@code key} in the
+     * {@link BuildRegistry} already.
+     *
+     * @param key
+     *            the {@link BuildKey} of the node
+     * @param build
+     *            the build to perform for the given {@code key}
+     * @return {@code true} if the node was added; {@code false} if it is a part of this plan already or if it is
+     *         built outside of this plan
+     */
+    public synchronized boolean add(BuildKey key, Callable<Void> build) {
+        return !nodes.containsKey(key) && getOrAdd(key, build) != null;
+    }
+
+    /**
+     * Waits until all builds of this plan have finished.
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the {@link TimeUnit} of {@code timeout}
+     * @return {@code true} if all builds have finished; {@code false} if the timeout elapsed before
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (remaining > 0) {
+            final long waitMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (waitMs <= 0) {
+                return false;
+            }
+            wait(waitMs);
+        }
+        return true;
+    }
+
+    private void completed(Node node) {
+        final List<Node> ready = new ArrayList<>();
+        synchronized (this) {
+            node.completed = true;
+            for (Node dependent : node.dependents) {
+                if (--dependent.pending == 0) {
+                    ready.add(dependent);
+                }
+            }
+            remaining--;
+            notifyAll();
+        }
+        submit(ready);
+    }
+
+    /**
+     * Explores all nodes added so far and the nodes discovered on the way in the calling thread, submitting the
+     * nodes that are ready to be built as it goes. Supposed to be called once, after the initial nodes were
+     * {@link #add(BuildKey, Callable) added}.
+     */
+    public void explore() {
+        while (true) {
+            final Node node;
+            synchronized (this) {
+                node = unexplored.poll();
+            }
+            if (node == null) {
+                return;
+            }
+            Map<BuildKey, Callable<Void>> dependencies;
+            try {
+                dependencies = explorer.explore(node.key);
+            } catch (Exception e) {
+                log.warn("srcdeps: Could not find the source dependencies of {}", node.key, e);
+                dependencies = Collections.emptyMap();
+            }
+            final List<Node> ready = new ArrayList<>();
+            synchronized (this) {
+                for (Map.Entry<BuildKey, Callable<Void>> dependency : dependencies.entrySet()) {
+                    final Node dep = getOrAdd(dependency.getKey(), dependency.getValue());
+                    if (dep == null || dep == node || node.dependencies.contains(dep)) {
+                        /* built outside of this plan or known already */
+                        continue;
+                    }
+                    if (dep.dependsOn(node)) {
+                        log.warn("srcdeps: Ignoring the dependency of {} on {} that would close a cycle", node.key,
+                                dep.key);
+                        continue;
+                    }
+                    log.debug("srcdeps: {} depends on {}", node.key, dep.key);
+                    node.dependencies.add(dep);
+                    dep.dependents.add(node);
+                    if (!dep.completed) {
+                        node.pending++;
+                    }
+                }
+                if (--node.pending == 0) {
+                    ready.add(node);
+                }
+            }
+            submit(ready);
+        }
+    }
+
+    /**
+     * @param key
+     *            the {@link BuildKey} of the node
+     * @param build
+     *            the build to perform for the given {@code key}
+     * @return the node of the given {@code key}, newly created if needed, or {@code null} if the given {@code key}
+     *         is built outside of this plan
+     */
+    private Node getOrAdd(BuildKey key, Callable<Void> build) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = new Node(key, build);
+            if (!registry.register(key, node.task)) {
+                log.debug("srcdeps: {} is built outside of the build plan", key);
+                return null;
+            }
+            nodes.put(key, node);
+            unexplored.add(node);
+            remaining++;
+        }
+        return node;
+    }
+
+    /**
+     * @return the number of nodes in this plan
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    private void submit(List<Node> ready) {
+        for (Node node : ready) {
+            log.debug("srcdeps: Scheduling the build of {}", node.key);
+            try {
+                executor.execute(node.task);
+            } catch (RejectedExecutionException e) {
+                /* somebody may be waiting for it */
+                node.task.run();
+            }
+        }
+    }
+}
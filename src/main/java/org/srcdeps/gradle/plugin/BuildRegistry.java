@@ -0,0 +1,136 @@
+package org.srcdeps.gradle.plugin;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-process single-flight registry of nested builds: for each {@link BuildKey}, only the first caller of
+ * {@link #getOrRun(BuildKey, Callable)} or {@link #getOrSchedule(BuildKey, Callable, Executor)} actually performs
+ * the build. All other callers get the same {@link Future} and thus also the same outcome, including failures.
+ * <p>
+ * The registry is build-scoped: {@link #clear()} is supposed to be called at the end of every outer build, so that
+ * the next build in the same Gradle daemon re-checks and retries.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class BuildRegistry {
+    private static final Logger log = LoggerFactory.getLogger(BuildRegistry.class);
+
+    private final ConcurrentMap<BuildKey, FutureTask<Void>> builds = new ConcurrentHashMap<>();
+
+    /**
+     * Forgets all builds performed so far.
+     */
+    public void clear() {
+        builds.clear();
+    }
+
+    /**
+     * @param key
+     *            the {@link BuildKey} to look up
+     * @return the {@link Future} of the build registered under the given {@code key} or {@code null} if there is
+     *         none
+     */
+    public Future<Void> get(BuildKey key) {
+        return builds.get(key);
+    }
+
+    /**
+     * Returns the {@link Future} of the build registered under the given {@code key}. If there is none, the given
+     * {@code build} is registered and run in the calling thread.
+     *
+     * @param key
+     *            the {@link BuildKey} of the build
+     * @param build
+     *            the build to perform if nobody has performed it yet
+     * @return a {@link Future} that is done when this method returns, unless the same build is being performed by
+     *         another thread
+     */
+    public Future<Void> getOrRun(BuildKey key, Callable<Void> build) {
+        final FutureTask<Void> newTask = new FutureTask<>(build);
+        final FutureTask<Void> existingTask = builds.putIfAbsent(key, newTask);
+        if (existingTask != null) {
+            log.debug("srcdeps: Joining the build of {} started by another thread", key);
+            return existingTask;
+        }
+        newTask.run();
+        return newTask;
+    }
+
+    /**
+     * Registers the given {@code build} under the given {@code key} without running it, unless there is a build
+     * registered under the given {@code key} already. The caller is responsible for running the registered
+     * {@code build} eventually, because other callers may be waiting for it.
+     *
+     * @param key
+     *            the {@link BuildKey} of the build
+     * @param build
+     *            the build to register
+     * @return {@code true} if the given {@code build} was registered; {@code false} if another build was registered
+     *         under the given {@code key} already
+     */
+    public boolean register(BuildKey key, FutureTask<Void> build) {
+        return builds.putIfAbsent(key, build) == null;
+    }
+
+    /**
+     * Replaces the given finished {@code previous} build of the given {@code key} with the given {@code build} and
+     * runs it in the calling thread. If {@code previous} has been replaced by another thread already, the replacement
+     * is joined instead, so that there is at most one follow-up build per finished build.
+     *
+     * @param key
+     *            the {@link BuildKey} of the build
+     * @param previous
+     *            the {@link Future} of the build that turned out to be insufficient
+     * @param build
+     *            the follow-up build
+     * @return a {@link Future} that is done when this method returns, unless the follow-up build is being performed
+     *         by another thread
+     */
+    public Future<Void> rerun(BuildKey key, Future<Void> previous, Callable<Void> build) {
+        if (builds.remove(key, previous)) {
+            log.debug("srcdeps: Performing a follow-up build of {}", key);
+        }
+        return getOrRun(key, build);
+    }
+
+    /**
+     * Returns the {@link Future} of the build registered under the given {@code key}. If there is none, the given
+     * {@code build} is registered and submitted to the given {@code executor}.
+     *
+     * @param key
+     *            the {@link BuildKey} of the build
+     * @param build
+     *            the build to perform if nobody has performed it yet
+     * @param executor
+     *            the {@link Executor} to run the {@code build} on
+     * @return the {@link Future} of the build
+     */
+    public Future<Void> getOrSchedule(BuildKey key, Callable<Void> build, Executor executor) {
+        final FutureTask<Void> newTask = new FutureTask<>(build);
+        final FutureTask<Void> existingTask = builds.putIfAbsent(key, newTask);
+        if (existingTask != null) {
+            return existingTask;
+        }
+        try {
+            executor.execute(newTask);
+        } catch (RejectedExecutionException e) {
+            builds.remove(key, newTask);
+            throw e;
+        }
+        return newTask;
+    }
+}
@@ -0,0 +1,202 @@
+package org.srcdeps.gradle.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Collects the time spent by srcdeps in the individual {@link Phase}s, per {@link BuildKey}, over one outer build.
+ * The collected data is available as a JSON friendly {@link #toReport() report} and as a one line
+ * {@link #toSummary() summary}. The timings are supposed to be {@link #clear() cleared} at the end of every outer
+ * build.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class BuildTimings {
+
+    /**
+     * The measured phases.
+     */
+    public enum Phase {
+        /** Loading {@code srcdeps.yaml}; not bound to any {@link BuildKey} */
+        configurationLoad,
+        /** Finding the {@code ScmRepository} for a dependency */
+        repositoryLookup,
+        /** Waiting for the lock of a build directory */
+        lockWait,
+        /** Fetching the needed revision into a local mirror */
+        scmFetch,
+        /** Restoring the artifacts from the {@link ArtifactCache} */
+        cacheRestore,
+        /** Waiting for a free slot of {@link NestedBuildSlots} */
+        slotWait,
+        /** The nested build, including the checkout from the (mirrored) SCM */
+        nestedBuild,
+        /** Checking that the expected artifact was installed */
+        artifactCheck;
+    }
+
+    /** The subject of the phases not bound to any {@link BuildKey} */
+    private static final String GLOBAL = "";
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private static String formatSeconds(long nanos) {
+        return String.format(Locale.ROOT, "%.1f s", nanos / 1e9d);
+    }
+
+    private static Map<String, Object> toMillis(AtomicLongArray nanos) {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        long total = 0;
+        for (Phase phase : PHASES) {
+            final long value = nanos.get(phase.ordinal());
+            if (value > 0) {
+                result.put(phase.name(), TimeUnit.NANOSECONDS.toMillis(value));
+                total += value;
+            }
+        }
+        result.put("total", TimeUnit.NANOSECONDS.toMillis(total));
+        return result;
+    }
+
+    private static long total(AtomicLongArray nanos) {
+        long total = 0;
+        for (int i = 0; i < nanos.length(); i++) {
+            total += nanos.get(i);
+        }
+        return total;
+    }
+
+    private final ConcurrentMap<String, AtomicLongArray> timings = new ConcurrentHashMap<>();
+
+    /**
+     * Forgets all timings recorded so far.
+     */
+    public void clear() {
+        timings.clear();
+    }
+
+    /**
+     * @return {@code true} if nothing was recorded since the last {@link #clear()}; {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return timings.isEmpty();
+    }
+
+    /**
+     * Adds the time elapsed since {@code startNanos} to the given {@code phase} of the given {@code key}.
+     *
+     * @param key
+     *            the {@link BuildKey} the time was spent for or {@code null} if the {@code phase} is not bound to
+     *            any {@link BuildKey}
+     * @param phase
+     *            the {@link Phase} the time was spent in
+     * @param startNanos
+     *            the start of the measured interval as returned by {@link System#nanoTime()}
+     */
+    public void record(BuildKey key, Phase phase, long startNanos) {
+        recordDuration(key, phase, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds the given {@code nanos} to the given {@code phase} of the given {@code key}.
+     *
+     * @param key
+     *            the {@link BuildKey} the time was spent for or {@code null} if the {@code phase} is not bound to
+     *            any {@link BuildKey}
+     * @param phase
+     *            the {@link Phase} the time was spent in
+     * @param nanos
+     *            the duration in nanoseconds
+     */
+    public void recordDuration(BuildKey key, Phase phase, long nanos) {
+        final String subject = key == null ? GLOBAL : key.toString();
+        AtomicLongArray entry = timings.get(subject);
+        if (entry == null) {
+            final AtomicLongArray newEntry = new AtomicLongArray(PHASES.length);
+            entry = timings.putIfAbsent(subject, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        entry.addAndGet(phase.ordinal(), nanos);
+    }
+
+    /**
+     * @return the sums of all recorded phases in nanoseconds, indexed by {@link Phase#ordinal()}
+     */
+    private long[] sums() {
+        final long[] result = new long[PHASES.length];
+        for (AtomicLongArray entry : timings.values()) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] += entry.get(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a tree of {@link Map}s, {@link List}s, {@link String}s and {@link Long}s suitable for serializing to
+     *         JSON: the totals per {@link Phase} in milliseconds and the same for each {@link BuildKey}, the most
+     *         expensive ones first
+     */
+    public Map<String, Object> toReport() {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        final long[] sums = sums();
+        final AtomicLongArray totals = new AtomicLongArray(sums);
+        result.put("totals", toMillis(totals));
+
+        final List<Map.Entry<String, AtomicLongArray>> entries = new ArrayList<>(timings.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, AtomicLongArray>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicLongArray> e1, Map.Entry<String, AtomicLongArray> e2) {
+                return Long.compare(total(e2.getValue()), total(e1.getValue()));
+            }
+        });
+        final List<Map<String, Object>> dependencies = new ArrayList<>(entries.size());
+        for (Map.Entry<String, AtomicLongArray> entry : entries) {
+            if (GLOBAL.equals(entry.getKey())) {
+                continue;
+            }
+            final Map<String, Object> dependency = new LinkedHashMap<>();
+            dependency.put("dependency", entry.getKey());
+            dependency.putAll(toMillis(entry.getValue()));
+            dependencies.add(dependency);
+        }
+        result.put("dependencies", dependencies);
+        return result;
+    }
+
+    /**
+     * @return a one line human readable summary of the recorded timings
+     */
+    public String toSummary() {
+        final long[] sums = sums();
+        long total = 0;
+        final StringBuilder phases = new StringBuilder();
+        for (Phase phase : PHASES) {
+            final long value = sums[phase.ordinal()];
+            if (value > 0) {
+                total += value;
+                phases.append(phases.length() == 0 ? "" : ", ").append(phase.name()).append(' ')
+                        .append(formatSeconds(value));
+            }
+        }
+        int count = timings.size() - (timings.containsKey(GLOBAL) ? 1 : 0);
+        return String.format("srcdeps: %d source dependency revision(s), %s in total (%s)", count,
+                formatSeconds(total), phases);
+    }
+}
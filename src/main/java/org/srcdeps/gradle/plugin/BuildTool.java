@@ -0,0 +1,32 @@
+package org.srcdeps.gradle.plugin;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The build tools srcdeps can use for building source dependencies.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public enum BuildTool {
+    gradle, maven, unknown;
+
+    /**
+     * @param projectRootDirectory
+     *            the root directory of a checked out source tree
+     * @return the {@link BuildTool} the given source tree seems to be built with or {@link #unknown} if the
+     *         directory is empty or its content is not recognized
+     */
+    public static BuildTool detect(Path projectRootDirectory) {
+        if (Files.exists(projectRootDirectory.resolve("pom.xml"))) {
+            return maven;
+        }
+        for (String file : new String[] { "settings.gradle", "build.gradle", "settings.gradle.kts",
+                "build.gradle.kts" }) {
+            if (Files.exists(projectRootDirectory.resolve(file))) {
+                return gradle;
+            }
+        }
+        return unknown;
+    }
+}
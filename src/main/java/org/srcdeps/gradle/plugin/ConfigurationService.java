@@ -2,9 +2,16 @@ package org.srcdeps.gradle.plugin;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -20,29 +27,128 @@ import org.srcdeps.core.config.tree.walk.OverrideVisitor;
 
 /**
  * Provides the srcdeps {@link Configuration} and paths to some project directories.
+ * <p>
+ * The parsed {@link Configuration}s are cached for the lifetime of the class loader, i.e. possibly over several
+ * builds run by the same Gradle daemon. A cached {@link Configuration} is reused as long as its {@link Fingerprint}
+ * does not change.
  *
  * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
  */
 @Named
 @Singleton
 public class ConfigurationService {
+    /**
+     * The state of a {@code srcdeps.yaml} file and of the system properties that may influence the resulting
+     * {@link Configuration}, cheap enough to be checked on every build.
+     */
+    static final class Fingerprint {
+
+        /**
+         * @param srcdepsYamlPath
+         *            the path to {@code srcdeps.yaml}
+         * @param systemProperties
+         *            the system properties to take the {@code srcdeps.*} overrides from
+         * @return a new {@link Fingerprint}
+         */
+        public static Fingerprint of(Path srcdepsYamlPath, Properties systemProperties) {
+            long lastModified = -1;
+            long size = -1;
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(srcdepsYamlPath, BasicFileAttributes.class);
+                lastModified = attrs.lastModifiedTime().toMillis();
+                size = attrs.size();
+            } catch (IOException e) {
+                /* does not exist or is not readable - a distinct state as well */
+            }
+            final Map<String, String> overrides = new TreeMap<>();
+            for (String key : systemProperties.stringPropertyNames()) {
+                if (key.startsWith(SRCDEPS_PROPERTY_PREFIX)
+                        || key.equals(Configuration.getSrcdepsEncodingProperty())) {
+                    overrides.put(key, systemProperties.getProperty(key));
+                }
+            }
+            return new Fingerprint(lastModified, size, overrides);
+        }
+
+        private final int hashCode;
+        private final long lastModified;
+        private final Map<String, String> overrides;
+        private final long size;
+
+        private Fingerprint(long lastModified, long size, Map<String, String> overrides) {
+            super();
+            this.lastModified = lastModified;
+            this.size = size;
+            this.overrides = overrides;
+            this.hashCode = 31 * (31 * (int) (lastModified ^ (lastModified >>> 32)) + (int) (size ^ (size >>> 32)))
+                    + overrides.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) obj;
+            return lastModified == other.lastModified && size == other.size && overrides.equals(other.overrides);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class CachedConfiguration {
+        private final Configuration configuration;
+        private final Fingerprint fingerprint;
+        private final ScmRepositoryIndex scmRepositoryIndex;
+
+        private CachedConfiguration(Fingerprint fingerprint, Configuration configuration) {
+            super();
+            this.fingerprint = fingerprint;
+            this.configuration = configuration;
+            this.scmRepositoryIndex = new ScmRepositoryIndex(configuration.getRepositories());
+        }
+    }
+
+    private static final ConcurrentMap<Path, CachedConfiguration> configurationCache = new ConcurrentHashMap<>();
     private static final Logger log = LoggerFactory.getLogger(ConfigurationService.class);
-    public static final String SRCDEPS_YAML_PATH = "SRCDEPS_YAML_PATH";
-    private final Configuration configuration;
 
-    private final Path configurationLocation;
-    private final Path multimoduleProjectRootDirectory;
+    /** The prefix of system properties that can override the values set in {@code srcdeps.yaml} */
+    static final String SRCDEPS_PROPERTY_PREFIX = "srcdeps.";
 
-    @Inject
-    public ConfigurationService(@Named(SRCDEPS_YAML_PATH) Path srcdepsYamlPath) {
-        super();
-        this.configurationLocation = srcdepsYamlPath;
-        this.multimoduleProjectRootDirectory = srcdepsYamlPath.getParent();
+    public static final String SRCDEPS_YAML_PATH = "SRCDEPS_YAML_PATH";
 
+    /**
+     * Returns the {@link Configuration} cached for the given {@code srcdepsYamlPath} if its {@link Fingerprint} is
+     * still valid or otherwise loads it anew and caches it.
+     *
+     * @param srcdepsYamlPath
+     * @return the {@link CachedConfiguration}
+     */
+    private static CachedConfiguration getOrLoad(Path srcdepsYamlPath) {
+        final Properties systemProperties = System.getProperties();
+        final Fingerprint fingerprint = Fingerprint.of(srcdepsYamlPath, systemProperties);
+        final CachedConfiguration cached = configurationCache.get(srcdepsYamlPath);
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            log.debug("srcdeps: Reusing configuration loaded from {}", srcdepsYamlPath);
+            return cached;
+        }
+        final CachedConfiguration result = new CachedConfiguration(fingerprint,
+                load(srcdepsYamlPath, systemProperties));
+        configurationCache.put(srcdepsYamlPath, result);
+        return result;
+    }
+
+    private static Configuration load(Path srcdepsYamlPath, Properties systemProperties) {
         final Configuration.Builder configBuilder;
         if (Files.exists(srcdepsYamlPath)) {
             log.debug("srcdeps: Using configuration {}", srcdepsYamlPath);
-            final String encoding = System.getProperty(Configuration.getSrcdepsEncodingProperty(), "utf-8");
+            final String encoding = systemProperties.getProperty(Configuration.getSrcdepsEncodingProperty(), "utf-8");
             final Charset cs = Charset.forName(encoding);
             try (Reader r = Files.newBufferedReader(srcdepsYamlPath, cs)) {
                 configBuilder = new YamlConfigurationIo().read(r);
@@ -55,12 +161,50 @@ public class ConfigurationService {
             configBuilder = Configuration.builder();
         }
 
-        this.configuration = configBuilder //
-                .accept(new OverrideVisitor(System.getProperties())) //
+        return configBuilder //
+                .accept(new OverrideVisitor(systemProperties)) //
                 .accept(new DefaultsAndInheritanceVisitor()) //
                 .build();
     }
 
+    /**
+     * Parses the {@code srcdeps.yaml} found in the source tree of a source dependency, as the nested build would do,
+     * except for applying the overrides from system properties.
+     *
+     * @param srcdepsYaml
+     *            the content of {@code srcdeps.yaml}
+     * @return a new {@link ScmRepositoryIndex} of the repositories configured in the given {@code srcdepsYaml}
+     * @throws IOException
+     * @throws ConfigurationException
+     */
+    static ScmRepositoryIndex readScmRepositoryIndex(String srcdepsYaml) throws IOException, ConfigurationException {
+        try (Reader r = new StringReader(srcdepsYaml)) {
+            final Configuration configuration = new YamlConfigurationIo().read(r) //
+                    .accept(new DefaultsAndInheritanceVisitor()) //
+                    .build();
+            return new ScmRepositoryIndex(configuration.getRepositories());
+        }
+    }
+
+    private final Configuration configuration;
+
+    private final Path configurationLocation;
+    private final long loadNanos;
+    private final Path multimoduleProjectRootDirectory;
+    private final ScmRepositoryIndex scmRepositoryIndex;
+
+    @Inject
+    public ConfigurationService(@Named(SRCDEPS_YAML_PATH) Path srcdepsYamlPath) {
+        super();
+        this.configurationLocation = srcdepsYamlPath;
+        this.multimoduleProjectRootDirectory = srcdepsYamlPath.getParent();
+        final long start = System.nanoTime();
+        final CachedConfiguration cached = getOrLoad(srcdepsYamlPath);
+        this.configuration = cached.configuration;
+        this.scmRepositoryIndex = cached.scmRepositoryIndex;
+        this.loadNanos = System.nanoTime() - start;
+    }
+
     /**
      * @return the {@link Configuration} loaded fron {@link #getConfigurationLocation()}.
      */
@@ -75,6 +219,14 @@ public class ConfigurationService {
         return configurationLocation;
     }
 
+    /**
+     * @return the time in nanoseconds it took to load the {@link Configuration}, including the
+     *         {@link Fingerprint} check
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
     /**
      * @return the {@link Path} to the root directory of the current Gradle multimodule project tree
      */
@@ -82,4 +234,11 @@ public class ConfigurationService {
         return multimoduleProjectRootDirectory;
     }
 
+    /**
+     * @return the {@link ScmRepositoryIndex} of the repositories of {@link #getConfiguration()}
+     */
+    public ScmRepositoryIndex getScmRepositoryIndex() {
+        return scmRepositoryIndex;
+    }
+
 }
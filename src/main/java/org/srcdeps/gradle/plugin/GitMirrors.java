@@ -0,0 +1,424 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.SrcVersion.WellKnownType;
+import org.srcdeps.core.config.ScmRepository;
+
+/**
+ * Keeps one bare Git mirror per remote URL under {@code <srcdeps-dir>/mirrors} and lets the per-revision build
+ * directories share the objects of the mirror, so that checking out a new revision of an already known repository
+ * costs only the delta between the revisions.
+ * <p>
+ * Only what is needed for the given {@link SrcVersion} is fetched into the mirror: nothing if the requested commit
+ * is there already, just the given branch or tag otherwise. For revisions, the commit is asked for directly and only
+ * if the remote does not allow that, all branches and tags are fetched. All fetches are incremental. A branch or tag
+ * locked in the {@link SrcdepsLockfile} is not fetched at all; the locked commit is fetched instead and the branch
+ * or tag is pointed at it in the mirror, so that the nested build checks out the locked commit.
+ * <p>
+ * The build directories are initialized with {@code objects/info/alternates} pointing to the mirror and the nested
+ * build gets the mirror's {@code file://} URL prepended to the configured URLs, so that the checkout performed by
+ * srcdeps-core transfers (almost) nothing. The mirrors can be switched off via
+ * {@link SrcdepsGradleOptions#GIT_MIRRORS}.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class GitMirrors {
+    private static final String GIT_PREFIX = "git:";
+    private static final Logger log = LoggerFactory.getLogger(GitMirrors.class);
+    private static final String REVISION_REF_PREFIX = Constants.R_HEADS + "srcdeps/";
+
+    /**
+     * @param url
+     *            the URL to hash
+     * @return the hex SHA-1 of the given {@code url}
+     */
+    static String hash(String url) {
+        try {
+            final byte[] bytes = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            return ObjectId.fromRaw(bytes).name();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void link(Path projectBuildDir, Path mirrorDir) throws IOException, GitAPIException {
+        final Path gitDir = projectBuildDir.resolve(Constants.DOT_GIT);
+        if (!Files.exists(gitDir)) {
+            Files.createDirectories(projectBuildDir);
+            Git.init().setDirectory(projectBuildDir.toFile()).call().close();
+        }
+        final Path alternates = gitDir.resolve("objects/info/alternates");
+        final String mirrorObjects = mirrorDir.resolve("objects").toAbsolutePath().toString();
+        if (Files.exists(alternates)
+                && Files.readAllLines(alternates, StandardCharsets.UTF_8).contains(mirrorObjects)) {
+            return;
+        }
+        Files.createDirectories(alternates.getParent());
+        Files.write(alternates, Collections.singletonList(mirrorObjects), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @param workTree
+     *            a git work tree, such as a build directory
+     * @return the id of the commit checked out in the given {@code workTree} or {@code null} if it cannot be read
+     */
+    public static String readHead(Path workTree) {
+        final Path gitDir = workTree.resolve(Constants.DOT_GIT);
+        if (!Files.isDirectory(gitDir)) {
+            return null;
+        }
+        try (Repository repo = new FileRepositoryBuilder().setGitDir(gitDir.toFile()).build()) {
+            final ObjectId head = repo.resolve(Constants.HEAD);
+            return head == null ? null : head.name();
+        } catch (IOException | RuntimeException e) {
+            log.debug("srcdeps: Could not read the HEAD of {}", workTree, e);
+            return null;
+        }
+    }
+
+    private final ConcurrentMap<Path, Object> locks = new ConcurrentHashMap<>();
+    private final Path mirrorsDirectory;
+
+    @Inject
+    public GitMirrors(@Named(Wiring.SRCDEPS_DIRECTORY) Path srcdepsDirectory) {
+        super();
+        this.mirrorsDirectory = srcdepsDirectory.resolve("mirrors");
+    }
+
+    /**
+     * Makes sure that the commit requested by {@code srcVersion} is available in the mirror of the given
+     * {@code remoteUrl}, fetching only what is missing.
+     *
+     * @param remoteUrl
+     *            the URL to mirror, without the {@code git:} prefix
+     * @param srcVersion
+     *            the version to fetch
+     * @return the directory of the bare mirror
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    Path fetch(String remoteUrl, SrcVersion srcVersion) throws IOException, GitAPIException {
+        return fetch(remoteUrl, srcVersion, null);
+    }
+
+    /**
+     * Like {@link #fetch(String, SrcVersion)}, but if a {@code lockedCommit} is given, it is fetched instead of the
+     * branch or tag and the branch or tag of the given {@code srcVersion} is pointed at it in the mirror, so that the
+     * nested build checks out the locked commit even if the branch or tag has moved on in the remote.
+     *
+     * @param remoteUrl
+     *            the URL to mirror, without the {@code git:} prefix
+     * @param srcVersion
+     *            the version to fetch
+     * @param lockedCommit
+     *            the commit the given branch or tag {@code srcVersion} is locked to in the {@link SrcdepsLockfile} or
+     *            {@code null} if it is not locked
+     * @return the directory of the bare mirror
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    Path fetch(String remoteUrl, SrcVersion srcVersion, String lockedCommit) throws IOException, GitAPIException {
+        final Path mirrorDir = mirrorsDirectory.resolve(hash(remoteUrl) + ".git");
+        Object lock = locks.get(mirrorDir);
+        if (lock == null) {
+            final Object newLock = new Object();
+            lock = locks.putIfAbsent(mirrorDir, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        synchronized (lock) {
+            Files.createDirectories(mirrorsDirectory);
+            final Path lockFile = mirrorsDirectory.resolve(mirrorDir.getFileName() + ".lock");
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE); FileLock fileLock = channel.lock()) {
+                try (Git git = openMirror(mirrorDir, remoteUrl)) {
+                    if (lockedCommit == null) {
+                        fetch(git, remoteUrl, srcVersion);
+                    } else {
+                        pin(git, remoteUrl, srcVersion, lockedCommit);
+                    }
+                }
+                /* the last access time for the BuildDirectoryEvictor */
+                Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        }
+        return mirrorDir;
+    }
+
+    private void fetch(Git git, String remoteUrl, SrcVersion srcVersion) throws IOException, GitAPIException {
+        final String scmVersion = srcVersion.getScmVersion();
+        final WellKnownType type = srcVersion.getWellKnownType();
+        if (type == WellKnownType.revision) {
+            fetchCommit(git, remoteUrl, scmVersion);
+        } else {
+            final String ref = RefResolutionCache.refName(srcVersion);
+            log.info("srcdeps: Fetching {} from {}", ref, remoteUrl);
+            git.fetch().setRemote(Constants.DEFAULT_REMOTE_NAME).setRefSpecs(new RefSpec("+" + ref + ":" + ref))
+                    .call();
+        }
+    }
+
+    private void fetchCommit(Git git, String remoteUrl, String commitId) throws IOException, GitAPIException {
+        final ObjectId commit = ObjectId.fromString(commitId);
+        if (git.getRepository().hasObject(commit)) {
+            log.debug("srcdeps: Commit {} found in the mirror of {}", commitId, remoteUrl);
+            return;
+        }
+        try {
+            log.info("srcdeps: Fetching commit {} from {}", commitId, remoteUrl);
+            git.fetch().setRemote(Constants.DEFAULT_REMOTE_NAME)
+                    .setRefSpecs(new RefSpec(commitId + ":" + REVISION_REF_PREFIX + commitId)).call();
+        } catch (GitAPIException | RuntimeException e) {
+            log.debug("srcdeps: Could not fetch commit {} directly from {}", commitId, remoteUrl, e);
+        }
+        if (!git.getRepository().hasObject(commit)) {
+            log.info("srcdeps: Fetching all branches and tags from {}", remoteUrl);
+            git.fetch().setRemote(Constants.DEFAULT_REMOTE_NAME)
+                    .setRefSpecs(new RefSpec("+refs/heads/*:refs/heads/*"), new RefSpec("+refs/tags/*:refs/tags/*"))
+                    .call();
+        }
+    }
+
+    private Git openMirror(Path mirrorDir, String remoteUrl) throws IOException, GitAPIException {
+        final File dir = mirrorDir.toFile();
+        if (!Files.exists(mirrorDir.resolve(Constants.CONFIG))) {
+            log.debug("srcdeps: Creating a mirror of {} in {}", remoteUrl, mirrorDir);
+            Git.init().setBare(true).setDirectory(dir).call().close();
+        }
+        /* unlike new Git(repo), Git.open() makes Git.close() close the Repository too */
+        final Git git = Git.open(dir);
+        try {
+            final StoredConfig config = git.getRepository().getConfig();
+            if (!remoteUrl.equals(config.getString("remote", Constants.DEFAULT_REMOTE_NAME, "url"))) {
+                config.setString("remote", Constants.DEFAULT_REMOTE_NAME, "url", remoteUrl);
+                config.save();
+            }
+            return git;
+        } catch (IOException | RuntimeException e) {
+            git.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Points the branch or tag of the given {@code srcVersion} in the mirror at the given {@code commit}, fetching
+     * the commit first if the mirror does not contain it yet.
+     *
+     * @param git
+     *            the mirror
+     * @param remoteUrl
+     *            the URL of the remote repository
+     * @param srcVersion
+     *            the branch or tag version to pin
+     * @param commit
+     *            the commit to pin to
+     * @throws IOException
+     *             if the commit cannot be fetched or the ref cannot be updated
+     * @throws GitAPIException
+     */
+    private void pin(Git git, String remoteUrl, SrcVersion srcVersion, String commit)
+            throws IOException, GitAPIException {
+        fetchCommit(git, remoteUrl, commit);
+        final ObjectId commitId = ObjectId.fromString(commit);
+        if (!git.getRepository().hasObject(commitId)) {
+            throw new IOException(String.format("Commit %s not found in %s", commit, remoteUrl));
+        }
+        final String ref = RefResolutionCache.refName(srcVersion);
+        final RefUpdate update = git.getRepository().updateRef(ref);
+        update.setNewObjectId(commitId);
+        update.setForceUpdate(true);
+        final RefUpdate.Result result = update.update();
+        switch (result) {
+        case NEW:
+        case FORCED:
+        case FAST_FORWARD:
+        case NO_CHANGE:
+            log.debug("srcdeps: Pointed {} at the locked commit {} in the mirror of {}", ref, commit, remoteUrl);
+            break;
+        default:
+            throw new IOException(
+                    String.format("Could not point %s at %s in the mirror of %s: %s", ref, commit, remoteUrl, result));
+        }
+    }
+
+    /**
+     * @param scmRepo
+     *            the repository the given {@code srcVersion} comes from
+     * @param srcVersion
+     *            the version to resolve
+     * @return the commit id the given {@code srcVersion} pointed to when it was last fetched into or pinned in a
+     *         mirror of the given {@code scmRepo} or {@code null} if there is no such mirror or if it does not contain
+     *         the given {@code srcVersion}
+     */
+    public String resolveCommit(ScmRepository scmRepo, SrcVersion srcVersion) {
+        final WellKnownType type = srcVersion.getWellKnownType();
+        if (type == WellKnownType.revision) {
+            return srcVersion.getScmVersion();
+        }
+        final String ref = RefResolutionCache.refName(srcVersion);
+        for (String url : scmRepo.getUrls()) {
+            if (!url.startsWith(GIT_PREFIX)) {
+                continue;
+            }
+            final Path mirrorDir = mirrorsDirectory.resolve(hash(url.substring(GIT_PREFIX.length())) + ".git");
+            if (!Files.exists(mirrorDir.resolve(Constants.CONFIG))) {
+                continue;
+            }
+            try (Repository repo = new FileRepositoryBuilder().setGitDir(mirrorDir.toFile()).setBare().build()) {
+                final Ref resolved = repo.exactRef(ref);
+                if (resolved != null) {
+                    final Ref peeled = repo.peel(resolved);
+                    return (peeled.getPeeledObjectId() != null ? peeled.getPeeledObjectId() : peeled.getObjectId())
+                            .name();
+                }
+            } catch (IOException e) {
+                log.debug("srcdeps: Could not read {}", mirrorDir, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes sure that the commit requested by {@code srcVersion} is available in the mirror of the first
+     * {@code git:} URL of the given {@code scmRepo} that can be fetched from.
+     *
+     * @param scmRepo
+     *            the repository to mirror
+     * @param srcVersion
+     *            the version to fetch
+     * @return {@code true} if the given {@code srcVersion} is available in a mirror; {@code false} if the mirrors
+     *         are disabled or if none could be fetched
+     */
+    public boolean mirror(ScmRepository scmRepo, SrcVersion srcVersion) {
+        if (!SrcdepsGradleOptions.isGitMirrors()) {
+            return false;
+        }
+        for (String url : scmRepo.getUrls()) {
+            if (!url.startsWith(GIT_PREFIX)) {
+                continue;
+            }
+            final String remoteUrl = url.substring(GIT_PREFIX.length());
+            try {
+                fetch(remoteUrl, srcVersion);
+                return true;
+            } catch (IOException | GitAPIException | RuntimeException e) {
+                log.warn(String.format("srcdeps: Could not use a mirror of [%s]", remoteUrl), e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the {@link ModuleIndex} of the commit {@code srcVersion} pointed to when it was last fetched into a
+     * mirror of the given {@code scmRepo}, without checking it out.
+     *
+     * @param scmRepo
+     *            the repository the given {@code srcVersion} comes from
+     * @param srcVersion
+     *            the version whose modules should be indexed
+     * @return a new {@link ModuleIndex} or {@code null} if there is no mirror containing the given
+     *         {@code srcVersion} or if it cannot be read
+     */
+    public ModuleIndex indexModules(ScmRepository scmRepo, SrcVersion srcVersion) {
+        final String commit = resolveCommit(scmRepo, srcVersion);
+        if (commit == null) {
+            return null;
+        }
+        for (String url : scmRepo.getUrls()) {
+            if (!url.startsWith(GIT_PREFIX)) {
+                continue;
+            }
+            final Path mirrorDir = mirrorsDirectory.resolve(hash(url.substring(GIT_PREFIX.length())) + ".git");
+            if (!Files.exists(mirrorDir.resolve(Constants.CONFIG))) {
+                continue;
+            }
+            try (Repository repo = new FileRepositoryBuilder().setGitDir(mirrorDir.toFile()).setBare().build()) {
+                final ObjectId commitId = ObjectId.fromString(commit);
+                if (repo.hasObject(commitId)) {
+                    return ModuleIndex.read(repo, commitId);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("srcdeps: Could not index the modules of {} in {}", commit, mirrorDir, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prepares the given {@code projectBuildDir} for checking out {@code srcVersion} from the given {@code scmRepo}
+     * and returns the URLs the nested build should use.
+     *
+     * @param scmRepo
+     *            the repository to check out from
+     * @param srcVersion
+     *            the version to check out
+     * @param projectBuildDir
+     *            the build directory where the checkout will happen
+     * @param lockedCommit
+     *            the commit the given branch or tag {@code srcVersion} is locked to in the {@link SrcdepsLockfile} or
+     *            {@code null} if it is not locked; see {@link #fetch(String, SrcVersion, String)}
+     * @return the URLs configured in {@code scmRepo}, prepended with the URL of the mirror if the mirror could be
+     *         prepared or just the configured URLs if not
+     */
+    public List<String> prepare(ScmRepository scmRepo, SrcVersion srcVersion, Path projectBuildDir,
+            String lockedCommit) {
+        final List<String> urls = scmRepo.getUrls();
+        if (!SrcdepsGradleOptions.isGitMirrors()) {
+            return urls;
+        }
+        for (String url : urls) {
+            if (!url.startsWith(GIT_PREFIX)) {
+                continue;
+            }
+            final String remoteUrl = url.substring(GIT_PREFIX.length());
+            try {
+                final Path mirrorDir = fetch(remoteUrl, srcVersion, lockedCommit);
+                link(projectBuildDir, mirrorDir);
+                final List<String> result = new ArrayList<>(urls.size() + 1);
+                result.add(GIT_PREFIX + mirrorDir.toUri().toString());
+                result.addAll(urls);
+                return Collections.unmodifiableList(result);
+            } catch (IOException | GitAPIException | RuntimeException e) {
+                log.warn(String.format("srcdeps: Could not use a mirror of [%s]", remoteUrl), e);
+            }
+        }
+        return urls;
+    }
+}
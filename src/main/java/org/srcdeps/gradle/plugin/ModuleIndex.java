@@ -0,0 +1,499 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.srcdeps.core.SrcVersion;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Maps the artifactIds produced by a source tree to its Maven modules or Gradle projects, so that a nested build can
+ * be restricted to the modules providing the requested artifacts. The tree is read directly from a commit in a Git
+ * repository, i.e. before it is checked out.
+ * <p>
+ * The Maven modules are found by following the {@code <modules>} of the root {@code pom.xml}; the Gradle projects
+ * are read from the {@code include} statements of {@code settings.gradle}, assuming that the artifactId of a project
+ * is its name. The {@code project(':path')} references in the {@code build.gradle} files are recorded too, so that a
+ * partial Gradle build installs the in-tree dependencies of the selected projects.
+ * <p>
+ * The index also collects the source dependencies declared in the build files of the modules, i.e. the Maven
+ * {@code <dependency>} elements whose version, possibly given by a property defined in the module or in its
+ * parents, is a source version and the {@code group:name:version} string literals with a source version in the
+ * {@code build.gradle} files. Together with the {@code srcdeps.yaml} of the tree, if any, this is what the
+ * {@link BuildPlan} needs to schedule the builds of transitive source dependencies.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public final class ModuleIndex {
+    private static final Pattern GRADLE_DEPENDENCY = Pattern
+            .compile("['\"]([\\w.\\-]+):([\\w.\\-]+):([^'\"\\s:@$]+)['\"]");
+    private static final Pattern GRADLE_GROUP = Pattern.compile("(?m)^\\s*group\\s*=\\s*['\"]([^'\"$]+)['\"]");
+    private static final Pattern GRADLE_INCLUDE = Pattern.compile("(?m)^\\s*include\\b\\s*\\(?([^\\n)]*)");
+    private static final Pattern GRADLE_PROJECT_DEPENDENCY = Pattern
+            .compile("\\bproject\\s*\\(\\s*(?:path\\s*:\\s*)?['\"](:[^'\"]*)['\"]");
+    private static final Pattern GRADLE_ROOT_NAME = Pattern
+            .compile("rootProject\\.name\\s*=\\s*['\"]([^'\"]+)['\"]");
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)\\}");
+    private static final Pattern QUOTED = Pattern.compile("['\"]([^'\"]+)['\"]");
+
+    static Element child(Element parent, String name) {
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element && name.equals(n.getNodeName())) {
+                return (Element) n;
+            }
+        }
+        return null;
+    }
+
+    static String childText(Element parent, String name) {
+        final Element child = child(parent, name);
+        return child == null ? null : child.getTextContent().trim();
+    }
+
+    private static List<String> children(Element parent, String name) {
+        final List<String> result = new ArrayList<>();
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element && name.equals(n.getNodeName())) {
+                result.add(n.getTextContent().trim());
+            }
+        }
+        return result;
+    }
+
+    private static String normalize(String path) {
+        final List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            } else if ("..".equals(segment)) {
+                if (segments.isEmpty()) {
+                    /* outside of the tree */
+                    return null;
+                }
+                segments.remove(segments.size() - 1);
+            } else {
+                segments.add(segment);
+            }
+        }
+        final StringBuilder result = new StringBuilder();
+        for (String segment : segments) {
+            result.append(result.length() == 0 ? "" : "/").append(segment);
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param value
+     *            the value possibly containing {@code ${property}} references
+     * @param properties
+     *            the properties to resolve the references against
+     * @return the given {@code value} with the references resolved or {@code null} if the given {@code value} is
+     *         {@code null} or if any of the references cannot be resolved
+     */
+    private static String resolve(String value, Map<String, String> properties) {
+        if (value == null) {
+            return null;
+        }
+        String result = value;
+        for (int depth = 0; depth < 8 && result.contains("${"); depth++) {
+            final Matcher m = PROPERTY.matcher(result);
+            final StringBuffer sb = new StringBuffer();
+            while (m.find()) {
+                final String replacement = properties.get(m.group(1));
+                if (replacement == null) {
+                    return null;
+                }
+                m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+            }
+            m.appendTail(sb);
+            result = sb.toString();
+        }
+        return result.contains("${") ? null : result;
+    }
+
+    /**
+     * Reads the {@link ModuleIndex} of the tree of the given {@code commit}.
+     *
+     * @param repo
+     *            the {@link Repository} containing the given {@code commit}
+     * @param commit
+     *            the commit whose tree should be indexed
+     * @return a new {@link ModuleIndex}, possibly empty if the build tool is not recognized
+     * @throws IOException
+     */
+    public static ModuleIndex read(Repository repo, ObjectId commit) throws IOException {
+        try (RevWalk walk = new RevWalk(repo)) {
+            final RevCommit revCommit = walk.parseCommit(commit);
+            final ModuleIndex result = new ModuleIndex(repo, revCommit);
+            final byte[] srcdepsYaml = result.readBytes("srcdeps.yaml");
+            if (srcdepsYaml != null) {
+                result.srcdepsYaml = new String(srcdepsYaml, StandardCharsets.UTF_8);
+            }
+            if (result.readBytes("pom.xml") != null) {
+                result.buildTool = BuildTool.maven;
+                final Map<String, Element> poms = new LinkedHashMap<>();
+                result.readMavenModule("", poms);
+                /* a copy, because reading the properties may add parents that are not modules */
+                for (Map.Entry<String, Element> pom : new ArrayList<>(poms.entrySet())) {
+                    result.addMavenDependencies(pom.getValue(),
+                            result.readMavenProperties(pom.getKey(), poms, new HashSet<String>()));
+                }
+            } else {
+                for (String settings : new String[] { "settings.gradle", "settings.gradle.kts" }) {
+                    final byte[] bytes = result.readBytes(settings);
+                    if (bytes != null) {
+                        result.buildTool = BuildTool.gradle;
+                        result.readGradleSettings(new String(bytes, StandardCharsets.UTF_8));
+                        final byte[] gradleProperties = result.readBytes("gradle.properties");
+                        if (gradleProperties != null) {
+                            result.gradleProperties.load(new ByteArrayInputStream(gradleProperties));
+                        }
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private final Set<String> ambiguous = new TreeSet<>();
+    private BuildTool buildTool = BuildTool.unknown;
+    private final RevCommit commit;
+    /** The groupIds of the Maven modules and the {@code group}s set in the Gradle build files */
+    private final Set<String> groupIds = new TreeSet<>();
+    private final Properties gradleProperties = new Properties();
+    /** The Maven module or Gradle project selectors by artifactId */
+    private final Map<String, String> modules = new LinkedHashMap<>();
+    /** The paths of the Gradle projects referenced via {@code project(':path')} by Gradle project path */
+    private final Map<String, Set<String>> projectDependencies = new LinkedHashMap<>();
+    private final Repository repo;
+    private final Set<SourceDependency> sourceDependencies = new LinkedHashSet<>();
+    private String srcdepsYaml;
+
+    private ModuleIndex(Repository repo, RevCommit commit) {
+        super();
+        this.repo = repo;
+        this.commit = commit;
+    }
+
+    private void add(String artifactId, String selector) {
+        if (modules.containsKey(artifactId) && !selector.equals(modules.get(artifactId))) {
+            ambiguous.add(artifactId);
+        }
+        modules.put(artifactId, selector);
+    }
+
+    /**
+     * @param project
+     *            the {@code <project>} element of a module POM
+     * @param properties
+     *            the properties effective in the given module, i.e. its own ones and the ones inherited from its
+     *            parents
+     */
+    private void addMavenDependencies(Element project, Map<String, String> properties) {
+        final NodeList dependencyElements = project.getElementsByTagName("dependency");
+        for (int i = 0; i < dependencyElements.getLength(); i++) {
+            final Element dependency = (Element) dependencyElements.item(i);
+            final String[] gav = new String[] { childText(dependency, "groupId"),
+                    childText(dependency, "artifactId"), childText(dependency, "version") };
+            final String[] resolved = new String[3];
+            for (int j = 0; j < gav.length; j++) {
+                resolved[j] = resolve(gav[j], properties);
+                if (resolved[j] == null) {
+                    break;
+                }
+            }
+            if (resolved[2] != null && SrcVersion.isSrcVersion(resolved[2])) {
+                sourceDependencies.add(new SourceDependency(resolved[0], resolved[1], resolved[2]));
+            }
+        }
+    }
+
+    /**
+     * @return the {@link BuildTool} of the indexed tree
+     */
+    public BuildTool getBuildTool() {
+        return buildTool;
+    }
+
+    /**
+     * @return the value of {@code org.gradle.jvmargs} in the {@code gradle.properties} file in the root of the
+     *         indexed Gradle tree or {@code null} if there is no such file or property
+     */
+    public String getGradleJvmArgs() {
+        return gradleProperties.getProperty("org.gradle.jvmargs");
+    }
+
+    /**
+     * @return the groupIds the modules of the indexed tree are installed under, as far as they are given literally:
+     *         the {@code groupId} of each Maven module or of its {@code <parent>}, the {@code group = '...'}
+     *         assignments in the {@code build.gradle} files
+     */
+    public Set<String> getGroupIds() {
+        return Collections.unmodifiableSet(groupIds);
+    }
+
+    /**
+     * @return the Maven module or Gradle project selectors by artifactId
+     */
+    public Map<String, String> getModules() {
+        return Collections.unmodifiableMap(modules);
+    }
+
+    /**
+     * @return the source dependencies declared in the build files of the indexed tree, including the dependencies
+     *         between the modules of the tree in case the tree itself has a source version
+     */
+    public Set<SourceDependency> getSourceDependencies() {
+        return Collections.unmodifiableSet(sourceDependencies);
+    }
+
+    /**
+     * @return the content of the {@code srcdeps.yaml} file in the root of the indexed tree or {@code null} if there
+     *         is no such file
+     */
+    public String getSrcdepsYaml() {
+        return srcdepsYaml;
+    }
+
+    /**
+     * @param artifactIds
+     *            the artifactIds that should be built
+     * @return the arguments restricting the nested build to the modules providing the given {@code artifactIds} and
+     *         to the modules they depend on: {@code -pl :a,:b -am} for Maven or {@code :a:install :b:install} for
+     *         Gradle, including the {@code install} tasks of the projects referenced via {@code project(':path')}
+     *         from the build files of the selected projects, transitively; or {@code null} if any of the given
+     *         {@code artifactIds} cannot be mapped to a module
+     */
+    public List<String> getPartialBuildArguments(Collection<String> artifactIds) {
+        if (buildTool == BuildTool.unknown || artifactIds.isEmpty()) {
+            return null;
+        }
+        final Set<String> selectors = new TreeSet<>();
+        for (String artifactId : artifactIds) {
+            final String selector = modules.get(artifactId);
+            if (selector == null || ambiguous.contains(artifactId)) {
+                return null;
+            }
+            selectors.add(selector);
+        }
+        if (buildTool == BuildTool.maven) {
+            final StringBuilder projects = new StringBuilder();
+            for (String selector : selectors) {
+                projects.append(projects.length() == 0 ? "" : ",").append(selector);
+            }
+            return Collections.unmodifiableList(Arrays.asList("-pl", projects.toString(), "-am"));
+        } else {
+            /* unlike Maven's -am, :a:install does not install the projects :a depends on */
+            final List<String> queue = new ArrayList<>(selectors);
+            while (!queue.isEmpty()) {
+                final Set<String> deps = projectDependencies.get(queue.remove(queue.size() - 1));
+                if (deps != null) {
+                    for (String dep : deps) {
+                        if (modules.containsValue(dep) && selectors.add(dep)) {
+                            queue.add(dep);
+                        }
+                    }
+                }
+            }
+            final List<String> result = new ArrayList<>(selectors.size());
+            for (String selector : selectors) {
+                result.add((":".equals(selector) ? "" : selector) + ":install");
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+
+    private byte[] readBytes(String path) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(repo, path, commit.getTree())) {
+            if (treeWalk == null) {
+                return null;
+            }
+            return repo.open(treeWalk.getObjectId(0)).getBytes();
+        }
+    }
+
+    private void readGradleBuildFile(String projectPath) throws IOException {
+        final String dir = projectPath.substring(1).replace(':', '/');
+        for (String name : new String[] { "build.gradle", "build.gradle.kts" }) {
+            final byte[] bytes = readBytes(dir.isEmpty() ? name : dir + "/" + name);
+            if (bytes != null) {
+                final String buildFile = new String(bytes, StandardCharsets.UTF_8);
+                final Matcher group = GRADLE_GROUP.matcher(buildFile);
+                while (group.find()) {
+                    groupIds.add(group.group(1));
+                }
+                final Matcher m = GRADLE_DEPENDENCY.matcher(buildFile);
+                while (m.find()) {
+                    if (SrcVersion.isSrcVersion(m.group(3))) {
+                        sourceDependencies.add(new SourceDependency(m.group(1), m.group(2), m.group(3)));
+                    }
+                }
+                final Matcher projectDependency = GRADLE_PROJECT_DEPENDENCY.matcher(buildFile);
+                while (projectDependency.find()) {
+                    Set<String> deps = projectDependencies.get(projectPath);
+                    if (deps == null) {
+                        deps = new LinkedHashSet<>();
+                        projectDependencies.put(projectPath, deps);
+                    }
+                    deps.add(projectDependency.group(1));
+                }
+            }
+        }
+    }
+
+    private void readGradleSettings(String settings) throws IOException {
+        readGradleBuildFile(":");
+        final Matcher rootName = GRADLE_ROOT_NAME.matcher(settings);
+        if (rootName.find()) {
+            add(rootName.group(1), ":");
+        }
+        final Matcher include = GRADLE_INCLUDE.matcher(settings);
+        while (include.find()) {
+            final Matcher quoted = QUOTED.matcher(include.group(1));
+            while (quoted.find()) {
+                final String path = quoted.group(1);
+                final String projectPath = path.startsWith(":") ? path : ":" + path;
+                add(projectPath.substring(projectPath.lastIndexOf(':') + 1), projectPath);
+                readGradleBuildFile(projectPath);
+            }
+        }
+    }
+
+    /**
+     * @param dir
+     *            the directory of the module relative to the root of the tree or the path to its POM file
+     * @param poms
+     *            the {@code <project>} elements of the POM files read so far by their paths
+     * @throws IOException
+     */
+    private void readMavenModule(String dir, Map<String, Element> poms) throws IOException {
+        final String pomPath = dir.endsWith(".xml") ? dir : (dir.isEmpty() ? "" : dir + "/") + "pom.xml";
+        if (poms.containsKey(pomPath)) {
+            return;
+        }
+        final Element project = readPom(pomPath);
+        if (project == null) {
+            return;
+        }
+        poms.put(pomPath, project);
+        final Element parent = child(project, "parent");
+        final String groupId = child(project, "groupId") != null ? childText(project, "groupId")
+                : parent != null ? childText(parent, "groupId") : null;
+        if (groupId != null && !groupId.isEmpty() && !groupId.contains("${")) {
+            groupIds.add(groupId);
+        }
+        final Element artifactId = child(project, "artifactId");
+        if (artifactId != null) {
+            add(artifactId.getTextContent().trim(), ":" + artifactId.getTextContent().trim());
+        }
+        final Element modulesElement = child(project, "modules");
+        if (modulesElement != null) {
+            final String moduleDir = pomPath.contains("/") ? pomPath.substring(0, pomPath.lastIndexOf('/')) : "";
+            for (String module : children(modulesElement, "module")) {
+                final String path = normalize(moduleDir.isEmpty() ? module : moduleDir + "/" + module);
+                if (path != null) {
+                    readMavenModule(path, poms);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param pomPath
+     *            the path of a POM file relative to the root of the tree
+     * @param poms
+     *            the {@code <project>} elements of the POM files read so far by their paths, {@code null} values
+     *            standing for POM files that do not exist; the parents read by this method are added
+     * @param visited
+     *            the POM files visited so far on the way from the module to its parents
+     * @return the properties defined in the given POM file and in its parents found via {@code <relativePath>},
+     *         the ones closer to the given POM file taking precedence
+     * @throws IOException
+     */
+    private Map<String, String> readMavenProperties(String pomPath, Map<String, Element> poms, Set<String> visited)
+            throws IOException {
+        final Map<String, String> result = new LinkedHashMap<>();
+        if (!visited.add(pomPath)) {
+            return result;
+        }
+        if (!poms.containsKey(pomPath)) {
+            poms.put(pomPath, readPom(pomPath));
+        }
+        final Element project = poms.get(pomPath);
+        if (project == null) {
+            return result;
+        }
+        final Element parent = child(project, "parent");
+        if (parent != null) {
+            final String relativePath = child(parent, "relativePath") == null ? "../pom.xml"
+                    : childText(parent, "relativePath");
+            if (!relativePath.isEmpty()) {
+                final String dir = pomPath.contains("/") ? pomPath.substring(0, pomPath.lastIndexOf('/')) : "";
+                final String path = normalize(dir.isEmpty() ? relativePath : dir + "/" + relativePath);
+                if (path != null) {
+                    final String parentPomPath = path.endsWith(".xml") ? path
+                            : (path.isEmpty() ? "" : path + "/") + "pom.xml";
+                    result.putAll(readMavenProperties(parentPomPath, poms, visited));
+                }
+            }
+        }
+        final Element propertiesElement = child(project, "properties");
+        if (propertiesElement != null) {
+            for (Node n = propertiesElement.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n instanceof Element) {
+                    result.put(n.getNodeName(), n.getTextContent().trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param pomPath
+     *            the path of a POM file relative to the root of the tree
+     * @return the {@code <project>} element of the given POM file or {@code null} if there is no such file
+     * @throws IOException
+     */
+    private Element readPom(String pomPath) throws IOException {
+        final byte[] bytes = readBytes(pomPath);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setExpandEntityReferences(false);
+            final DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(new ByteArrayInputStream(bytes)).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException(String.format("Could not parse %s in %s", pomPath, commit.name()), e);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of nested builds running at the same time in the current JVM, no matter whether they were
+ * scheduled by {@link SrcdepsService#scheduleBuilds(java.util.Collection, int)}, planned by a {@link BuildPlan},
+ * requested during dependency resolution or by a {@link SrcdepsBuildTask}. The limit is Gradle's
+ * {@code --max-workers} or {@link SrcdepsGradleOptions#BUILDS_MAX} if that is lower, so that the nested builds share
+ * the worker slots of the outer build instead of multiplying them.
+ * <p>
+ * The slots also determine the resources each nested Gradle build may use: the workers of the outer build are
+ * divided among the slots and so is the total physical memory, unless {@link SrcdepsGradleOptions#BUILDS_HEAP} sets
+ * the heap explicitly. The heap is appended to the {@code org.gradle.jvmargs} the nested build would use otherwise,
+ * because passing {@code -Dorg.gradle.jvmargs} on the command line replaces them. The memory share is only imposed
+ * if those {@code org.gradle.jvmargs} are known and do not set the heap themselves.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class NestedBuildSlots {
+    private static final Logger log = LoggerFactory.getLogger(NestedBuildSlots.class);
+
+    /** Nested builds are not given less heap than this; if less is left, the heap is left to the nested build */
+    static final long MIN_HEAP = 256L << 20;
+
+    private static final String JVM_ARGS = "org.gradle.jvmargs";
+
+    /**
+     * @param totalMemory
+     *            the total physical memory of the machine in bytes or {@code 0} if not known
+     * @param slots
+     *            the number of nested builds allowed to run at the same time
+     * @return the heap of a nested build if {@link SrcdepsGradleOptions#BUILDS_HEAP} is not set: the share of the
+     *         given {@code totalMemory} per slot, rounded down to a multiple of {@link #MIN_HEAP}. Unlike the free
+     *         memory, this does not change from one nested build to the next, so that the nested builds get the same
+     *         {@code org.gradle.jvmargs} and can use the same Gradle daemon.
+     */
+    static long getDefaultHeap(long totalMemory, int slots) {
+        final long share = totalMemory / Math.max(1, slots);
+        return share - share % MIN_HEAP;
+    }
+
+    /**
+     * @return the total physical memory of the machine or {@code 0} if it cannot be determined
+     */
+    private static long getTotalMemory() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        return 0L;
+    }
+
+    /**
+     * @return the Gradle user home the nested builds inherit via the environment
+     */
+    private static Path getGradleUserHome() {
+        final String gradleUserHome = System.getenv("GRADLE_USER_HOME");
+        return gradleUserHome != null ? Paths.get(gradleUserHome)
+                : Paths.get(System.getProperty("user.home"), ".gradle");
+    }
+
+    /**
+     * @param maxWorkers
+     *            Gradle's {@code --max-workers}
+     * @param maxBuilds
+     *            the value of {@link SrcdepsGradleOptions#BUILDS_MAX} or {@code 0} if not set
+     * @return the number of nested builds allowed to run at the same time
+     */
+    static int getLimit(int maxWorkers, int maxBuilds) {
+        final int workers = Math.max(1, maxWorkers);
+        return maxBuilds > 0 ? Math.min(maxBuilds, workers) : workers;
+    }
+
+    /**
+     * @param buildArgs
+     *            the arguments of a nested build
+     * @param prefix
+     *            the prefix to look for
+     * @return {@code true} if any of the given {@code buildArgs} starts with the given {@code prefix}
+     */
+    private static boolean hasArgument(List<String> buildArgs, String prefix) {
+        for (String arg : buildArgs) {
+            if (arg.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gradle takes {@code org.gradle.jvmargs} from the {@code gradle.properties} in the Gradle user home if set there
+     * and from the {@code gradle.properties} in the root of the source tree otherwise.
+     *
+     * @param gradleUserHome
+     *            the Gradle user home of the nested build
+     * @param index
+     *            the {@link ModuleIndex} of the source tree to build or {@code null} if not available
+     * @return the {@code org.gradle.jvmargs} the nested build would use, an empty string if it would use none or
+     *         {@code null} if that cannot be told
+     * @throws IOException
+     */
+    static String getUpstreamJvmArgs(Path gradleUserHome, ModuleIndex index) throws IOException {
+        final Path userProperties = gradleUserHome.resolve("gradle.properties");
+        if (Files.exists(userProperties)) {
+            final Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(userProperties)) {
+                properties.load(in);
+            }
+            if (properties.getProperty(JVM_ARGS) != null) {
+                return properties.getProperty(JVM_ARGS);
+            }
+        }
+        if (index == null) {
+            return null;
+        }
+        return index.getGradleJvmArgs() == null ? "" : index.getGradleJvmArgs();
+    }
+
+    /**
+     * @param buildArgs
+     *            the arguments of a nested build
+     * @param buildTool
+     *            the {@link BuildTool} of the nested build
+     * @param workers
+     *            the number of workers the nested build may use
+     * @param heap
+     *            the maximal heap of the nested build in bytes or {@code 0} to leave it to the nested build
+     * @param jvmArgs
+     *            the {@code org.gradle.jvmargs} the nested build would use otherwise, see
+     *            {@link #getUpstreamJvmArgs(Path, ModuleIndex)}; the heap is appended to them
+     * @return the given {@code buildArgs} with the given limits added unless {@code buildArgs} set them already
+     */
+    static List<String> limit(List<String> buildArgs, BuildTool buildTool, int workers, long heap, String jvmArgs) {
+        if (buildTool != BuildTool.gradle) {
+            /* the heap of Maven is set via MAVEN_OPTS and Maven builds use a single thread by default */
+            return buildArgs;
+        }
+        final List<String> result = new ArrayList<>(buildArgs);
+        if (!hasArgument(buildArgs, "--max-workers") && !hasArgument(buildArgs, "-Dorg.gradle.workers.max=")) {
+            result.add("--max-workers=" + workers);
+        }
+        if (heap >= MIN_HEAP && !hasArgument(buildArgs, "-D" + JVM_ARGS + "=")) {
+            /* the last -Xmx wins */
+            final String prefix = jvmArgs == null || jvmArgs.trim().isEmpty() ? "" : jvmArgs.trim() + " ";
+            result.add("-D" + JVM_ARGS + "=" + prefix + "-Xmx" + (heap >> 20) + "m");
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private int limit = getLimit(Runtime.getRuntime().availableProcessors(), SrcdepsGradleOptions.getBuildsMax());
+    private int maxWorkers = Runtime.getRuntime().availableProcessors();
+    private int used;
+
+    /**
+     * Waits for a free slot and occupies it. Each successful call must be followed by {@link #release()}.
+     *
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedIOException {
+        if (used >= limit) {
+            log.debug("srcdeps: Waiting for one of {} nested build slot(s) to become free", limit);
+        }
+        try {
+            while (used >= limit) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a nested build slot");
+        }
+        used++;
+    }
+
+    /**
+     * @return the number of nested builds allowed to run at the same time
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param buildArgs
+     *            the arguments of a nested build
+     * @param buildTool
+     *            the {@link BuildTool} of the nested build
+     * @param index
+     *            the {@link ModuleIndex} of the source tree to build or {@code null} if not available
+     * @return the given {@code buildArgs} with the worker and heap limits of a single slot added, see
+     *         {@link #limit(List, BuildTool, int, long, String)}
+     */
+    public List<String> limitResources(List<String> buildArgs, BuildTool buildTool, ModuleIndex index) {
+        String jvmArgs = null;
+        if (buildTool == BuildTool.gradle) {
+            try {
+                jvmArgs = getUpstreamJvmArgs(getGradleUserHome(), index);
+            } catch (IOException e) {
+                log.warn("srcdeps: Could not read the org.gradle.jvmargs of the Gradle user home", e);
+            }
+        }
+        return limitResources(buildArgs, buildTool, jvmArgs);
+    }
+
+    /**
+     * @param buildArgs
+     *            the arguments of a nested build
+     * @param buildTool
+     *            the {@link BuildTool} of the nested build
+     * @param jvmArgs
+     *            the {@code org.gradle.jvmargs} the nested build would use otherwise, see
+     *            {@link #getUpstreamJvmArgs(Path, ModuleIndex)}
+     * @return the given {@code buildArgs} with the worker and heap limits of a single slot added
+     */
+    List<String> limitResources(List<String> buildArgs, BuildTool buildTool, String jvmArgs) {
+        final int slots;
+        final int workers;
+        synchronized (this) {
+            slots = limit;
+            workers = maxWorkers;
+        }
+        final long configuredHeap = SrcdepsGradleOptions.getBuildsHeap();
+        final long heap;
+        if (configuredHeap > 0) {
+            heap = configuredHeap;
+        } else if (jvmArgs == null || jvmArgs.contains("-Xmx")) {
+            /* the nested build knows its needs better */
+            heap = 0L;
+        } else {
+            heap = getDefaultHeap(getTotalMemory(), slots);
+        }
+        return limit(buildArgs, buildTool, Math.max(1, workers / slots), heap, jvmArgs);
+    }
+
+    /**
+     * Frees a slot occupied by {@link #acquire()}.
+     */
+    public synchronized void release() {
+        used--;
+        notifyAll();
+    }
+
+    /**
+     * Sets the number of workers of the outer build and recomputes the limit of slots.
+     *
+     * @param maxWorkers
+     *            Gradle's {@code --max-workers}
+     */
+    public synchronized void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.limit = getLimit(maxWorkers, SrcdepsGradleOptions.getBuildsMax());
+        notifyAll();
+    }
+}
@@ -0,0 +1,377 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.SrcVersion.WellKnownType;
+import org.srcdeps.core.config.ScmRepository;
+
+/**
+ * Resolves the branches and tags of {@code git:} repositories to commits in the manner of {@code git ls-remote} and
+ * remembers the results for a time to live set via {@link SrcdepsGradleOptions#REFS_TTL}, per SCM repository if
+ * needed. The results are stored under {@code <srcdeps-dir>/refs}, one file per remote URL, so that they survive the
+ * end of the outer build.
+ * <p>
+ * The commit a branch or tag version was built from is recorded in the {@value #INSTALLED_COMMIT_FILE} file of each
+ * version directory in the Local Maven Repository. Thus the installed artifacts of a branch or tag are keyed by the
+ * commit they were built from: they are rebuilt when the branch or tag has moved and an unchanged branch tip costs
+ * just a cached lookup.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class RefResolutionCache {
+
+    /**
+     * A resolved ref.
+     */
+    static final class Resolution {
+        private final String commit;
+        private final long timestamp;
+
+        Resolution(String commit, long timestamp) {
+            super();
+            this.commit = commit;
+            this.timestamp = timestamp;
+        }
+
+        public String getCommit() {
+            return commit;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    private static final String GIT_PREFIX = "git:";
+
+    /** The name of the file storing the commit the artifacts in a version directory were built from */
+    public static final String INSTALLED_COMMIT_FILE = "_srcdeps.commit";
+
+    private static final Logger log = LoggerFactory.getLogger(RefResolutionCache.class);
+
+    /**
+     * @param versionDir
+     *            the version directory in the Local Maven Repository
+     * @return the commit recorded via {@link #writeInstalledCommit(Path, String)} or {@code null} if there is none
+     */
+    public static String readInstalledCommit(Path versionDir) {
+        try {
+            return new String(Files.readAllBytes(versionDir.resolve(INSTALLED_COMMIT_FILE)), StandardCharsets.UTF_8)
+                    .trim();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.debug("srcdeps: Could not read {}", versionDir.resolve(INSTALLED_COMMIT_FILE), e);
+            return null;
+        }
+    }
+
+    /**
+     * @param srcVersion
+     *            the branch or tag version
+     * @return the full name of the ref the given {@code srcVersion} refers to
+     */
+    static String refName(SrcVersion srcVersion) {
+        return (srcVersion.getWellKnownType() == WellKnownType.tag ? Constants.R_TAGS : Constants.R_HEADS)
+                + srcVersion.getScmVersion();
+    }
+
+    /**
+     * Records the {@code commit} the artifacts in the given {@code versionDir} were built from.
+     *
+     * @param versionDir
+     *            the version directory in the Local Maven Repository
+     * @param commit
+     *            the commit id
+     * @throws IOException
+     */
+    public static void writeInstalledCommit(Path versionDir, String commit) throws IOException {
+        Files.write(versionDir.resolve(INSTALLED_COMMIT_FILE), (commit + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private final ConcurrentMap<String, Map<String, Resolution>> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final Path refsDirectory;
+
+    @Inject
+    public RefResolutionCache(@Named(Wiring.SRCDEPS_DIRECTORY) Path srcdepsDirectory) {
+        super();
+        this.refsDirectory = srcdepsDirectory.resolve("refs");
+    }
+
+    private Object getLock(String remoteUrl) {
+        Object lock = locks.get(remoteUrl);
+        if (lock == null) {
+            final Object newLock = new Object();
+            lock = locks.putIfAbsent(remoteUrl, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * @param remoteUrl
+     *            the URL whose resolutions should be returned
+     * @return the mutable {@link Map} of resolutions of the given {@code remoteUrl} by ref name, read from the disk if
+     *         they are not in memory yet; the caller must hold the lock of the given {@code remoteUrl}
+     */
+    private Map<String, Resolution> getResolutions(String remoteUrl) {
+        Map<String, Resolution> result = cache.get(remoteUrl);
+        if (result == null) {
+            result = new TreeMap<>();
+            final Path file = refsFile(remoteUrl);
+            if (Files.exists(file)) {
+                final Properties props = new Properties();
+                try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    props.load(r);
+                    for (String ref : props.stringPropertyNames()) {
+                        final String[] parts = props.getProperty(ref).trim().split(" ");
+                        result.put(ref, new Resolution(parts[0], Long.parseLong(parts[1])));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.warn("srcdeps: Ignoring {} that cannot be read", file, e);
+                    result.clear();
+                }
+            }
+            cache.put(remoteUrl, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param remoteUrl
+     *            the URL of the remote repository, without the {@code git:} prefix
+     * @param ref
+     *            the full name of the ref to look up
+     * @return the commit the given {@code ref} points to in the given remote repository, peeled in case of an
+     *         annotated tag, or {@code null} if there is no such ref
+     * @throws GitAPIException
+     */
+    private String lsRemote(String remoteUrl, String ref) throws GitAPIException {
+        log.debug("srcdeps: Looking up {} in {}", ref, remoteUrl);
+        final Collection<Ref> refs = Git.lsRemoteRepository().setRemote(remoteUrl)
+                .setHeads(ref.startsWith(Constants.R_HEADS)).setTags(ref.startsWith(Constants.R_TAGS)).call();
+        for (Ref r : refs) {
+            if (ref.equals(r.getName())) {
+                return (r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId()).name();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remembers that the given branch or tag {@code srcVersion} points to the given {@code commit} as of now, e.g.
+     * because the {@code commit} was just fetched and built. Thus {@link #resolve(ScmRepository, SrcVersion)} agrees
+     * with the commit recorded via {@link #writeInstalledCommit(Path, String)} until the time to live expires, even if
+     * an earlier resolution of the same ref has not expired yet.
+     *
+     * @param scmRepo
+     *            the repository the given {@code srcVersion} comes from
+     * @param srcVersion
+     *            the branch or tag version
+     * @param commit
+     *            the commit the given {@code srcVersion} points to
+     */
+    public void record(ScmRepository scmRepo, SrcVersion srcVersion, String commit) {
+        if (srcVersion.getWellKnownType() == WellKnownType.revision
+                || SrcdepsGradleOptions.getRefsTtl(scmRepo.getId()) < 0) {
+            return;
+        }
+        for (String url : scmRepo.getUrls()) {
+            if (url.startsWith(GIT_PREFIX)) {
+                /* the first git: URL is the one resolve() asks first */
+                final String remoteUrl = url.substring(GIT_PREFIX.length());
+                try {
+                    record(remoteUrl, refName(srcVersion), commit);
+                } catch (IOException | RuntimeException e) {
+                    log.warn(String.format("srcdeps: Could not record [%s] of [%s]", srcVersion, remoteUrl), e);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param remoteUrl
+     *            the URL of the remote repository, without the {@code git:} prefix
+     * @param ref
+     *            the full name of the ref
+     * @param commit
+     *            the commit the given {@code ref} points to
+     * @throws IOException
+     */
+    void record(String remoteUrl, String ref, String commit) throws IOException {
+        synchronized (getLock(remoteUrl)) {
+            final Map<String, Resolution> resolutions = getResolutions(remoteUrl);
+            final Resolution cached = resolutions.get(ref);
+            if (cached != null && !commit.equals(cached.commit)) {
+                log.info("srcdeps: {} of {} moved from {} to {}", ref, remoteUrl, cached.commit, commit);
+            }
+            resolutions.put(ref, new Resolution(commit, System.currentTimeMillis()));
+            store(remoteUrl, resolutions);
+        }
+    }
+
+    /**
+     * Like {@link #resolve(ScmRepository, SrcVersion)} but never queries the remote repositories: the last known
+     * resolution is returned even if its time to live has expired.
+     *
+     * @param scmRepo
+     *            the repository the given {@code srcVersion} comes from
+     * @param srcVersion
+     *            the version to resolve
+     * @return the commit the given {@code srcVersion} pointed to when it was last resolved; the
+     *         {@link SrcVersion#getScmVersion()} of a revision; {@code null} if the refs of the given {@code scmRepo}
+     *         are not tracked or if the given {@code srcVersion} has not been resolved yet
+     */
+    public String resolveCached(ScmRepository scmRepo, SrcVersion srcVersion) {
+        if (srcVersion.getWellKnownType() == WellKnownType.revision) {
+            return srcVersion.getScmVersion();
+        }
+        if (SrcdepsGradleOptions.getRefsTtl(scmRepo.getId()) < 0) {
+            return null;
+        }
+        for (String url : scmRepo.getUrls()) {
+            if (url.startsWith(GIT_PREFIX)) {
+                final String commit = resolveCached(url.substring(GIT_PREFIX.length()), refName(srcVersion));
+                if (commit != null) {
+                    return commit;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param remoteUrl
+     *            the URL of the remote repository, without the {@code git:} prefix
+     * @param ref
+     *            the full name of the ref to look up
+     * @return the commit the given {@code ref} pointed to when it was last resolved or {@code null} if it has not
+     *         been resolved yet
+     */
+    String resolveCached(String remoteUrl, String ref) {
+        synchronized (getLock(remoteUrl)) {
+            final Resolution cached = getResolutions(remoteUrl).get(ref);
+            return cached == null ? null : cached.commit;
+        }
+    }
+
+    private Path refsFile(String remoteUrl) {
+        return refsDirectory.resolve(GitMirrors.hash(remoteUrl) + ".properties");
+    }
+
+    /**
+     * Resolves the given branch or tag {@code srcVersion} against the first {@code git:} URL of the given
+     * {@code scmRepo} that knows it.
+     *
+     * @param scmRepo
+     *            the repository the given {@code srcVersion} comes from
+     * @param srcVersion
+     *            the version to resolve
+     * @return the commit the given {@code srcVersion} points to; the {@link SrcVersion#getScmVersion()} of a
+     *         revision; {@code null} if the refs of the given {@code scmRepo} are not tracked, see
+     *         {@link SrcdepsGradleOptions#REFS_TTL}, or if the given {@code srcVersion} could not be resolved
+     */
+    public String resolve(ScmRepository scmRepo, SrcVersion srcVersion) {
+        if (srcVersion.getWellKnownType() == WellKnownType.revision) {
+            return srcVersion.getScmVersion();
+        }
+        final long ttlMs = SrcdepsGradleOptions.getRefsTtl(scmRepo.getId());
+        if (ttlMs < 0) {
+            return null;
+        }
+        final List<String> urls = scmRepo.getUrls();
+        for (String url : urls) {
+            if (!url.startsWith(GIT_PREFIX)) {
+                continue;
+            }
+            final String remoteUrl = url.substring(GIT_PREFIX.length());
+            try {
+                final String commit = resolve(remoteUrl, refName(srcVersion), ttlMs);
+                if (commit != null) {
+                    return commit;
+                }
+            } catch (IOException | GitAPIException | RuntimeException e) {
+                log.warn(String.format("srcdeps: Could not look up [%s] in [%s]", srcVersion, remoteUrl), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param remoteUrl
+     *            the URL of the remote repository, without the {@code git:} prefix
+     * @param ref
+     *            the full name of the ref to resolve
+     * @param ttlMs
+     *            how long a previous resolution of the given {@code ref} stays valid
+     * @return the commit the given {@code ref} points to or {@code null} if there is no such ref
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    String resolve(String remoteUrl, String ref, long ttlMs) throws IOException, GitAPIException {
+        synchronized (getLock(remoteUrl)) {
+            final Map<String, Resolution> resolutions = getResolutions(remoteUrl);
+            final long now = System.currentTimeMillis();
+            final Resolution cached = resolutions.get(ref);
+            if (cached != null && now - cached.timestamp < ttlMs) {
+                log.debug("srcdeps: {} of {} resolved to {} {} ms ago", ref, remoteUrl, cached.commit,
+                        now - cached.timestamp);
+                return cached.commit;
+            }
+            final String commit = lsRemote(remoteUrl, ref);
+            if (commit == null) {
+                return null;
+            }
+            if (cached != null && !commit.equals(cached.commit)) {
+                log.info("srcdeps: {} of {} moved from {} to {}", ref, remoteUrl, cached.commit, commit);
+            }
+            resolutions.put(ref, new Resolution(commit, now));
+            store(remoteUrl, resolutions);
+            return commit;
+        }
+    }
+
+    private void store(String remoteUrl, Map<String, Resolution> resolutions) throws IOException {
+        Files.createDirectories(refsDirectory);
+        final Path file = refsFile(remoteUrl);
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            w.write("# " + remoteUrl + "\n");
+            for (Map.Entry<String, Resolution> e : resolutions.entrySet()) {
+                w.write(e.getKey() + "=" + e.getValue().commit + " " + e.getValue().timestamp + "\n");
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,130 @@
+package org.srcdeps.gradle.plugin;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.srcdeps.core.GavPattern;
+import org.srcdeps.core.config.ScmRepository;
+
+/**
+ * A precompiled lookup structure for finding the first {@link ScmRepository} whose {@code includes} and
+ * {@code excludes} match a given {@code groupId:artifactId:version} triple.
+ * <p>
+ * The groupId subpatterns of the {@code includes} are sorted into three buckets: exact groupIds go to a hash map,
+ * groupId prefixes such as {@code org.my-group*} go to a trie and only the remaining wildcard patterns need to be
+ * checked on every lookup. The buckets just narrow down the set of candidate repositories; the candidates are then
+ * checked via {@link org.srcdeps.core.GavSet#contains(String, String, String)} in the order in which they are
+ * configured, so that the result is always the same as the one of a linear search through the
+ * {@link ScmRepository} list.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class ScmRepositoryIndex {
+
+    /** A node of the groupId prefix trie */
+    private static class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+        private final BitSet repositories = new BitSet();
+
+        PrefixNode getOrCreateChild(char ch) {
+            PrefixNode child = children.get(ch);
+            if (child == null) {
+                child = new PrefixNode();
+                children.put(ch, child);
+            }
+            return child;
+        }
+    }
+
+    private static final char MULTI_WILDCARD = '*';
+
+    /**
+     * @param groupIdPattern
+     * @return {@code true} if the given {@code groupIdPattern} consists solely of characters that may legally occur
+     *         in a groupId or of wildcards; otherwise we cannot be sure how to interpret it
+     */
+    private static boolean isPlain(String groupIdPattern) {
+        for (int i = 0; i < groupIdPattern.length(); i++) {
+            final char ch = groupIdPattern.charAt(i);
+            if (!(Character.isLetterOrDigit(ch) || ch == '.' || ch == '-' || ch == '_' || ch == MULTI_WILDCARD)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final Map<String, BitSet> exactGroupIds = new HashMap<>();
+    private final PrefixNode prefixes = new PrefixNode();
+    private final ScmRepository[] repositories;
+
+    /** The repositories having some includes not fitting in any of the other buckets */
+    private final BitSet wildcards = new BitSet();
+
+    public ScmRepositoryIndex(List<ScmRepository> repositories) {
+        super();
+        this.repositories = repositories.toArray(new ScmRepository[repositories.size()]);
+        for (int i = 0; i < this.repositories.length; i++) {
+            for (GavPattern include : this.repositories[i].getGavSet().getIncludes()) {
+                add(i, include);
+            }
+        }
+    }
+
+    private void add(int repositoryIndex, GavPattern include) {
+        final String source = include.toString();
+        final int colonPos = source.indexOf(':');
+        final String groupIdPattern = colonPos >= 0 ? source.substring(0, colonPos) : source;
+        final int wildcardPos = groupIdPattern.indexOf(MULTI_WILDCARD);
+        if (!isPlain(groupIdPattern)) {
+            wildcards.set(repositoryIndex);
+        } else if (wildcardPos < 0) {
+            BitSet repos = exactGroupIds.get(groupIdPattern);
+            if (repos == null) {
+                repos = new BitSet();
+                exactGroupIds.put(groupIdPattern, repos);
+            }
+            repos.set(repositoryIndex);
+        } else if (wildcardPos == groupIdPattern.length() - 1) {
+            PrefixNode node = prefixes;
+            for (int i = 0; i < wildcardPos; i++) {
+                node = node.getOrCreateChild(groupIdPattern.charAt(i));
+            }
+            node.repositories.set(repositoryIndex);
+        } else {
+            wildcards.set(repositoryIndex);
+        }
+    }
+
+    /**
+     * Finds the first {@link ScmRepository} associated with the given {@code groupId:artifactId:version} triple.
+     *
+     * @param groupId
+     * @param artifactId
+     * @param version
+     * @return the matching {@link ScmRepository} or {@code null} if there is none
+     */
+    public ScmRepository find(String groupId, String artifactId, String version) {
+        final BitSet candidates = (BitSet) wildcards.clone();
+        final BitSet exact = exactGroupIds.get(groupId);
+        if (exact != null) {
+            candidates.or(exact);
+        }
+        PrefixNode node = prefixes;
+        candidates.or(node.repositories);
+        for (int i = 0; i < groupId.length() && node != null; i++) {
+            node = node.children.get(groupId.charAt(i));
+            if (node != null) {
+                candidates.or(node.repositories);
+            }
+        }
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final ScmRepository scmRepository = repositories[i];
+            if (scmRepository.getGavSet().contains(groupId, artifactId, version)) {
+                return scmRepository;
+            }
+        }
+        return null;
+    }
+}
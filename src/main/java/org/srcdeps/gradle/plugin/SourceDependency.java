@@ -0,0 +1,65 @@
+package org.srcdeps.gradle.plugin;
+
+/**
+ * An immutable {@code groupId:artifactId:version} triple of a dependency whose version is a source version.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public final class SourceDependency {
+    private final String artifactId;
+    private final String groupId;
+    private final int hashCode;
+    private final String version;
+
+    public SourceDependency(String groupId, String artifactId, String version) {
+        super();
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.hashCode = 31 * (31 * groupId.hashCode() + artifactId.hashCode()) + version.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SourceDependency)) {
+            return false;
+        }
+        SourceDependency other = (SourceDependency) obj;
+        return hashCode == other.hashCode && groupId.equals(other.groupId) && artifactId.equals(other.artifactId)
+                && version.equals(other.version);
+    }
+
+    /**
+     * @return the artifactId
+     */
+    public String getArtifactId() {
+        return artifactId;
+    }
+
+    /**
+     * @return the groupId
+     */
+    public String getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * @return the version - always a source version in the sense of {@code SrcVersion.isSrcVersion(String)}
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+}
@@ -0,0 +1,58 @@
+package org.srcdeps.gradle.plugin;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.srcdeps.core.SrcVersion;
+
+/**
+ * Collects the {@link SourceDependency}s declared in the {@link Configuration}s of a set of Gradle {@link Project}s.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class SourceDependencyCollector {
+
+    /**
+     * @param projects
+     *            the {@link Project}s to scan
+     * @return a deduplicated {@link Set} of {@link SourceDependency}s declared in any configuration of any of the
+     *         given {@code projects}, in the order of their first occurrence
+     */
+    public static Set<SourceDependency> collect(Iterable<Project> projects) {
+        final Set<SourceDependency> result = new LinkedHashSet<>();
+        for (Project project : projects) {
+            for (Configuration configuration : project.getConfigurations()) {
+                collect(configuration, result);
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * @param configuration
+     *            the {@link Configuration} to scan
+     * @return a deduplicated {@link Set} of {@link SourceDependency}s declared directly in the given
+     *         {@code configuration}, in the order of their first occurrence
+     */
+    public static Set<SourceDependency> collect(Configuration configuration) {
+        final Set<SourceDependency> result = new LinkedHashSet<>();
+        collect(configuration, result);
+        return Collections.unmodifiableSet(result);
+    }
+
+    private static void collect(Configuration configuration, Set<SourceDependency> result) {
+        for (ExternalModuleDependency dep : configuration.getDependencies().withType(ExternalModuleDependency.class)) {
+            final String version = dep.getVersion();
+            if (version != null && SrcVersion.isSrcVersion(version)) {
+                result.add(new SourceDependency(dep.getGroup(), dep.getName(), version));
+            }
+        }
+    }
+
+    private SourceDependencyCollector() {
+    }
+}
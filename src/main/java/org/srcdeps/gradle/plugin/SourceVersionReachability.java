@@ -0,0 +1,320 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.srcdeps.core.Gavtc;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.SrcVersion;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import com.google.inject.Injector;
+
+/**
+ * A cheap pre-scan deciding which {@link Configuration}s can possibly resolve a source version and thus need a
+ * {@link SrcdepsResolver}. A {@link Configuration} can reach a source version if any of its declared dependencies,
+ * including the inherited ones,
+ * <ul>
+ * <li>has a source version,
+ * <li>is a project dependency on a {@link Configuration} that can reach a source version,
+ * <li>matches any repository in {@code srcdeps.yaml}, because its transitive dependencies may be source versions,
+ * or
+ * <li>is not proven to be free of source versions.
+ * </ul>
+ * An external dependency is proven to be free of source versions if its POM is found in the Local Maven Repository
+ * or in the Gradle module cache, if the POM does not refer to any source version and if its parent and its
+ * transitive dependencies are proven to be free of source versions the same way. The dependencies without a literal
+ * version, such as the managed or dynamic ones, cannot be proven. Hooking a {@link Configuration} needlessly only
+ * costs some resolution speed, because the {@link SrcdepsResolver} checks each resolved dependency anyway, whereas
+ * not hooking a {@link Configuration} that needs it would leave a source dependency unbuilt.
+ * <p>
+ * The first two checks do not need the srcdeps {@link Wiring}, so it is performed only if they do not suffice.
+ * <p>
+ * The results are cached for the lifetime of the instance, which is supposed to be one build.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class SourceVersionReachability {
+    private static final String DEFAULT_CONFIGURATION = "default";
+    /** The directory of the Gradle module cache relative to the Gradle user home */
+    private static final String GRADLE_MODULE_CACHE = "caches/modules-2/files-2.1";
+    private static final Logger log = LoggerFactory.getLogger(SourceVersionReachability.class);
+    private static final String SRC_MARKER = "-SRC-";
+
+    /**
+     * @param value
+     *            the value to interpolate
+     * @param projectGroupId
+     *            the value of {@code ${project.groupId}}
+     * @param projectVersion
+     *            the value of {@code ${project.version}}
+     * @return the given {@code value} with the project properties replaced or {@code null} if the result is not a
+     *         literal
+     */
+    private static String interpolate(String value, String projectGroupId, String projectVersion) {
+        if (value == null) {
+            return null;
+        }
+        String result = value;
+        if (projectGroupId != null) {
+            result = result.replace("${project.groupId}", projectGroupId);
+        }
+        if (projectVersion != null) {
+            result = result.replace("${project.version}", projectVersion);
+        }
+        return result.contains("${") ? null : result;
+    }
+
+    private static Set<Configuration> newVisitedSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Configuration, Boolean>());
+    }
+
+    /** The final results; guarded by {@code this} */
+    private final Map<Configuration, Boolean> cache = new IdentityHashMap<>();
+    private final Path gradleModuleCache;
+    private MavenLocalRepository localRepository;
+    private ScmRepositoryIndex scmRepositoryIndex;
+
+    /** Whether the artifact is proven to be free of source versions by {@code groupId:artifactId:version} */
+    private final Map<String, Boolean> sourceFree = new HashMap<>();
+
+    private final Project wiringProject;
+
+    /**
+     * @param wiringProject
+     *            the {@link Project} to perform the {@link Wiring} through if needed
+     */
+    public SourceVersionReachability(Project wiringProject) {
+        super();
+        this.wiringProject = wiringProject;
+        this.gradleModuleCache = wiringProject.getGradle().getGradleUserHomeDir().toPath()
+                .resolve(GRADLE_MODULE_CACHE);
+    }
+
+    SourceVersionReachability(ScmRepositoryIndex scmRepositoryIndex, MavenLocalRepository localRepository,
+            Path gradleModuleCache) {
+        super();
+        this.wiringProject = null;
+        this.scmRepositoryIndex = scmRepositoryIndex;
+        this.localRepository = localRepository;
+        this.gradleModuleCache = gradleModuleCache;
+    }
+
+    /**
+     * @param configuration
+     *            the {@link Configuration} to check
+     * @return {@code true} if the given {@code configuration} can possibly resolve a source version; {@code false}
+     *         otherwise
+     */
+    public synchronized boolean canReachSourceVersions(Configuration configuration) {
+        final Boolean cached = cache.get(configuration);
+        if (cached != null) {
+            return cached.booleanValue();
+        }
+        final boolean result = reaches(configuration, false, newVisitedSet())
+                || reaches(configuration, true, newVisitedSet());
+        /* the search went through all project dependencies, so the result is final even if there were cycles */
+        cache.put(configuration, Boolean.valueOf(result));
+        if (result) {
+            log.debug("srcdeps: {} can reach source versions", configuration);
+        }
+        return result;
+    }
+
+    private Path findPom(String groupId, String artifactId, String version) {
+        if (localRepository != null) {
+            final Path pom = localRepository.resolve(new Gavtc(groupId, artifactId, version, "pom"));
+            if (Files.isRegularFile(pom)) {
+                return pom;
+            }
+        }
+        final Path versionDir = gradleModuleCache == null ? null
+                : gradleModuleCache.resolve(groupId).resolve(artifactId).resolve(version);
+        if (versionDir != null && Files.isDirectory(versionDir)) {
+            final String fileName = artifactId + "-" + version + ".pom";
+            try (DirectoryStream<Path> hashDirs = Files.newDirectoryStream(versionDir)) {
+                for (Path hashDir : hashDirs) {
+                    final Path pom = hashDir.resolve(fileName);
+                    if (Files.isRegularFile(pom)) {
+                        return pom;
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("srcdeps: Could not list {}", versionDir, e);
+            }
+        }
+        return null;
+    }
+
+    private void initWiring() {
+        if (scmRepositoryIndex == null && wiringProject != null) {
+            final Injector injector = Wiring.getInjector(wiringProject);
+            scmRepositoryIndex = injector.getInstance(ConfigurationService.class).getScmRepositoryIndex();
+            localRepository = injector.getInstance(MavenLocalRepository.class);
+        }
+    }
+
+    /**
+     * @param groupId
+     *            the groupId of the artifact to check
+     * @param artifactId
+     *            the artifactId of the artifact to check
+     * @param version
+     *            the version of the artifact to check
+     * @param visiting
+     *            the artifacts being checked higher in the call stack
+     * @return {@code true} if the given artifact is proven to be free of source versions; {@code false} otherwise
+     */
+    private boolean isSourceFree(String groupId, String artifactId, String version, Set<String> visiting) {
+        if (groupId == null || artifactId == null || version == null) {
+            return false;
+        }
+        final String gav = groupId + ":" + artifactId + ":" + version;
+        final Boolean known = sourceFree.get(gav);
+        if (known != null) {
+            return known.booleanValue();
+        }
+        if (!visiting.add(gav)) {
+            /* a cycle cannot be proven; failing to prove is safe to cache as it only causes hooking */
+            return false;
+        }
+        final boolean result = isSourceFree(findPom(groupId, artifactId, version), visiting);
+        visiting.remove(gav);
+        sourceFree.put(gav, Boolean.valueOf(result));
+        return result;
+    }
+
+    private boolean isSourceFree(Path pom, Set<String> visiting) {
+        if (pom == null) {
+            return false;
+        }
+        final Element project;
+        try {
+            final byte[] bytes = Files.readAllBytes(pom);
+            if (new String(bytes, StandardCharsets.UTF_8).contains(SRC_MARKER)) {
+                return false;
+            }
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setExpandEntityReferences(false);
+            project = factory.newDocumentBuilder().parse(new ByteArrayInputStream(bytes)).getDocumentElement();
+        } catch (IOException | ParserConfigurationException | SAXException e) {
+            log.debug("srcdeps: Could not read {}", pom, e);
+            return false;
+        }
+        final Element parent = ModuleIndex.child(project, "parent");
+        String projectGroupId = ModuleIndex.childText(project, "groupId");
+        String projectVersion = ModuleIndex.childText(project, "version");
+        if (parent != null) {
+            final String parentGroupId = ModuleIndex.childText(parent, "groupId");
+            final String parentVersion = ModuleIndex.childText(parent, "version");
+            if (!isSourceFree(parentGroupId, ModuleIndex.childText(parent, "artifactId"), parentVersion, visiting)) {
+                return false;
+            }
+            projectGroupId = projectGroupId == null ? parentGroupId : projectGroupId;
+            projectVersion = projectVersion == null ? parentVersion : projectVersion;
+        }
+        final Element dependencies = ModuleIndex.child(project, "dependencies");
+        if (dependencies == null) {
+            return true;
+        }
+        for (Node n = dependencies.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (!(n instanceof Element) || !"dependency".equals(n.getNodeName())) {
+                continue;
+            }
+            final Element dep = (Element) n;
+            final String scope = ModuleIndex.childText(dep, "scope");
+            if ("test".equals(scope) || "provided".equals(scope) || "system".equals(scope)
+                    || "true".equals(ModuleIndex.childText(dep, "optional"))) {
+                /* not transitive */
+                continue;
+            }
+            if (!isSourceFree(interpolate(ModuleIndex.childText(dep, "groupId"), projectGroupId, projectVersion),
+                    interpolate(ModuleIndex.childText(dep, "artifactId"), projectGroupId, projectVersion),
+                    interpolate(ModuleIndex.childText(dep, "version"), projectGroupId, projectVersion), visiting)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A depth first search through the project dependencies. Only the positive results are cached here, because a
+     * negative one may be incomplete due to a {@link Configuration} skipped as visited higher in the call stack.
+     *
+     * @param configuration
+     *            the {@link Configuration} to check
+     * @param full
+     *            if {@code true} all checks are performed; otherwise only those not needing the {@link Wiring}
+     * @param visited
+     *            the {@link Configuration}s visited by the current search
+     * @return {@code true} if the given {@code configuration} can reach a source version; {@code false} if it cannot
+     *         reach any other than through the given {@code visited} {@link Configuration}s
+     */
+    private boolean reaches(Configuration configuration, boolean full, Set<Configuration> visited) {
+        final Boolean cached = cache.get(configuration);
+        if (cached != null) {
+            return cached.booleanValue();
+        }
+        if (!visited.add(configuration)) {
+            return false;
+        }
+        if (reachesDirectly(configuration, full)) {
+            cache.put(configuration, Boolean.TRUE);
+            return true;
+        }
+        for (ProjectDependency projectDep : configuration.getAllDependencies().withType(ProjectDependency.class)) {
+            final String targetName = projectDep.getConfiguration() == null ? DEFAULT_CONFIGURATION
+                    : projectDep.getConfiguration();
+            final Configuration target = projectDep.getDependencyProject().getConfigurations().findByName(targetName);
+            if (target != null && reaches(target, full, visited)) {
+                cache.put(configuration, Boolean.TRUE);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean reachesDirectly(Configuration configuration, boolean full) {
+        for (ExternalModuleDependency dep : configuration.getAllDependencies()
+                .withType(ExternalModuleDependency.class)) {
+            final String group = dep.getGroup();
+            final String version = dep.getVersion();
+            if (version != null && SrcVersion.isSrcVersion(version)) {
+                return true;
+            }
+            if (!full) {
+                continue;
+            }
+            initWiring();
+            if (group != null && version != null && scmRepositoryIndex != null
+                    && scmRepositoryIndex.find(group, dep.getName(), version) != null) {
+                return true;
+            }
+            if (!isSourceFree(group, dep.getName(), version, new HashSet<String>())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
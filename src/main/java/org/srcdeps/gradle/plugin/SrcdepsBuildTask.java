@@ -0,0 +1,200 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.TaskAction;
+import org.srcdeps.core.BuildService;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.config.ScmRepository;
+
+/**
+ * A task building a distinct {@link BuildKey}, i.e. one source revision of one {@link ScmRepository}. Its inputs are
+ * the SCM URLs, the source version, the commit it resolves to if known, the build arguments, the version of
+ * srcdeps-core and the Maven and Gradle installations the nested build would use unless the source tree brings its
+ * own wrapper; its outputs are the artifacts installed to the Local Maven Repository. Hence Gradle can skip it when
+ * it is up to date. The commit is added by {@link #addCommitInput(SrcdepsService)} once the task graph is ready, so
+ * that the remote refs are queried only for the tasks that are going to be executed.
+ * <p>
+ * The tasks are used only if {@link SrcdepsGradleOptions#TASKS} is enabled. See
+ * {@link #register(org.gradle.api.Project, SrcdepsService, SourceDependency)}.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class SrcdepsBuildTask extends DefaultTask {
+    private static final String TASK_NAME_PREFIX = "srcdepsBuild";
+
+    /**
+     * @param name
+     *            the name of the executable to look for
+     * @param path
+     *            the value of the {@code PATH} environment variable
+     * @return the real path of the first executable called {@code name} (or {@code name.cmd} or {@code name.bat})
+     *         in the given {@code path} or {@code null} if there is none. The usual installations live in directories
+     *         named after their version, so the result changes whenever the given tool gets upgraded.
+     */
+    static String findExecutable(String name, String path) {
+        if (path == null) {
+            return null;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            if (dir.isEmpty()) {
+                continue;
+            }
+            for (String fileName : new String[] { name, name + ".cmd", name + ".bat" }) {
+                try {
+                    final Path candidate = Paths.get(dir, fileName);
+                    if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                        return candidate.toRealPath().toString();
+                    }
+                } catch (IOException | InvalidPathException e) {
+                    /* not usable, try the next one */
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds or creates a {@link SrcdepsBuildTask} in the given {@code project} for the {@link BuildKey} of the given
+     * {@code dependency}.
+     *
+     * @param project
+     *            the {@link org.gradle.api.Project} to add the task to
+     * @param srcdepsService
+     *            the {@link SrcdepsService} of the current build
+     * @param dependency
+     *            the {@link SourceDependency} that the task should build
+     * @return the {@link SrcdepsBuildTask} or {@code null} if there is no {@link ScmRepository} configured for the
+     *         given {@code dependency}
+     */
+    public static SrcdepsBuildTask register(org.gradle.api.Project project, SrcdepsService srcdepsService,
+            SourceDependency dependency) {
+        final ScmRepository scmRepo = srcdepsService.findScmRepository(dependency);
+        if (scmRepo == null) {
+            return null;
+        }
+        final BuildKey buildKey = new BuildKey(scmRepo.getId(), SrcVersion.parse(dependency.getVersion()));
+        String name = taskName(scmRepo.getId(), dependency.getVersion());
+        Task existing = project.getTasks().findByName(name);
+        if (existing != null && !(existing instanceof SrcdepsBuildTask
+                && buildKey.equals(((SrcdepsBuildTask) existing).buildKey))) {
+            /* a name clash */
+            name = name + "_" + Integer.toHexString(buildKey.hashCode());
+            existing = project.getTasks().findByName(name);
+        }
+        SrcdepsBuildTask task = (SrcdepsBuildTask) existing;
+        if (task == null) {
+            task = project.getTasks().create(name, SrcdepsBuildTask.class);
+            task.buildKey = buildKey;
+            task.setGroup("srcdeps");
+            task.setDescription(
+                    String.format("Builds version %s of %s from sources", dependency.getVersion(), scmRepo.getId()));
+            task.getInputs().property("scmUrls", new ArrayList<>(scmRepo.getUrls()));
+            task.getInputs().property("version", dependency.getVersion());
+            task.getInputs().property("buildArguments", new ArrayList<>(srcdepsService.getBuildArguments(scmRepo)));
+            task.getInputs().property("skipTests", scmRepo.isSkipTests());
+            task.getInputs().property("addDefaultBuildArguments", scmRepo.isAddDefaultBuildArguments());
+            task.getInputs().property("srcdepsCoreVersion",
+                    String.valueOf(BuildService.class.getPackage().getImplementationVersion()));
+            /* the nested build uses the wrapper of the source tree if there is one and the tools on PATH otherwise */
+            final String path = System.getenv("PATH");
+            task.getInputs().property("mavenExecutable", String.valueOf(findExecutable("mvn", path)));
+            task.getInputs().property("gradleExecutable", String.valueOf(findExecutable("gradle", path)));
+            task.getInputs().property("javaHome", String.valueOf(System.getenv("JAVA_HOME")));
+        }
+        if (!task.dependencies.contains(dependency)) {
+            task.dependencies.add(dependency);
+            task.getOutputs().file(srcdepsService.resolveArtifact(dependency).toFile());
+        }
+        return task;
+    }
+
+    /**
+     * @param scmRepositoryId
+     * @param version
+     * @return a task name unique for the given {@code scmRepositoryId} and {@code version}
+     */
+    static String taskName(String scmRepositoryId, String version) {
+        final StringBuilder result = new StringBuilder(TASK_NAME_PREFIX);
+        boolean upper = true;
+        for (String part : new String[] { scmRepositoryId, version }) {
+            for (int i = 0; i < part.length(); i++) {
+                final char ch = part.charAt(i);
+                if (Character.isLetterOrDigit(ch)) {
+                    result.append(upper ? Character.toUpperCase(ch) : ch);
+                    upper = false;
+                } else {
+                    upper = true;
+                }
+            }
+            upper = true;
+        }
+        return result.toString();
+    }
+
+    private BuildKey buildKey;
+    private final List<SourceDependency> dependencies = new ArrayList<>();
+
+    /**
+     * Adds the commit the {@link #getBuildKey()} resolves to as an input of this task, so that a moved branch or tag
+     * makes this task out of date. Supposed to be called when the task graph is ready and only for the tasks in the
+     * graph, because resolving a branch or tag may query the remote repository.
+     *
+     * @param srcdepsService
+     *            the {@link SrcdepsService} of the current build
+     */
+    public void addCommitInput(SrcdepsService srcdepsService) {
+        final ScmRepository scmRepo = dependencies.isEmpty() ? null
+                : srcdepsService.findScmRepository(dependencies.get(0));
+        if (scmRepo == null) {
+            return;
+        }
+        final String commit = srcdepsService.resolveCommit(scmRepo, buildKey.getSrcVersion());
+        if (commit != null) {
+            getInputs().property("commit", commit);
+        }
+    }
+
+    /**
+     * Builds the {@link #getDependencies()} unless they have been built by a build scheduled by the
+     * {@link SrcdepsGradlePlugin} already.
+     */
+    @TaskAction
+    public void build() {
+        final SrcdepsService srcdepsService = Wiring.getInjector(getProject()).getInstance(SrcdepsService.class);
+        for (SourceDependency dependency : dependencies) {
+            srcdepsService.buildIfNecessary(dependency.getGroupId(), dependency.getArtifactId(),
+                    dependency.getVersion());
+            final Path artifact = srcdepsService.resolveArtifact(dependency);
+            if (!Files.exists(artifact)) {
+                throw new GradleException(
+                        String.format("srcdeps: Could not build %s; see the log for details", dependency));
+            }
+        }
+    }
+
+    /**
+     * @return the {@link BuildKey} built by this task
+     */
+    public BuildKey getBuildKey() {
+        return buildKey;
+    }
+
+    /**
+     * @return the {@link SourceDependency}s built by this task
+     */
+    public List<SourceDependency> getDependencies() {
+        return Collections.unmodifiableList(dependencies);
+    }
+}
@@ -0,0 +1,37 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * A task removing the least recently used srcdeps build directories on demand, see {@link BuildDirectoryEvictor}.
+ * It is added to the root project under the name {@value #NAME}.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class SrcdepsEvictTask extends DefaultTask {
+    public static final String NAME = "srcdepsEvict";
+
+    public SrcdepsEvictTask() {
+        super();
+        setGroup("srcdeps");
+        setDescription("Removes the least recently used srcdeps build directories exceeding the limits set via "
+                + SrcdepsGradleOptions.EVICT_SIZE + ", " + SrcdepsGradleOptions.EVICT_AGE + " and "
+                + SrcdepsGradleOptions.EVICT_REVISIONS);
+        getOutputs().upToDateWhen(new Spec<Task>() {
+            @Override
+            public boolean isSatisfiedBy(Task task) {
+                return false;
+            }
+        });
+    }
+
+    @TaskAction
+    public void evict() throws IOException {
+        Wiring.getInjector(getProject()).getInstance(BuildDirectoryEvictor.class).evict();
+    }
+}
@@ -0,0 +1,307 @@
+package org.srcdeps.gradle.plugin;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sisu.space.BeanScanning;
+
+/**
+ * The options of the srcdeps Gradle plugin that are not a part of the {@code srcdeps.yaml} schema. All of them can
+ * be set as system properties, e.g. on the command line via {@code -Dsrcdeps.gradle.wiring=on} or in
+ * {@code gradle.properties} via {@code systemProp.srcdeps.gradle.wiring=on}.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public final class SrcdepsGradleOptions {
+
+    /**
+     * The possible values of {@link SrcdepsGradleOptions#NESTED_BUILD_MODE}.
+     */
+    public enum NestedBuildMode {
+        /** Each nested build runs in a freshly forked JVM */
+        fork,
+        /**
+         * Nested Gradle builds are sent to a Gradle daemon that is reused across nested builds. Whether a source tree
+         * is a Gradle build is told from the mirrored commit before it is checked out, so that also the first build
+         * of a repository is warm.
+         */
+        warm
+    }
+
+    /**
+     * The possible values of {@link SrcdepsGradleOptions#OUTPUT}.
+     */
+    public enum Output {
+        /** The output of the nested builds goes where {@code builderIo} in {@code srcdeps.yaml} says */
+        console,
+        /**
+         * The output of each nested build is written to a file managed by {@link BuildLogs} and only the last
+         * {@link SrcdepsGradleOptions#OUTPUT_TAIL} lines of it are shown, if the nested build fails or if the
+         * {@code info} log level is enabled. Applies only to the streams {@code builderIo} sets to {@code inherit}.
+         */
+        file
+    }
+
+    /**
+     * The maximal heap of a nested Gradle build in bytes, optionally with a {@code k}, {@code m} or {@code g} suffix.
+     * If not set, the total physical memory is divided among the slots of {@link NestedBuildSlots}, provided that the
+     * {@code org.gradle.jvmargs} of the nested build are known and do not set the heap.
+     */
+    public static final String BUILDS_HEAP = "srcdeps.gradle.builds.heap";
+
+    /**
+     * The maximal number of nested builds running at the same time, see {@link NestedBuildSlots}. Gradle's
+     * {@code --max-workers} if not set or if lower.
+     */
+    public static final String BUILDS_MAX = "srcdeps.gradle.builds.max";
+
+    /**
+     * The directory where the {@link ArtifactCache} should store its entries. The {@link ArtifactCache} is disabled
+     * if not set.
+     */
+    public static final String CACHE_DIRECTORY = "srcdeps.gradle.cache.dir";
+
+    /** The default of {@link #OUTPUT_TAIL} */
+    private static final int DEFAULT_OUTPUT_TAIL = 100;
+
+    /**
+     * The maximal age in days of a build directory, Git mirror or nested build log, counted from its last use. Older
+     * ones are removed by the {@link BuildDirectoryEvictor}. No limit if not set.
+     */
+    public static final String EVICT_AGE = "srcdeps.gradle.evict.age";
+
+    /**
+     * The maximal number of build directories per SCM repository. The least recently used ones above the limit are
+     * removed by the {@link BuildDirectoryEvictor}. Git mirrors and logs do not count. No limit if not set.
+     */
+    public static final String EVICT_REVISIONS = "srcdeps.gradle.evict.revisions";
+
+    /**
+     * The maximal total size of the build directories, Git mirrors and nested build logs in bytes, optionally with a
+     * {@code k}, {@code m} or {@code g} suffix. The least recently used ones above the limit are removed by the
+     * {@link BuildDirectoryEvictor}. No limit if not set.
+     */
+    public static final String EVICT_SIZE = "srcdeps.gradle.evict.size";
+
+    /**
+     * If {@code true} (default), the {@code git:} repositories are checked out through local bare mirrors, see
+     * {@link GitMirrors}.
+     */
+    public static final String GIT_MIRRORS = "srcdeps.gradle.git.mirrors";
+
+    /**
+     * How the nested builds should be run, see {@link NestedBuildMode}. The default is {@link NestedBuildMode#fork}.
+     */
+    public static final String NESTED_BUILD_MODE = "srcdeps.gradle.nested.mode";
+
+    /**
+     * Where the output of the nested builds should go, see {@link Output}. The default is {@link Output#console}.
+     */
+    public static final String OUTPUT = "srcdeps.gradle.output";
+
+    /**
+     * The number of the last lines of the output of a nested build to show if {@link #OUTPUT} is {@link Output#file}.
+     * The default is {@value #DEFAULT_OUTPUT_TAIL}.
+     */
+    public static final String OUTPUT_TAIL = "srcdeps.gradle.output.tail";
+
+    /**
+     * If {@code true} (default), a nested build is restricted to the Maven modules or Gradle projects providing the
+     * requested artifacts, if they can be found via a {@link ModuleIndex}. Otherwise, or if the requested artifacts
+     * cannot be mapped to modules, the whole source tree is built.
+     */
+    public static final String PARTIAL_BUILDS = "srcdeps.gradle.partial";
+
+    /**
+     * The time to live in seconds of the branch and tag resolutions cached by the {@link RefResolutionCache}. If set,
+     * the artifacts of branch and tag source versions are rebuilt whenever the branch or tag has moved, otherwise they
+     * are used as long as they are present in the Local Maven Repository. {@code 0} means to look up the remote on
+     * every build. The value can be overridden for an individual SCM repository via
+     * {@code srcdeps.gradle.refs.ttl.<repository-id>}.
+     */
+    public static final String REFS_TTL = "srcdeps.gradle.refs.ttl";
+
+    /**
+     * If {@code true}, each distinct source revision is built by a {@link SrcdepsBuildTask} so that Gradle can skip
+     * it when it is up to date; if {@code false} (default), the source dependencies are built during the
+     * configuration phase.
+     */
+    public static final String TASKS = "srcdeps.gradle.tasks";
+
+    /**
+     * How the srcdeps components should be found: {@code index} (default) to read them from
+     * {@code META-INF/sisu/javax.inject.Named} or {@code on} to scan the whole class path of the plugin. Any other
+     * {@link BeanScanning} constant is accepted too.
+     */
+    public static final String WIRING = "srcdeps.gradle.wiring";
+
+    /**
+     * @return the number of bytes set via {@link #BUILDS_HEAP}, {@code 0} if not set
+     */
+    public static long getBuildsHeap() {
+        return getSize(BUILDS_HEAP);
+    }
+
+    /**
+     * @return the value of {@link #BUILDS_MAX}, {@code 0} if not set
+     */
+    public static int getBuildsMax() {
+        return (int) getLong(BUILDS_MAX);
+    }
+
+    /**
+     * @return the {@link Path} set via {@link #CACHE_DIRECTORY} or {@code null} if not set
+     */
+    public static Path getCacheDirectory() {
+        final String value = System.getProperty(CACHE_DIRECTORY);
+        return value == null || value.trim().isEmpty() ? null : Paths.get(value.trim()).toAbsolutePath();
+    }
+
+    /**
+     * @return the {@link BuildDirectoryEvictor.Limits} set via {@link #EVICT_SIZE}, {@link #EVICT_AGE} and
+     *         {@link #EVICT_REVISIONS}
+     */
+    public static BuildDirectoryEvictor.Limits getEvictionLimits() {
+        return new BuildDirectoryEvictor.Limits(getSize(EVICT_SIZE), TimeUnit.DAYS.toMillis(getLong(EVICT_AGE)),
+                (int) getLong(EVICT_REVISIONS));
+    }
+
+    private static long getLong(String key) {
+        final String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("Unexpected value of %s: [%s]; expected an integer", key, value), e);
+        }
+    }
+
+    /**
+     * @return the {@link Output} set via {@link #OUTPUT}, {@link Output#console} by default
+     */
+    public static Output getOutput() {
+        final String value = System.getProperty(OUTPUT);
+        if (value == null || value.trim().isEmpty()) {
+            return Output.console;
+        }
+        try {
+            return Output.valueOf(value.trim().toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unexpected value of %s: [%s]; expected one of %s",
+                    OUTPUT, value, Arrays.toString(Output.values())), e);
+        }
+    }
+
+    /**
+     * @return the number of lines set via {@link #OUTPUT_TAIL}, {@value #DEFAULT_OUTPUT_TAIL} by default
+     */
+    public static int getOutputTail() {
+        final String value = System.getProperty(OUTPUT_TAIL);
+        return value == null || value.trim().isEmpty() ? DEFAULT_OUTPUT_TAIL : (int) getLong(OUTPUT_TAIL);
+    }
+
+    /**
+     * @param repositoryId
+     *            the id of the SCM repository as configured in {@code srcdeps.yaml}
+     * @return the time to live in milliseconds set via {@link #REFS_TTL} for the given {@code repositoryId} or
+     *         {@code -1} if the refs of the given repository should not be tracked
+     */
+    public static long getRefsTtl(String repositoryId) {
+        final String key = System.getProperty(REFS_TTL + "." + repositoryId) != null ? REFS_TTL + "." + repositoryId
+                : REFS_TTL;
+        final String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return -1L;
+        }
+        return TimeUnit.SECONDS.toMillis(getLong(key));
+    }
+
+    /**
+     * @param key
+     *            the name of the system property to read
+     * @return the number of bytes set via the given system property, {@code 0} if not set
+     */
+    static long getSize(String key) {
+        final String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return 0L;
+        }
+        final String trimmed = value.trim().toLowerCase(Locale.ROOT);
+        final int unitIndex = "kmg".indexOf(trimmed.charAt(trimmed.length() - 1));
+        try {
+            if (unitIndex >= 0) {
+                return Long.parseLong(trimmed.substring(0, trimmed.length() - 1).trim()) << (10 * (unitIndex + 1));
+            }
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format(
+                    "Unexpected value of %s: [%s]; expected a number of bytes with an optional k, m or g suffix", key,
+                    value), e);
+        }
+    }
+
+    /**
+     * @return the {@link NestedBuildMode} set via {@link #NESTED_BUILD_MODE}, {@link NestedBuildMode#fork} by
+     *         default
+     */
+    public static NestedBuildMode getNestedBuildMode() {
+        final String value = System.getProperty(NESTED_BUILD_MODE);
+        if (value == null || value.trim().isEmpty()) {
+            return NestedBuildMode.fork;
+        }
+        try {
+            return NestedBuildMode.valueOf(value.trim().toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unexpected value of %s: [%s]; expected one of %s",
+                    NESTED_BUILD_MODE, value, Arrays.toString(NestedBuildMode.values())), e);
+        }
+    }
+
+    /**
+     * @return the value of {@link #GIT_MIRRORS}, {@code true} by default
+     */
+    public static boolean isGitMirrors() {
+        final String value = System.getProperty(GIT_MIRRORS);
+        return value == null || value.trim().isEmpty() || Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * @return the value of {@link #PARTIAL_BUILDS}, {@code true} by default
+     */
+    public static boolean isPartialBuilds() {
+        final String value = System.getProperty(PARTIAL_BUILDS);
+        return value == null || value.trim().isEmpty() || Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * @return the value of {@link #TASKS}, {@code false} by default
+     */
+    public static boolean isTasks() {
+        return Boolean.getBoolean(TASKS);
+    }
+
+    /**
+     * @return the {@link BeanScanning} set via {@link #WIRING}, {@link BeanScanning#INDEX} by default
+     */
+    public static BeanScanning getWiring() {
+        final String value = System.getProperty(WIRING);
+        if (value == null || value.isEmpty()) {
+            return BeanScanning.INDEX;
+        }
+        try {
+            return BeanScanning.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unexpected value of %s: [%s]; expected one of %s",
+                    WIRING, value, Arrays.toString(BeanScanning.values())), e);
+        }
+    }
+
+    private SrcdepsGradleOptions() {
+    }
+}
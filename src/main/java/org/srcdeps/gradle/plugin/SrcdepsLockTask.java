@@ -0,0 +1,74 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.TaskAction;
+
+import com.google.inject.Injector;
+
+/**
+ * A task building all source dependencies declared in the projects having the srcdeps plugin applied, if
+ * necessary, and writing the {@link SrcdepsLockfile}. Each dependency is locked to the commit its installed artifacts
+ * were built from, see {@link SrcdepsService#getInstalledCommit(SourceDependency)}. It is added to the root project
+ * under the name {@value #NAME}.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class SrcdepsLockTask extends DefaultTask {
+    public static final String NAME = "srcdepsLock";
+    private static final String PLUGIN_ID = "org.srcdeps.gradle.plugin";
+
+    public SrcdepsLockTask() {
+        super();
+        setGroup("srcdeps");
+        setDescription("Pins the source dependencies to commits and to the names of their artifacts in "
+                + SrcdepsLockfile.FILE_NAME);
+        getOutputs().upToDateWhen(new Spec<Task>() {
+            @Override
+            public boolean isSatisfiedBy(Task task) {
+                return false;
+            }
+        });
+    }
+
+    @TaskAction
+    public void lock() throws IOException {
+        final List<Project> srcdepsProjects = new ArrayList<>();
+        for (Project project : getProject().getAllprojects()) {
+            if (project.getPlugins().hasPlugin(PLUGIN_ID)) {
+                srcdepsProjects.add(project);
+            }
+        }
+        final Injector injector = Wiring.getInjector(getProject());
+        final SrcdepsService srcdepsService = injector.getInstance(SrcdepsService.class);
+        final SrcdepsLockfile lockfile = injector.getInstance(SrcdepsLockfile.class);
+
+        final Map<SourceDependency, String> commits = new LinkedHashMap<>();
+        for (SourceDependency dependency : SourceDependencyCollector.collect(srcdepsProjects)) {
+            srcdepsService.buildIfNecessary(dependency.getGroupId(), dependency.getArtifactId(),
+                    dependency.getVersion());
+            if (!Files.exists(srcdepsService.resolveArtifact(dependency))) {
+                throw new GradleException(String.format("srcdeps: Could not build %s", dependency));
+            }
+            final String commit = srcdepsService.getInstalledCommit(dependency);
+            if (commit == null) {
+                getLogger().warn("srcdeps: Locking {} without a commit, because it is not known which commit it was"
+                        + " built from; remove it from the Local Maven Repository and lock again to pin it",
+                        dependency);
+            }
+            commits.put(dependency, commit);
+        }
+        lockfile.write(commits);
+        getLogger().lifecycle("srcdeps: Locked {} source dependencies in {}", commits.size(), lockfile.getPath());
+    }
+}
@@ -0,0 +1,467 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.srcdeps.core.Gavtc;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.SrcVersion.WellKnownType;
+
+/**
+ * The {@value #FILE_NAME} file next to {@code srcdeps.yaml} that pins each source dependency to the commit it was
+ * built from and to the names of the files it installed to the Local Maven Repository, including the POM and the
+ * artifacts with classifiers. The file is written by the {@link SrcdepsLockTask}. It contains only what does not
+ * depend on the machine that built the dependency: the nested builds are not byte-reproducible, e.g. because jars
+ * contain timestamps, so the checksums of the installed files would differ on every other machine.
+ * <p>
+ * If a source dependency is locked, {@link #check(SourceDependency)} compares the commit recorded next to the
+ * installed files (see {@link RefResolutionCache#readInstalledCommit(Path)}) with the locked one and checks that all
+ * locked files exist, instead of just checking that the main artifact exists. To detect local corruption, the size,
+ * the modification time and the SHA-1 checksum of each checked file are remembered in the {@value #STAMPS_FILE} file
+ * of its version directory the first time it is checked after a build; the checksum is computed again only if the
+ * size or the modification time differ and has to match the remembered one then. Hence the check usually costs two
+ * small file reads and a few file attribute reads, also in a fresh JVM. Artifacts built from another commit, partially
+ * deleted or corrupted artifacts are detected and rebuilt.
+ * <p>
+ * A locked branch or tag is built only from the locked commit, see {@link #getLockedCommit(SourceDependency)}.
+ * <p>
+ * The format is line based: a line containing {@code groupId:artifactId:version commit} starts a new dependency, the
+ * following indented lines contain the names of the installed files. Lines starting with {@code #} are comments. The
+ * {@code sha1 size name} file lines written by earlier versions are still read, the checksums and sizes being
+ * ignored.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+@Named
+@Singleton
+public class SrcdepsLockfile {
+
+    /**
+     * The outcome of {@link SrcdepsLockfile#check(SourceDependency)}.
+     */
+    public enum State {
+        /**
+         * The installed artifacts were built from another commit than the locked one, some of them are missing or
+         * corrupted
+         */
+        invalid,
+        /** The dependency is not present in the lockfile */
+        notLocked,
+        /** The installed artifacts are the locked ones */
+        valid
+    }
+
+    /**
+     * A locked dependency.
+     */
+    static final class Entry {
+        private final String commit;
+        /** The names of the installed files */
+        private final Set<String> files;
+
+        Entry(String commit, Set<String> files) {
+            super();
+            this.commit = commit;
+            this.files = files;
+        }
+
+        public String getCommit() {
+            return commit;
+        }
+
+        public Set<String> getFiles() {
+            return files;
+        }
+    }
+
+    /**
+     * The SHA-1 checksum and the size of a file and, if known, its modification time.
+     */
+    static final class Stamp {
+        private final long lastModified;
+        private final String sha1;
+        private final long size;
+
+        Stamp(String sha1, long size, long lastModified) {
+            super();
+            this.sha1 = sha1;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getSha1() {
+            return sha1;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @param attrs
+         *            the current attributes of the file
+         * @return {@code true} if the given {@code attrs} have the size and the modification time of this
+         *         {@link Stamp}; {@code false} otherwise
+         */
+        boolean matches(BasicFileAttributes attrs) {
+            return lastModified == attrs.lastModifiedTime().toMillis() && size == attrs.size();
+        }
+    }
+
+    public static final String FILE_NAME = "srcdeps.lock";
+    private static final Logger log = LoggerFactory.getLogger(SrcdepsLockfile.class);
+
+    /**
+     * The file in a version directory of the Local Maven Repository remembering the {@link Stamp}s of the files
+     * there, local to the machine; its name starts with {@code _} so that it is never locked itself
+     */
+    static final String STAMPS_FILE = "_srcdeps.stamps";
+
+    private static boolean isInstalledFile(String fileName) {
+        return !fileName.startsWith("_") && !fileName.startsWith("maven-metadata")
+                && !fileName.endsWith(".lastUpdated") && !fileName.endsWith(".sha1") && !fileName.endsWith(".md5")
+                && !fileName.equals("resolver-status.properties");
+    }
+
+    /**
+     * @param versionDir
+     *            the version directory whose {@value #STAMPS_FILE} should be read
+     * @return the {@link Stamp}s stored in the {@value #STAMPS_FILE} of the given {@code versionDir} by file name or
+     *         an empty {@link Map} if there is no such file or if it cannot be read
+     */
+    static Map<String, Stamp> readStamps(Path versionDir) {
+        final Map<String, Stamp> result = new TreeMap<>();
+        final Path stampsFile = versionDir.resolve(STAMPS_FILE);
+        if (Files.exists(stampsFile)) {
+            final Properties props = new Properties();
+            try (Reader r = Files.newBufferedReader(stampsFile, StandardCharsets.UTF_8)) {
+                props.load(r);
+                for (String fileName : props.stringPropertyNames()) {
+                    final String[] parts = props.getProperty(fileName).trim().split(" ");
+                    result.put(fileName, new Stamp(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("srcdeps: Ignoring {} that cannot be read", stampsFile, e);
+                result.clear();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param file
+     *            the file to stamp
+     * @param known
+     *            the {@link Stamp} of the given {@code file} remembered from earlier or {@code null}
+     * @return the given {@code known} {@link Stamp} if the size and the modification time of the given {@code file}
+     *         did not change, a new {@link Stamp} otherwise or {@code null} if the file does not exist
+     * @throws IOException
+     */
+    static Stamp stamp(Path file, Stamp known) throws IOException {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (known != null && known.matches(attrs)) {
+            return known;
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        final byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, len);
+            }
+        }
+        return new Stamp(ObjectId.fromRaw(digest.digest()).name(), attrs.size(),
+                attrs.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Stores the given {@code stamps} in the {@value #STAMPS_FILE} of the given {@code versionDir}. Failures are
+     * logged rather than thrown, because the file is just an optimization.
+     *
+     * @param versionDir
+     *            the version directory the given {@code stamps} belong to
+     * @param stamps
+     *            the {@link Stamp}s to store by file name
+     */
+    static void writeStamps(Path versionDir, Map<String, Stamp> stamps) {
+        final Path stampsFile = versionDir.resolve(STAMPS_FILE);
+        final Path tmp = versionDir.resolve(STAMPS_FILE + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write("# The sha1, size and modification time of the files checked against " + FILE_NAME + "\n");
+                for (Map.Entry<String, Stamp> e : new TreeMap<>(stamps).entrySet()) {
+                    w.write(e.getKey() + "=" + e.getValue().sha1 + " " + e.getValue().size + " "
+                            + e.getValue().lastModified + "\n");
+                }
+            }
+            Files.move(tmp, stampsFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.debug("srcdeps: Could not write {}", stampsFile, e);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.debug("srcdeps: Could not delete {}", tmp, e);
+            }
+        }
+    }
+
+    private volatile Map<SourceDependency, Entry> entries;
+    private final Path lockfilePath;
+    private final MavenLocalRepository localRepository;
+
+    @Inject
+    public SrcdepsLockfile(ConfigurationService configurationService, MavenLocalRepository localRepository) {
+        this(configurationService.getMultimoduleProjectRootDirectory().resolve(FILE_NAME), localRepository);
+    }
+
+    SrcdepsLockfile(Path lockfilePath, MavenLocalRepository localRepository) {
+        super();
+        this.lockfilePath = lockfilePath;
+        this.localRepository = localRepository;
+    }
+
+    /**
+     * Compares the commit and the files installed for the given {@code dependency} with the locked ones. The files
+     * are never changed by this method.
+     *
+     * @param dependency
+     *            the {@link SourceDependency} to check
+     * @return the {@link State} of the given {@code dependency}
+     */
+    public State check(SourceDependency dependency) {
+        final Entry entry = getEntries().get(dependency);
+        if (entry == null) {
+            return State.notLocked;
+        }
+        final Path versionDir = versionDirectory(dependency);
+        if (entry.commit != null
+                && SrcVersion.parse(dependency.getVersion()).getWellKnownType() != WellKnownType.revision) {
+            final String installedCommit = RefResolutionCache.readInstalledCommit(versionDir);
+            if (!entry.commit.equals(installedCommit)) {
+                log.info("srcdeps: {} was built from {} but {} locks it to {}", dependency,
+                        installedCommit == null ? "an unknown commit" : installedCommit, lockfilePath, entry.commit);
+                return State.invalid;
+            }
+        }
+        final Map<String, Stamp> known = readStamps(versionDir);
+        boolean changed = false;
+        try {
+            for (String fileName : entry.files) {
+                final Stamp knownStamp = known.get(fileName);
+                final Stamp actual = stamp(versionDir.resolve(fileName), knownStamp);
+                if (actual == null) {
+                    log.warn("srcdeps: {} locked in {} is missing", versionDir.resolve(fileName), lockfilePath);
+                    return State.invalid;
+                }
+                if (knownStamp != null && !actual.sha1.equals(knownStamp.sha1)) {
+                    log.warn("srcdeps: {} was changed since it was installed", versionDir.resolve(fileName));
+                    return State.invalid;
+                }
+                if (actual != knownStamp) {
+                    known.put(fileName, actual);
+                    changed = true;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("srcdeps: Could not check {} against {}", dependency, lockfilePath, e);
+            return State.invalid;
+        }
+        if (changed) {
+            writeStamps(versionDir, known);
+        }
+        return State.valid;
+    }
+
+    /**
+     * Forgets the {@link Stamp}s of the files in the given {@code versionDir}, because a build has just replaced
+     * them.
+     *
+     * @param versionDir
+     *            the version directory in the Local Maven Repository
+     * @throws IOException
+     */
+    static void deleteStamps(Path versionDir) throws IOException {
+        Files.deleteIfExists(versionDir.resolve(STAMPS_FILE));
+    }
+
+    private Map<SourceDependency, Entry> getEntries() {
+        Map<SourceDependency, Entry> result = entries;
+        if (result == null) {
+            synchronized (this) {
+                result = entries;
+                if (result == null) {
+                    try {
+                        result = read(lockfilePath);
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("srcdeps: Ignoring {} that cannot be read", lockfilePath, e);
+                        result = Collections.emptyMap();
+                    }
+                    entries = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param dependency
+     *            the {@link SourceDependency} to look up
+     * @return the commit the given {@code dependency} is locked to or {@code null} if it is not locked or if the
+     *         commit is not known
+     */
+    public String getLockedCommit(SourceDependency dependency) {
+        final Entry entry = getEntries().get(dependency);
+        return entry == null ? null : entry.commit;
+    }
+
+    /**
+     * @return the path of the lockfile
+     */
+    public Path getPath() {
+        return lockfilePath;
+    }
+
+    /**
+     * @param dependency
+     *            the dependency whose installed files should be listed
+     * @return the names of the files installed for the given {@code dependency}
+     * @throws IOException
+     */
+    Set<String> installedFiles(SourceDependency dependency) throws IOException {
+        final Set<String> result = new TreeSet<>();
+        final Path versionDir = versionDirectory(dependency);
+        if (!Files.isDirectory(versionDir)) {
+            return result;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(versionDir)) {
+            for (Path file : files) {
+                final String fileName = file.getFileName().toString();
+                if (Files.isRegularFile(file) && isInstalledFile(fileName)) {
+                    result.add(fileName);
+                }
+            }
+        }
+        return result;
+    }
+
+    static Map<SourceDependency, Entry> read(Path lockfilePath) throws IOException {
+        if (!Files.exists(lockfilePath)) {
+            return Collections.emptyMap();
+        }
+        final Map<SourceDependency, Entry> result = new LinkedHashMap<>();
+        try (BufferedReader r = Files.newBufferedReader(lockfilePath, StandardCharsets.UTF_8)) {
+            String line;
+            SourceDependency dependency = null;
+            String commit = null;
+            Set<String> files = null;
+            while ((line = r.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] parts = line.trim().split(" ", 3);
+                if (Character.isWhitespace(line.charAt(0))) {
+                    if (files == null || parts.length == 2) {
+                        throw new IOException(String.format("Unexpected line in %s: [%s]", lockfilePath, line));
+                    }
+                    /* the sha1 and size written by earlier versions are not machine independent */
+                    files.add(parts[parts.length - 1]);
+                } else {
+                    if (dependency != null) {
+                        result.put(dependency, new Entry(commit, Collections.unmodifiableSet(files)));
+                    }
+                    final String[] gav = parts[0].split(":");
+                    if (gav.length != 3) {
+                        throw new IOException(String.format("Unexpected line in %s: [%s]", lockfilePath, line));
+                    }
+                    dependency = new SourceDependency(gav[0], gav[1], gav[2]);
+                    commit = parts.length > 1 && !"-".equals(parts[1]) ? parts[1] : null;
+                    files = new TreeSet<>();
+                }
+            }
+            if (dependency != null) {
+                result.put(dependency, new Entry(commit, Collections.unmodifiableSet(files)));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private Path versionDirectory(SourceDependency dependency) {
+        return localRepository.resolve(new Gavtc(dependency.getGroupId(), dependency.getArtifactId(),
+                dependency.getVersion(), "pom")).getParent();
+    }
+
+    /**
+     * Writes a new lockfile locking the given {@code commits} and the names of the files currently installed for
+     * them.
+     *
+     * @param commits
+     *            the commits the dependencies were built from by dependency; the commit may be {@code null} if not
+     *            known
+     * @throws IOException
+     */
+    public void write(Map<SourceDependency, String> commits) throws IOException {
+        final Map<String, SourceDependency> sorted = new TreeMap<>();
+        for (SourceDependency dependency : commits.keySet()) {
+            sorted.put(dependency.toString(), dependency);
+        }
+        final Path tmp = lockfilePath.resolveSibling(FILE_NAME + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            w.write("# Generated by the srcdepsLock task, do not edit\n");
+            for (SourceDependency dependency : sorted.values()) {
+                final String commit = commits.get(dependency);
+                w.write(dependency.getGroupId() + ":" + dependency.getArtifactId() + ":" + dependency.getVersion()
+                        + " " + (commit == null ? "-" : commit) + "\n");
+                for (String fileName : installedFiles(dependency)) {
+                    w.write("    " + fileName + "\n");
+                }
+            }
+        }
+        Files.move(tmp, lockfilePath, StandardCopyOption.REPLACE_EXISTING);
+        synchronized (this) {
+            entries = null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.TaskAction;
+
+import com.google.inject.Injector;
+
+import groovy.json.JsonOutput;
+
+/**
+ * A task reporting which source dependencies declared in the projects having the srcdeps plugin applied would be
+ * built, from which SCM repositories and revisions and how long the builds would probably take, without building
+ * anything, see {@link SrcdepsService#plan(java.util.Collection)}. The plan is logged and written to
+ * {@code build/}{@value #PLAN_FILE} in the root project. It is added to the root project under the name
+ * {@value #NAME}. The source dependency builds otherwise scheduled after the projects are evaluated are skipped if
+ * this task is requested.
+ *
+ * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
+ */
+public class SrcdepsPlanTask extends DefaultTask {
+    public static final String NAME = "srcdepsPlan";
+    static final String PLAN_FILE = "srcdeps-plan.json";
+    private static final String PLUGIN_ID = "org.srcdeps.gradle.plugin";
+
+    /**
+     * @param taskNames
+     *            the task names requested on the command line
+     * @return {@code true} if the given {@code taskNames} contain a path of the {@value #NAME} task; {@code false}
+     *         otherwise
+     */
+    public static boolean isRequested(List<String> taskNames) {
+        for (String taskName : taskNames) {
+            if (taskName.equals(NAME) || taskName.endsWith(":" + NAME)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param millis
+     *            the duration to format or {@code null}
+     * @return the given duration in a human readable form
+     */
+    private static String toDuration(Long millis) {
+        if (millis == null) {
+            return "unknown duration";
+        }
+        final long seconds = (millis + 500) / 1000;
+        return seconds < 60 ? "~" + seconds + " s" : String.format("~%d min %d s", seconds / 60, seconds % 60);
+    }
+
+    public SrcdepsPlanTask() {
+        super();
+        setGroup("srcdeps");
+        setDescription("Reports which source dependencies would be built and how long it would probably take, "
+                + "without building anything");
+        getOutputs().upToDateWhen(new Spec<Task>() {
+            @Override
+            public boolean isSatisfiedBy(Task task) {
+                return false;
+            }
+        });
+    }
+
+    @TaskAction
+    @SuppressWarnings("unchecked")
+    public void plan() throws IOException {
+        final List<Project> srcdepsProjects = new ArrayList<>();
+        for (Project project : getProject().getAllprojects()) {
+            if (project.getPlugins().hasPlugin(PLUGIN_ID)) {
+                srcdepsProjects.add(project);
+            }
+        }
+        final Injector injector = Wiring.getInjector(getProject());
+        final SrcdepsService srcdepsService = injector.getInstance(SrcdepsService.class);
+        final Map<String, Object> plan = srcdepsService.plan(SourceDependencyCollector.collect(srcdepsProjects));
+
+        final List<Map<String, Object>> builds = (List<Map<String, Object>>) plan.get("builds");
+        for (Map<String, Object> build : builds) {
+            getLogger().lifecycle("srcdeps: Would {} {} {} ({}{}) providing {}: {}", build.get("action"),
+                    build.get("repository"), build.get("version"),
+                    "restore".equals(build.get("action")) ? "from the artifact cache"
+                            : toDuration((Long) build.get("estimatedMillis")),
+                    build.get("requiredBy") == null ? "" : ", required by " + build.get("requiredBy"),
+                    build.get("artifacts"), build.get("reason"));
+        }
+        for (String unmapped : (List<String>) plan.get("unmapped")) {
+            getLogger().warn("srcdeps: No SCM repository configured for {}", unmapped);
+        }
+
+        final File planFile = new File(getProject().getBuildDir(), PLAN_FILE);
+        final Path planPath = planFile.toPath();
+        Files.createDirectories(planPath.getParent());
+        Files.write(planPath, JsonOutput.prettyPrint(JsonOutput.toJson(plan)).getBytes(StandardCharsets.UTF_8));
+        getLogger().lifecycle("srcdeps: {} source revision(s) to build or restore, estimated {}; {} source"
+                + " dependencies installed already; see {}", builds.size(),
+                toDuration((Long) plan.get("estimatedMillis")), ((List<String>) plan.get("installed")).size(),
+                planFile);
+    }
+}
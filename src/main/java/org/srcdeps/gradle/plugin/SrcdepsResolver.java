@@ -1,6 +1,7 @@
 package org.srcdeps.gradle.plugin;
 
 import org.gradle.api.Action;
+import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.DependencyResolveDetails;
 import org.gradle.api.artifacts.ModuleVersionSelector;
@@ -15,15 +16,40 @@ import org.srcdeps.core.SrcVersion;
  * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
  */
 public class SrcdepsResolver {
-    private static class DependencyAction implements Action<DependencyResolveDetails> {
+    static class DependencyAction implements Action<DependencyResolveDetails> {
+        private final Project project;
+
+        /** Looked up lazily, so that the {@link Wiring} is not performed for builds without source dependencies */
+        private volatile SrcdepsService srcdepsService;
+
+        public DependencyAction(Project project) {
+            super();
+            this.project = project;
+        }
+
+        /**
+         * A constructor for benchmarks that supply an already wired {@link SrcdepsService}.
+         *
+         * @param srcdepsService
+         *            the {@link SrcdepsService} to use
+         */
+        DependencyAction(SrcdepsService srcdepsService) {
+            super();
+            this.project = null;
+            this.srcdepsService = srcdepsService;
+        }
 
         @Override
         public void execute(DependencyResolveDetails dep) {
             ModuleVersionSelector requested = dep.getRequested();
             final String version = requested.getVersion();
-            if (SrcVersion.isSrcVersion(version)) {
-                final SrcdepsService srcdepsService = Wiring.getInjector().getInstance(SrcdepsService.class);
-                srcdepsService.buildIfNecessary(requested.getGroup(), requested.getName(), version);
+            if (SrcVersion.isSrcVersion(version) && !isDeferred(project)) {
+                SrcdepsService service = srcdepsService;
+                if (service == null) {
+                    service = Wiring.getInjector(project).getInstance(SrcdepsService.class);
+                    srcdepsService = service;
+                }
+                service.buildIfNecessary(requested.getGroup(), requested.getName(), version);
             }
         }
 
@@ -31,12 +57,32 @@ public class SrcdepsResolver {
 
     private static final Logger log = LoggerFactory.getLogger(SrcdepsResolver.class);
 
+    /** The extra property set on the root project once the task graph is ready, see {@link #isDeferred(Project)} */
+    static final String TASK_GRAPH_READY = "srcdepsTaskGraphReady";
+
+    /**
+     * Gradle applies the {@code eachDependency} rules already when it computes the task dependencies of a
+     * {@link Configuration} while building the task graph. If {@link SrcdepsGradleOptions#TASKS} is enabled, the
+     * source dependencies are left to the {@link SrcdepsBuildTask}s at that time, so that they do not get built
+     * synchronously before Gradle could find out that the tasks are up to date.
+     *
+     * @param project
+     *            the {@link Project} whose configuration is being resolved or {@code null} if not known
+     * @return {@code true} if {@link SrcdepsGradleOptions#TASKS} is enabled and the task graph of the build of the
+     *         given {@code project} is not ready yet; {@code false} otherwise
+     */
+    static boolean isDeferred(Project project) {
+        return project != null && SrcdepsGradleOptions.isTasks()
+                && !project.getRootProject().getExtensions().getExtraProperties().has(TASK_GRAPH_READY);
+    }
+
     private final Configuration configuration;
-    private final Action<DependencyResolveDetails> dependencyAction = new DependencyAction();
+    private final Action<DependencyResolveDetails> dependencyAction;
 
-    public SrcdepsResolver(Configuration configuration) {
+    public SrcdepsResolver(Project project, Configuration configuration) {
         super();
         this.configuration = configuration;
+        this.dependencyAction = new DependencyAction(project);
     }
 
     /**
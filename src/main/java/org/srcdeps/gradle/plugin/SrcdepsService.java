@@ -1,11 +1,29 @@
 package org.srcdeps.gradle.plugin;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -16,18 +34,42 @@ import org.slf4j.LoggerFactory;
 import org.srcdeps.core.BuildException;
 import org.srcdeps.core.BuildRequest;
 import org.srcdeps.core.BuildService;
+import org.srcdeps.core.GavPattern;
 import org.srcdeps.core.Gavtc;
 import org.srcdeps.core.MavenLocalRepository;
 import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.SrcVersion.WellKnownType;
+import org.srcdeps.gradle.plugin.BuildTimings.Phase;
+import org.srcdeps.gradle.plugin.SrcdepsGradleOptions.NestedBuildMode;
+import org.srcdeps.gradle.plugin.SrcdepsGradleOptions.Output;
 import org.srcdeps.core.config.BuilderIo;
 import org.srcdeps.core.config.Configuration;
+import org.srcdeps.core.config.ConfigurationException;
 import org.srcdeps.core.config.ScmRepository;
 import org.srcdeps.core.fs.BuildDirectoriesManager;
 import org.srcdeps.core.fs.PathLock;
 import org.srcdeps.core.shell.IoRedirects;
 
 /**
- * See {@link #buildIfNecessary(String, String, String)}.
+ * See {@link #buildIfNecessary(String, String, String)} and {@link #scheduleBuilds(Collection, int)}.
+ * <p>
+ * All builds go through the {@link BuildRegistry} so that each {@link BuildKey} is built at most once per outer build,
+ * no matter how many threads ask for its artifacts at the same time, and runs in one of the {@link NestedBuildSlots},
+ * so that at most as many nested builds run at once as the outer build has workers. The source dependencies found in
+ * the Local Maven Repository are memoized for the rest of the outer build, so that repeated requests for them cost just
+ * a hash lookup. Before building a revision, its artifacts are looked up in the {@link ArtifactCache}. The
+ * dependencies locked in the {@link SrcdepsLockfile} are checked against the locked files instead of just checking
+ * that the main artifact exists.
+ * The installed artifacts of branches and tags are checked against the commit the branch or tag currently resolves to
+ * in the {@link RefResolutionCache}, if enabled.
+ * <p>
+ * The nested builds are restricted to the modules providing the artifactIds requested for the given
+ * {@link BuildKey} so far, as far as they can be mapped via a {@link ModuleIndex}. If an artifact is requested that
+ * an earlier partial build did not install, a follow-up build of the whole source tree is performed.
+ * <p>
+ * If {@link SrcdepsGradleOptions#OUTPUT} is {@link Output#file}, the output of each nested build is written to a
+ * file of its own managed by {@link BuildLogs} and only its tail is logged. The durations of the successful nested
+ * builds are kept in the {@link BuildHistory}, so that {@link #plan(Collection)} can estimate the future ones.
  *
  * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
  */
@@ -36,6 +78,27 @@ import org.srcdeps.core.shell.IoRedirects;
 public class SrcdepsService {
     private static final Logger log = LoggerFactory.getLogger(SrcdepsService.class);
 
+    /** How often to report that we are still waiting for a build directory locked by another process */
+    private static final long LOCK_PROGRESS_INTERVAL_MS = 10000L;
+
+    /** Reports the progress of waiting for build directory locks */
+    private static final Timer lockProgressTimer = new Timer("srcdeps-lock-progress", true);
+
+    /**
+     * A {@link ThreadFactory} producing daemon threads so that a hanging nested build cannot prevent the Gradle JVM
+     * from exiting.
+     */
+    private static final ThreadFactory threadFactory = new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "srcdeps-build-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
     private static List<String> enhanceBuildArguments(List<String> buildArguments, Path configurationLocation,
             String localRepo) {
         List<String> result = new ArrayList<>();
@@ -55,54 +118,144 @@ public class SrcdepsService {
         return Collections.unmodifiableList(result);
     }
 
+    /**
+     * Finds the first {@link ScmRepository} associated with the given {@code groupId:artifactId:version} triple.
+     *
+     * @param index
+     * @param groupId
+     * @param artifactId
+     * @param version
+     * @return the matching {@link ScmRepository}
+     */
+    private static ScmRepository findScmRepo(ScmRepositoryIndex index, String groupId, String artifactId,
+            String version) {
+        final ScmRepository scmRepository = index.find(groupId, artifactId, version);
+        if (scmRepository != null) {
+            return scmRepository;
+        }
+        throw new IllegalStateException(
+                String.format("No srcdeps SCM repository configured in srcdeps.yaml for artifact [%s:%s:%s]", groupId,
+                        artifactId, version));
+    }
+
+    private final ArtifactCache artifactCache;
     private final BuildDirectoriesManager buildDirectoriesManager;
+    private final BuildHistory buildHistory;
+    private final BuildLogs buildLogs;
+    /** The {@link BuildPlan}s created during the current outer build; guarded by {@code this} */
+    private final List<BuildPlan> buildPlans = new ArrayList<>();
+    private final BuildRegistry buildRegistry;
+    private final BuildDirectoryEvictor buildDirectoryEvictor;
     private final BuildService buildService;
+    private final BuildTimings buildTimings;
     private final ConfigurationService configurationService;
+    private final GitMirrors gitMirrors;
+
     private final MavenLocalRepository localRepository;
+    private final SrcdepsLockfile lockfile;
+    private final NestedBuildSlots nestedBuildSlots;
+    private final RefResolutionCache refResolutionCache;
+
+    /** The {@link BuildKey}s whose last nested build was restricted to some modules */
+    private final Set<BuildKey> partialBuilds = Collections.newSetFromMap(new ConcurrentHashMap<BuildKey, Boolean>());
+
+    /** The artifactIds requested per {@link BuildKey} during the current outer build */
+    private final ConcurrentMap<BuildKey, Set<String>> requestedArtifactIds = new ConcurrentHashMap<>();
+
+    /** The groupIds requested per {@link BuildKey} during the current outer build */
+    private final ConcurrentMap<BuildKey, Set<String>> requestedGroupIds = new ConcurrentHashMap<>();
+
+    /**
+     * The {@link SourceDependency}s found in the Local Maven Repository during the current outer build. Cleared
+     * whenever a nested build installs something and at the end of the outer build.
+     */
+    private final Set<SourceDependency> satisfiedDependencies = Collections
+            .newSetFromMap(new ConcurrentHashMap<SourceDependency, Boolean>());
+    private ExecutorService scheduledBuildsExecutor;
 
     @Inject
     public SrcdepsService(ConfigurationService configurationService, BuildDirectoriesManager buildDirectoriesManager,
-            BuildService buildService, MavenLocalRepository localRepository) {
+            BuildService buildService, MavenLocalRepository localRepository, BuildRegistry buildRegistry,
+            ArtifactCache artifactCache, GitMirrors gitMirrors, BuildDirectoryEvictor buildDirectoryEvictor,
+            BuildTimings buildTimings, SrcdepsLockfile lockfile, RefResolutionCache refResolutionCache,
+            BuildLogs buildLogs, NestedBuildSlots nestedBuildSlots, BuildHistory buildHistory) {
         super();
         this.configurationService = configurationService;
         this.buildDirectoriesManager = buildDirectoriesManager;
         this.buildService = buildService;
         this.localRepository = localRepository;
+        this.buildRegistry = buildRegistry;
+        this.artifactCache = artifactCache;
+        this.gitMirrors = gitMirrors;
+        this.buildDirectoryEvictor = buildDirectoryEvictor;
+        this.buildTimings = buildTimings;
+        this.lockfile = lockfile;
+        this.refResolutionCache = refResolutionCache;
+        this.buildLogs = buildLogs;
+        this.nestedBuildSlots = nestedBuildSlots;
+        this.buildHistory = buildHistory;
+        buildTimings.recordDuration(null, Phase.configurationLoad, configurationService.getLoadNanos());
     }
 
     /**
-     * Finds the first {@link ScmRepository} associated with the given {@code groupId:artifactId:version} triple.
-     *
-     * @param repositories
-     * @param groupId
-     * @param artifactId
-     * @param version
-     * @return the matching {@link ScmRepository}
+     * Blocks until all builds planned by {@link #scheduleBuilds(Collection, int)} have finished, releases the
+     * worker threads and forgets all state collected during the current outer build. Supposed to be called at the
+     * end of the outer build.
      */
-    private static ScmRepository findScmRepo(List<ScmRepository> repositories, String groupId, String artifactId,
-            String version) {
-        for (ScmRepository scmRepository : repositories) {
-            if (scmRepository.getGavSet().contains(groupId, artifactId, version)) {
-                return scmRepository;
+    public void buildFinished() {
+        final ExecutorService executor;
+        final List<BuildPlan> plans;
+        synchronized (this) {
+            executor = scheduledBuildsExecutor;
+            scheduledBuildsExecutor = null;
+            plans = new ArrayList<>(buildPlans);
+            buildPlans.clear();
+        }
+        if (executor != null) {
+            try {
+                /* the plans submit their builds as they go, so they must finish before the executor is shut down */
+                for (BuildPlan plan : plans) {
+                    while (!plan.awaitCompletion(1, TimeUnit.MINUTES)) {
+                        log.info("srcdeps: Waiting for source dependency builds to finish");
+                    }
+                }
+                executor.shutdown();
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.info("srcdeps: Waiting for source dependency builds to finish");
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
             }
         }
-        throw new IllegalStateException(
-                String.format("No srcdeps SCM repository configured in srcdeps.yaml for artifact [%s:%s:%s]", groupId,
-                        artifactId, version));
+        buildRegistry.clear();
+        satisfiedDependencies.clear();
+        partialBuilds.clear();
+        requestedArtifactIds.clear();
+        requestedGroupIds.clear();
+        buildHistory.save();
     }
 
     /**
-     * Builds the artifact given by the arguments if necessary and installs it to the Local Maven Repository.
+     * Builds the artifact given by the arguments if necessary and installs it to the Local Maven Repository. If the
+     * artifact is being built by another thread, e.g. by a build scheduled via
+     * {@link #scheduleBuilds(Collection, int)}, waits for that build to finish instead of starting a new one.
      *
      * @param groupId
      * @param artifactId
      * @param version
      */
     public void buildIfNecessary(String groupId, String artifactId, String version) {
+        final SourceDependency dependency = new SourceDependency(groupId, artifactId, version);
+        if (satisfiedDependencies.contains(dependency)) {
+            return;
+        }
+
         final Configuration configuration = configurationService.getConfiguration();
 
         if (configuration.isSkip()) {
             log.info("srcdeps: Skipped");
+            return;
         }
 
         Gavtc artifactGavtc = new Gavtc(groupId, artifactId, version, "jar"); // FIXME: "jar" should not be hard
@@ -110,56 +263,987 @@ public class SrcdepsService {
                                                                               // a notion of type an classifier (does
                                                                               // it?)
         Path artfactPath = localRepository.resolve(artifactGavtc);
-        if (!Files.exists(artfactPath)) {
-            ScmRepository scmRepo = findScmRepo(configuration.getRepositories(), groupId, artifactId, version);
+        if (!isInstalled(dependency, artfactPath)) {
+            final long lookupStart = System.nanoTime();
+            ScmRepository scmRepo = findScmRepo(configurationService.getScmRepositoryIndex(), groupId, artifactId,
+                    version);
             SrcVersion srcVersion = SrcVersion.parse(version);
-            try (PathLock projectBuildDir = buildDirectoriesManager.openBuildDirectory(scmRepo.getIdAsPath(),
-                    srcVersion)) {
+            final BuildKey key = new BuildKey(scmRepo.getId(), srcVersion);
+            buildTimings.record(key, Phase.repositoryLookup, lookupStart);
+            requestArtifact(key, dependency);
+            Future<Void> build = buildRegistry.getOrRun(key,
+                    newBuild(scmRepo, srcVersion, dependency, artfactPath, true));
+            if (!await(build, dependency)) {
+                return;
+            }
 
-                /* query the delegate again, because things may have changed since we requested the lock */
-                if (Files.exists(artfactPath)) {
-                    log.debug("srcdeps: Found in the local repo and using it as is: {}", artfactPath);
+            /* check once again if the delegate sees the newly built artifact */
+            long checkStart = System.nanoTime();
+            boolean exists = Files.exists(artfactPath);
+            buildTimings.record(key, Phase.artifactCheck, checkStart);
+            if (!exists && (partialBuilds.contains(key) || buildRegistry.get(key) != build)) {
+                log.info("srcdeps: {} was not installed by the partial build of {}; building all modules", dependency,
+                        key);
+                build = buildRegistry.rerun(key, build, newBuild(scmRepo, srcVersion, dependency, artfactPath, false));
+                if (!await(build, dependency)) {
                     return;
-                } else {
-                    /* no change in the local repo, let's build */
-                    BuilderIo builderIo = scmRepo.getBuilderIo();
-                    IoRedirects ioRedirects = IoRedirects.builder() //
-                            .stdin(IoRedirects.parseUri(builderIo.getStdin())) //
-                            .stdout(IoRedirects.parseUri(builderIo.getStdout())) //
-                            .stderr(IoRedirects.parseUri(builderIo.getStderr())) //
-                            .build();
-
-                    List<String> buildArgs = enhanceBuildArguments(scmRepo.getBuildArguments(),
-                            configurationService.getConfigurationLocation(),
-                            localRepository.getRootDirectory().toString());
-
-                    BuildRequest buildRequest = BuildRequest.builder() //
-                            .dependentProjectRootDirectory(configurationService.getMultimoduleProjectRootDirectory())
-                            .projectRootDirectory(projectBuildDir.getPath()) //
-                            .scmUrls(scmRepo.getUrls()) //
-                            .srcVersion(srcVersion) //
-                            .buildArguments(buildArgs) //
-                            .timeoutMs(scmRepo.getBuildTimeout().toMilliseconds()) //
-                            .skipTests(scmRepo.isSkipTests()) //
-                            .forwardProperties(configuration.getForwardProperties()) //
-                            .addDefaultBuildArguments(scmRepo.isAddDefaultBuildArguments()) //
-                            .verbosity(scmRepo.getVerbosity()) //
-                            .ioRedirects(ioRedirects) //
-                            .versionsMavenPluginVersion(scmRepo.getMaven().getVersionsMavenPluginVersion())
-                            .gradleModelTransformer(scmRepo.getGradle().getModelTransformer()).build();
-                    buildService.build(buildRequest);
-
-                    /* check once again if the delegate sees the newly built artifact */
-                    if (!Files.exists(artfactPath)) {
-                        log.error(
-                                "srcdeps: Build succeeded but the artifact {}:{}:{} is still not available in the local repository",
-                                groupId, artifactId, version);
+                }
+                checkStart = System.nanoTime();
+                exists = Files.exists(artfactPath);
+                buildTimings.record(key, Phase.artifactCheck, checkStart);
+            }
+            if (!exists) {
+                log.error(
+                        "srcdeps: Build succeeded but the artifact {}:{}:{} is still not available in the local repository",
+                        groupId, artifactId, version);
+                return;
+            }
+        }
+        satisfiedDependencies.add(dependency);
+    }
+
+    /**
+     * @param build
+     *            the build to wait for
+     * @param dependency
+     *            the {@link SourceDependency} requested from the given {@code build}
+     * @return {@code true} if the given {@code build} succeeded; {@code false} otherwise
+     */
+    private static boolean await(Future<Void> build, SourceDependency dependency) {
+        try {
+            build.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            log.error("srcdeps: Could not build {}", dependency, e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * Remembers that the given {@code dependency} was requested from the given {@code key}, so that the build of
+     * {@code key} includes the module providing it and so that its groupId is looked at after the build.
+     *
+     * @param key
+     *            the {@link BuildKey} providing the given {@code dependency}
+     * @param dependency
+     *            the requested {@link SourceDependency}
+     */
+    private void requestArtifact(BuildKey key, SourceDependency dependency) {
+        getOrCreate(requestedArtifactIds, key).add(dependency.getArtifactId());
+        getOrCreate(requestedGroupIds, key).add(dependency.getGroupId());
+    }
+
+    /**
+     * @param map
+     *            the map to look up
+     * @param key
+     *            the {@link BuildKey} to look up
+     * @return the concurrent {@link Set} stored under the given {@code key}, added first if there is none
+     */
+    private static Set<String> getOrCreate(ConcurrentMap<BuildKey, Set<String>> map, BuildKey key) {
+        Set<String> result = map.get(key);
+        if (result == null) {
+            final Set<String> newSet = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            result = map.putIfAbsent(key, newSet);
+            if (result == null) {
+                result = newSet;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param scmRepo
+     *            the {@link ScmRepository} to build from
+     * @param srcVersion
+     *            the {@link SrcVersion} to build
+     * @param dependency
+     *            the {@link SourceDependency} that triggered the build
+     * @param artfactPath
+     *            the path of an artifact that the build is supposed to install
+     * @param partial
+     *            if {@code true} the build may be restricted to the modules providing the artifactIds requested so
+     *            far; if {@code false} all modules are built
+     * @return a new build of the given {@code srcVersion} of the given {@code scmRepo} to be passed to the
+     *         {@link BuildRegistry}
+     */
+    private Callable<Void> newBuild(final ScmRepository scmRepo, final SrcVersion srcVersion,
+            final SourceDependency dependency, final Path artfactPath, final boolean partial) {
+        final BuildKey key = new BuildKey(scmRepo.getId(), srcVersion);
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws BuildException, IOException {
+                final long lockStart = System.nanoTime();
+                try (PathLock projectBuildDir = openBuildDirectory(scmRepo, srcVersion);
+                        Closeable access = buildDirectoryEvictor.access(projectBuildDir.getPath())) {
+                    buildTimings.record(key, Phase.lockWait, lockStart);
+
+                    /* query the delegate again, because things may have changed since we requested the lock */
+                    if (isInstalled(dependency, artfactPath)) {
+                        log.debug("srcdeps: Found in the local repo and using it as is: {}", artfactPath);
+                    } else {
+                        final List<String> buildArgs = getBuildArguments(scmRepo);
+                        final String cacheKey = cacheKey(scmRepo, srcVersion);
+                        final long restoreStart = System.nanoTime();
+                        final boolean restored = cacheKey != null && artifactCache.restore(cacheKey)
+                                && Files.exists(artfactPath);
+                        if (cacheKey != null) {
+                            buildTimings.record(key, Phase.cacheRestore, restoreStart);
+                        }
+                        if (restored) {
+                            log.info("srcdeps: Using {} {} from the artifact cache", scmRepo.getId(), srcVersion);
+                            SrcdepsLockfile.deleteStamps(artfactPath.getParent());
+                        } else {
+                            /* no change in the local repo, let's build */
+                            final Set<String> artifactIds = requestedArtifactIds.get(key);
+                            final String lockedCommit = srcVersion.getWellKnownType() == WellKnownType.revision
+                                    ? null : lockfile.getLockedCommit(dependency);
+                            final long slotStart = System.nanoTime();
+                            nestedBuildSlots.acquire();
+                            final boolean partiallyBuilt;
+                            try {
+                                buildTimings.record(key, Phase.slotWait, slotStart);
+                                partiallyBuilt = build(key, scmRepo, srcVersion, buildArgs, projectBuildDir.getPath(),
+                                        partial && artifactIds != null ? new TreeSet<>(artifactIds) : null,
+                                        lockedCommit);
+                            } finally {
+                                nestedBuildSlots.release();
+                            }
+                            final String builtCommit = GitMirrors.readHead(projectBuildDir.getPath());
+                            checkLockedCommit(scmRepo, srcVersion, lockedCommit, builtCommit);
+                            if (partiallyBuilt) {
+                                partialBuilds.add(key);
+                            } else {
+                                partialBuilds.remove(key);
+                            }
+                            final Set<String> groupIds = new TreeSet<>(getOrCreate(requestedGroupIds, key));
+                            groupIds.add(dependency.getGroupId());
+                            final Set<String> installedGroupIds = getInstalledGroupIds(scmRepo, groupIds,
+                                    gitMirrors.indexModules(scmRepo, srcVersion));
+                            final List<Path> versionDirs = findOwnVersionDirectories(artifactCache, scmRepo,
+                                    srcVersion.toString(), installedGroupIds);
+                            for (Path versionDir : versionDirs) {
+                                SrcdepsLockfile.deleteStamps(versionDir);
+                            }
+                            if (cacheKey != null && !partiallyBuilt) {
+                                artifactCache.store(cacheKey, srcVersion.toString(), installedGroupIds);
+                            }
+                            recordInstalledCommit(scmRepo, srcVersion, versionDirs, builtCommit);
+                            if (lockfile.check(dependency) == SrcdepsLockfile.State.invalid) {
+                                throw new BuildException(String.format(
+                                        "srcdeps: %s built from %s %s does not match %s, see the warnings above;"
+                                                + " run %s to lock it again",
+                                        dependency, scmRepo.getId(), srcVersion, SrcdepsLockfile.FILE_NAME,
+                                        SrcdepsLockTask.NAME));
+                            }
+                        }
+                        /* the nested build might have overwritten anything we have seen so far */
+                        satisfiedDependencies.clear();
                     }
                 }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @param scmRepo
+     *            the {@link ScmRepository} to build from
+     * @param srcVersion
+     *            the {@link SrcVersion} to build
+     * @return the {@link ArtifactCache} key of the given build or {@code null} if the {@link ArtifactCache} is
+     *         disabled or if the given {@code srcVersion} is not immutable. The build arguments are taken as
+     *         configured, without the {@code -Dmaven.repo.local} added by {@link #getBuildArguments(ScmRepository)},
+     *         so that the key does not depend on the location of the Local Maven Repository
+     */
+    String cacheKey(ScmRepository scmRepo, SrcVersion srcVersion) {
+        if (!artifactCache.isEnabled() || srcVersion.getWellKnownType() != WellKnownType.revision) {
+            return null;
+        }
+        final ArtifactCache.KeyBuilder key = ArtifactCache.newKeyBuilder() //
+                .input("scmUrls", scmRepo.getUrls()) //
+                .input("version", srcVersion) //
+                .input("buildArguments", scmRepo.getBuildArguments()) //
+                .input("skipTests", scmRepo.isSkipTests()) //
+                .input("addDefaultBuildArguments", scmRepo.isAddDefaultBuildArguments()) //
+                .input("versionsMavenPluginVersion", scmRepo.getMaven().getVersionsMavenPluginVersion()) //
+                .input("gradleModelTransformer", scmRepo.getGradle().getModelTransformer());
+        for (String property : new TreeSet<>(configurationService.getConfiguration().getForwardProperties())) {
+            key.input(property, System.getProperty(property));
+        }
+        return key.build();
+    }
 
-            } catch (BuildException | IOException e) {
-                log.error("srcdeps: Could not build {}:{}:{}" + groupId, artifactId, version, e);
+    /**
+     * @param artifactCache
+     *            the {@link ArtifactCache} to search the Local Maven Repository with
+     * @param scmRepo
+     *            the {@link ScmRepository} whose artifacts should be found
+     * @param version
+     *            the version to look for
+     * @param groupIds
+     *            the exact groupIds to look under
+     * @return the {@code <groupId>/<artifactId>/<version>} directories of the given {@code groupIds} and
+     *         {@code version} whose {@code groupId:artifactId} the {@code includes} of the given {@code scmRepo}
+     *         match. The directories of other SCM repositories using the same version string, such as
+     *         {@code 1.0-SRC-branch-master}, are left out.
+     * @throws IOException
+     */
+    static List<Path> findOwnVersionDirectories(ArtifactCache artifactCache, ScmRepository scmRepo, String version,
+            Collection<String> groupIds) throws IOException {
+        final List<Path> result = new ArrayList<>();
+        for (String groupId : groupIds) {
+            for (Path versionDir : artifactCache.findVersionDirectories(version, Collections.singleton(groupId))) {
+                final String artifactId = versionDir.getParent().getFileName().toString();
+                if (scmRepo.getGavSet().contains(groupId, artifactId, version)) {
+                    result.add(versionDir);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param scmRepo
+     *            the {@link ScmRepository} that was built
+     * @param requestedGroupIds
+     *            the groupIds of the artifacts requested from the build
+     * @param index
+     *            the {@link ModuleIndex} of the built commit or {@code null} if not available
+     * @return the exact groupIds the build may have installed artifacts under: the given
+     *         {@code requestedGroupIds}, the groupIds of the modules in the given {@code index} and the groupIds the
+     *         {@code includes} of the given {@code scmRepo} name without a wildcard. Wildcard includes are not
+     *         expanded, because that would mean searching through whole subtrees of the Local Maven Repository.
+     */
+    static Set<String> getInstalledGroupIds(ScmRepository scmRepo, Collection<String> requestedGroupIds,
+            ModuleIndex index) {
+        final Set<String> result = new TreeSet<>(requestedGroupIds);
+        if (index != null) {
+            result.addAll(index.getGroupIds());
+        }
+        for (GavPattern include : scmRepo.getGavSet().getIncludes()) {
+            final String source = include.toString();
+            final int colonPos = source.indexOf(':');
+            final String groupIdPattern = colonPos >= 0 ? source.substring(0, colonPos) : source;
+            if (!groupIdPattern.isEmpty() && indexOfWildcard(groupIdPattern) < 0) {
+                result.add(groupIdPattern);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param groupIdPattern
+     *            the groupId part of a {@link GavPattern}
+     * @return the index of the first character in the given {@code groupIdPattern} that cannot be part of a plain
+     *         groupId or {@code -1} if there is none
+     */
+    private static int indexOfWildcard(String groupIdPattern) {
+        for (int i = 0; i < groupIdPattern.length(); i++) {
+            final char ch = groupIdPattern.charAt(i);
+            if (!(Character.isLetterOrDigit(ch) || ch == '.' || ch == '-' || ch == '_')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param buildArgs
+     *            the build arguments as configured
+     * @param buildTool
+     *            the {@link BuildTool} of the source tree to build
+     * @param mode
+     *            the {@link NestedBuildMode} in effect
+     * @return the given {@code buildArgs} adjusted to the given {@code mode}
+     */
+    static List<String> adjustForNestedBuildMode(List<String> buildArgs, BuildTool buildTool, NestedBuildMode mode) {
+        if (mode == NestedBuildMode.warm && buildTool == BuildTool.gradle && !buildArgs.contains("--no-daemon")
+                && !buildArgs.contains("--daemon")) {
+            final List<String> result = new ArrayList<>(buildArgs);
+            result.add("--daemon");
+            return Collections.unmodifiableList(result);
+        }
+        return buildArgs;
+    }
+
+    /**
+     * @param key
+     *            the {@link BuildKey} to record the timings under
+     * @param scmRepo
+     *            the {@link ScmRepository} to build from
+     * @param srcVersion
+     *            the {@link SrcVersion} to build
+     * @param buildArgs
+     *            the build arguments as configured
+     * @param projectBuildDir
+     *            the build directory
+     * @param artifactIds
+     *            the artifactIds to restrict the build to or {@code null} to build all modules
+     * @param lockedCommit
+     *            the commit the given branch or tag {@code srcVersion} is locked to in the {@link SrcdepsLockfile} or
+     *            {@code null} if it is not locked
+     * @return {@code true} if the build was restricted to the modules providing the given {@code artifactIds};
+     *         {@code false} if all modules were built
+     * @throws BuildException
+     */
+    private boolean build(BuildKey key, ScmRepository scmRepo, SrcVersion srcVersion, List<String> buildArgs,
+            Path projectBuildDir, Collection<String> artifactIds, String lockedCommit) throws BuildException {
+        final Configuration configuration = configurationService.getConfiguration();
+        BuilderIo builderIo = scmRepo.getBuilderIo();
+        final Path logFile = newLogFile(scmRepo, srcVersion);
+        IoRedirects ioRedirects = IoRedirects.builder() //
+                .stdin(IoRedirects.parseUri(builderIo.getStdin())) //
+                .stdout(IoRedirects.parseUri(redirectToLogFile(builderIo.getStdout(), logFile))) //
+                .stderr(IoRedirects.parseUri(redirectToLogFile(builderIo.getStderr(), logFile))) //
+                .build();
+
+        final long fetchStart = System.nanoTime();
+        final List<String> scmUrls = gitMirrors.prepare(scmRepo, srcVersion, projectBuildDir, lockedCommit);
+        buildTimings.record(key, Phase.scmFetch, fetchStart);
+        if (lockedCommit != null) {
+            /*
+             * the mirror points the branch or tag at the locked commit; without the mirror, fail before building if
+             * the branch or tag has moved on
+             */
+            final boolean mirrored = scmUrls.size() > scmRepo.getUrls().size();
+            checkLockedCommit(scmRepo, srcVersion, lockedCommit, mirrored
+                    ? gitMirrors.resolveCommit(scmRepo, srcVersion) : refResolutionCache.resolve(scmRepo, srcVersion));
+        }
+
+        /* the mirror knows the build tool before the first checkout */
+        final ModuleIndex index = gitMirrors.indexModules(scmRepo, srcVersion);
+        final BuildTool buildTool = index != null ? index.getBuildTool() : BuildTool.detect(projectBuildDir);
+        List<String> nestedBuildArgs = adjustForNestedBuildMode(buildArgs, buildTool,
+                SrcdepsGradleOptions.getNestedBuildMode());
+        if (nestedBuildArgs != buildArgs) {
+            log.debug("srcdeps: Sending the nested Gradle build of {} {} to a Gradle daemon", scmRepo.getId(),
+                    srcVersion);
+        }
+        boolean addDefaultBuildArguments = scmRepo.isAddDefaultBuildArguments();
+        final ModuleIndex modules = artifactIds == null || !SrcdepsGradleOptions.isPartialBuilds() ? null : index;
+        final List<String> partialArgs = modules == null ? null : modules.getPartialBuildArguments(artifactIds);
+        if (partialArgs != null) {
+            log.info("srcdeps: Building only the modules of {} {} providing {}", scmRepo.getId(), srcVersion,
+                    artifactIds);
+            final List<String> args = new ArrayList<>(nestedBuildArgs);
+            args.addAll(partialArgs);
+            nestedBuildArgs = Collections.unmodifiableList(args);
+            if (buildTool == BuildTool.gradle) {
+                /* the default arguments would run install in all projects */
+                addDefaultBuildArguments = false;
+            }
+        } else if (artifactIds != null && SrcdepsGradleOptions.isPartialBuilds()) {
+            log.debug("srcdeps: Could not map {} to the modules of {} {}; building all modules", artifactIds,
+                    scmRepo.getId(), srcVersion);
+        }
+        nestedBuildArgs = nestedBuildSlots.limitResources(nestedBuildArgs, buildTool, index);
+
+        BuildRequest buildRequest = BuildRequest.builder() //
+                .dependentProjectRootDirectory(configurationService.getMultimoduleProjectRootDirectory())
+                .projectRootDirectory(projectBuildDir) //
+                .scmUrls(scmUrls) //
+                .srcVersion(srcVersion) //
+                .buildArguments(nestedBuildArgs) //
+                .timeoutMs(scmRepo.getBuildTimeout().toMilliseconds()) //
+                .skipTests(scmRepo.isSkipTests()) //
+                .forwardProperties(configuration.getForwardProperties()) //
+                .addDefaultBuildArguments(addDefaultBuildArguments) //
+                .verbosity(scmRepo.getVerbosity()) //
+                .ioRedirects(ioRedirects) //
+                .versionsMavenPluginVersion(scmRepo.getMaven().getVersionsMavenPluginVersion())
+                .gradleModelTransformer(scmRepo.getGradle().getModelTransformer()).build();
+        final long buildStart = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            buildService.build(buildRequest);
+            succeeded = true;
+            buildHistory.record(scmRepo.getId(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fetchStart));
+        } finally {
+            buildTimings.record(key, Phase.nestedBuild, buildStart);
+            if (logFile != null) {
+                logTail(scmRepo, srcVersion, logFile, succeeded);
+            }
+        }
+        return partialArgs != null;
+    }
+
+    /**
+     * @param scmRepo
+     *            the {@link ScmRepository} to build from
+     * @param srcVersion
+     *            the {@link SrcVersion} to build
+     * @return a new empty log file for the nested build if {@link SrcdepsGradleOptions#OUTPUT} is
+     *         {@link Output#file} or {@code null} if the output should go to the console
+     */
+    private Path newLogFile(ScmRepository scmRepo, SrcVersion srcVersion) {
+        if (SrcdepsGradleOptions.getOutput() != Output.file) {
+            return null;
+        }
+        try {
+            return buildLogs.newLogFile(scmRepo, srcVersion);
+        } catch (IOException e) {
+            log.warn(String.format("srcdeps: Could not create a log file for %s %s; using the console",
+                    scmRepo.getId(), srcVersion), e);
+            return null;
+        }
+    }
+
+    /**
+     * @param uri
+     *            a {@link BuilderIo} URI as configured in {@code srcdeps.yaml}
+     * @param logFile
+     *            the log file of the nested build or {@code null}
+     * @return an {@code append:} URI of the given {@code logFile} if the given {@code uri} is {@code inherit}; the
+     *         given {@code uri} otherwise. Appending lets stdout and stderr share the file without overwriting each
+     *         other.
+     */
+    private static String redirectToLogFile(String uri, Path logFile) {
+        return logFile != null && "inherit".equals(uri) ? "append:" + logFile : uri;
+    }
+
+    /**
+     * Logs the last {@link SrcdepsGradleOptions#OUTPUT_TAIL} lines of the given {@code logFile} in a single message,
+     * so that they do not interleave with the output of other builds. Nothing but the location of the
+     * {@code logFile} is logged for a successful build unless the {@code info} level is enabled.
+     *
+     * @param scmRepo
+     *            the {@link ScmRepository} built from
+     * @param srcVersion
+     *            the {@link SrcVersion} built
+     * @param logFile
+     *            the log file of the nested build
+     * @param succeeded
+     *            {@code true} if the nested build succeeded
+     */
+    private static void logTail(ScmRepository scmRepo, SrcVersion srcVersion, Path logFile, boolean succeeded) {
+        if (succeeded && !log.isInfoEnabled()) {
+            log.debug("srcdeps: The output of the nested build of {} {} is in {}", scmRepo.getId(), srcVersion,
+                    logFile);
+            return;
+        }
+        final List<String> lines;
+        try {
+            lines = BuildLogs.tail(logFile, SrcdepsGradleOptions.getOutputTail());
+        } catch (IOException e) {
+            log.warn(String.format("srcdeps: Could not read %s", logFile), e);
+            return;
+        }
+        final StringBuilder message = new StringBuilder();
+        for (String line : lines) {
+            message.append('\n').append(line);
+        }
+        final String format = "srcdeps: The last {} lines of the output of the nested build of {} {} stored in {}:{}";
+        if (succeeded) {
+            log.info(format, lines.size(), scmRepo.getId(), srcVersion, logFile, message);
+        } else {
+            log.error(format, lines.size(), scmRepo.getId(), srcVersion, logFile, message);
+        }
+    }
+
+    /**
+     * Acquires the lock of a build directory for the given {@code scmRepo} and {@code srcVersion}. The lock is
+     * shared with other JVMs, so this may block until another process building the same revision is done. While
+     * waiting, the progress is reported every {@value #LOCK_PROGRESS_INTERVAL_MS} ms. Note that threads of the
+     * current JVM never wait here for one another, because they get joined by the {@link BuildRegistry} before.
+     *
+     * @param scmRepo
+     * @param srcVersion
+     * @return the acquired {@link PathLock}
+     * @throws IOException
+     */
+    private PathLock openBuildDirectory(final ScmRepository scmRepo, final SrcVersion srcVersion)
+            throws IOException {
+        final long start = System.currentTimeMillis();
+        final TimerTask progress = new TimerTask() {
+            @Override
+            public void run() {
+                log.info("srcdeps: Still waiting for another process to release the build directory of {} {} after {} s",
+                        scmRepo.getId(), srcVersion, (System.currentTimeMillis() - start) / 1000);
+            }
+        };
+        lockProgressTimer.schedule(progress, LOCK_PROGRESS_INTERVAL_MS, LOCK_PROGRESS_INTERVAL_MS);
+        try {
+            return buildDirectoriesManager.openBuildDirectory(scmRepo.getIdAsPath(), srcVersion);
+        } finally {
+            progress.cancel();
+            final long waited = System.currentTimeMillis() - start;
+            if (waited >= LOCK_PROGRESS_INTERVAL_MS) {
+                log.info("srcdeps: Acquired the build directory of {} {} after waiting {} s", scmRepo.getId(),
+                        srcVersion, waited / 1000);
+            }
+        }
+    }
+
+    /**
+     * @param scmRepo
+     *            the {@link ScmRepository} to build from
+     * @param srcVersion
+     *            the branch or tag {@link SrcVersion} to build
+     * @param lockedCommit
+     *            the commit the given {@code srcVersion} is locked to in the {@link SrcdepsLockfile} or {@code null}
+     *            if it is not locked
+     * @param commit
+     *            the commit the given {@code srcVersion} resolves to or was built from or {@code null} if not known
+     * @throws BuildException
+     *             if the given {@code commit} is not the locked one
+     */
+    static void checkLockedCommit(ScmRepository scmRepo, SrcVersion srcVersion, String lockedCommit,
+            String commit) throws BuildException {
+        if (lockedCommit != null && commit != null && !lockedCommit.equals(commit)) {
+            throw new BuildException(String.format(
+                    "srcdeps: %s %s is locked to commit %s in %s but it points to %s now; run %s to lock it again",
+                    scmRepo.getId(), srcVersion, lockedCommit, SrcdepsLockfile.FILE_NAME, commit,
+                    SrcdepsLockTask.NAME));
+        }
+    }
+
+    /**
+     * @param dependency
+     *            the {@link SourceDependency} to check
+     * @param artifactPath
+     *            the path of the main artifact of the given {@code dependency}
+     * @return {@code true} if the files locked in {@link SrcdepsLockfile} for the given {@code dependency} are
+     *         installed unchanged or, if the given {@code dependency} is not locked, if its main artifact exists;
+     *         {@code false} otherwise. The installed files are left in place either way; the build overwrites them.
+     */
+    private boolean isInstalled(SourceDependency dependency, Path artifactPath) {
+        switch (lockfile.check(dependency)) {
+        case valid:
+            return true;
+        case invalid:
+            return false;
+        default:
+            return Files.exists(artifactPath) && isCurrent(dependency, artifactPath, false);
+        }
+    }
+
+    /**
+     * @param dependency
+     *            the installed {@link SourceDependency} to check
+     * @param artifactPath
+     *            the path of the main artifact of the given {@code dependency}
+     * @param cachedOnly
+     *            if {@code true}, the last known resolution of the branch or tag is used, even if expired, so that
+     *            no remote repository is queried; see {@link RefResolutionCache#resolveCached(ScmRepository,
+     *            SrcVersion)}
+     * @return {@code false} if the given {@code dependency} is a branch or tag whose refs are tracked by the
+     *         {@link RefResolutionCache} and which resolves to another commit than the one the installed artifacts
+     *         were built from; {@code true} otherwise
+     */
+    private boolean isCurrent(SourceDependency dependency, Path artifactPath, boolean cachedOnly) {
+        final SrcVersion srcVersion = SrcVersion.parse(dependency.getVersion());
+        if (srcVersion.getWellKnownType() == WellKnownType.revision) {
+            return true;
+        }
+        final ScmRepository scmRepo = findScmRepository(dependency);
+        if (scmRepo == null) {
+            return true;
+        }
+        final String commit = cachedOnly ? refResolutionCache.resolveCached(scmRepo, srcVersion)
+                : refResolutionCache.resolve(scmRepo, srcVersion);
+        if (commit == null) {
+            /* not tracked or the remote is not reachable: use what we have */
+            return true;
+        }
+        final String installedCommit = RefResolutionCache.readInstalledCommit(artifactPath.getParent());
+        if (commit.equals(installedCommit)) {
+            return true;
+        }
+        log.info("srcdeps: {} was built from {} but {} {} points to {} now", dependency,
+                installedCommit == null ? "an unknown commit" : installedCommit, scmRepo.getId(), srcVersion, commit);
+        return false;
+    }
+
+    /**
+     * Records the commit a branch or tag was just built from in all version directories of the given
+     * {@code srcVersion} the build may have installed and that belong to the given {@code scmRepo}, so that
+     * {@link #isCurrent(SourceDependency, Path, boolean)} can compare it with the current state of the branch or tag
+     * and so that the {@link SrcdepsLockTask} can lock it.
+     *
+     * @param scmRepo
+     *            the {@link ScmRepository} that was built
+     * @param srcVersion
+     *            the {@link SrcVersion} that was built
+     * @param versionDirs
+     *            the version directories the build may have installed artifacts to, see
+     *            {@link #findOwnVersionDirectories(ArtifactCache, ScmRepository, String, Collection)}
+     * @param builtCommit
+     *            the commit checked out in the build directory or {@code null} if it could not be read
+     */
+    private void recordInstalledCommit(ScmRepository scmRepo, SrcVersion srcVersion, List<Path> versionDirs,
+            String builtCommit) {
+        if (srcVersion.getWellKnownType() == WellKnownType.revision) {
+            return;
+        }
+        final String commit = builtCommit != null ? builtCommit : gitMirrors.resolveCommit(scmRepo, srcVersion);
+        if (commit == null) {
+            log.warn("srcdeps: Could not find out which commit {} {} was built from", scmRepo.getId(), srcVersion);
+            return;
+        }
+        try {
+            for (Path versionDir : versionDirs) {
+                RefResolutionCache.writeInstalledCommit(versionDir, commit);
+            }
+            /* otherwise isCurrent() would compare with a resolution older than the build until it expires */
+            refResolutionCache.record(scmRepo, srcVersion, commit);
+        } catch (IOException e) {
+            log.warn("srcdeps: Could not record the commit {} of {} {}", commit, scmRepo.getId(), srcVersion, e);
+        }
+    }
+
+    /**
+     * @param dependency
+     *            an installed {@link SourceDependency}
+     * @return the commit the installed artifacts of the given {@code dependency} were built from or {@code null} if
+     *         it is not known
+     */
+    public String getInstalledCommit(SourceDependency dependency) {
+        final SrcVersion srcVersion = SrcVersion.parse(dependency.getVersion());
+        if (srcVersion.getWellKnownType() == WellKnownType.revision) {
+            return srcVersion.getScmVersion();
+        }
+        return RefResolutionCache.readInstalledCommit(resolveArtifact(dependency).getParent());
+    }
+
+    /**
+     * @param dependency
+     *            the {@link SourceDependency} to look up
+     * @return the first {@link ScmRepository} associated with the given {@code dependency} or {@code null} if there
+     *         is none
+     */
+    public ScmRepository findScmRepository(SourceDependency dependency) {
+        return configurationService.getScmRepositoryIndex().find(dependency.getGroupId(),
+                dependency.getArtifactId(), dependency.getVersion());
+    }
+
+    /**
+     * @param scmRepo
+     *            the {@link ScmRepository} to build
+     * @return the arguments that will be passed to the nested builds of the given {@code scmRepo}
+     */
+    public List<String> getBuildArguments(ScmRepository scmRepo) {
+        return enhanceBuildArguments(scmRepo.getBuildArguments(), configurationService.getConfigurationLocation(),
+                localRepository.getRootDirectory().toString());
+    }
+
+    /**
+     * Finds out what {@link #scheduleBuilds(Collection, int)} would do for the given {@code dependencies} without
+     * building, fetching or removing anything. The {@code dependencies} are checked against the Local Maven
+     * Repository, the {@link SrcdepsLockfile} and the last known resolutions in the {@link RefResolutionCache}, even
+     * if expired, so that no remote repository is queried, and those that are not installed are grouped by
+     * {@link BuildKey}. The groups found in the {@link ArtifactCache} would just be restored. The
+     * transitive source dependencies can only be found in the revisions mirrored by the {@link GitMirrors} so far.
+     * Each build gets the duration estimated by the {@link BuildHistory}.
+     *
+     * @param dependencies
+     *            the {@link SourceDependency}s to plan
+     * @return a JSON friendly plan: the {@code builds}, each having a {@code repository}, {@code version},
+     *         {@code artifacts}, {@code action} ({@code build} or {@code restore}), {@code reason}, {@code requiredBy}
+     *         ({@code null} unless transitive) and {@code estimatedMillis} ({@code null} if unknown); the sum of the
+     *         known {@code estimatedMillis}; the {@code installed} dependencies and the {@code unmapped} ones for
+     *         which there is no {@link ScmRepository}
+     */
+    public Map<String, Object> plan(Collection<SourceDependency> dependencies) {
+        final Map<BuildKey, Map<String, Object>> builds = new LinkedHashMap<>();
+        final Map<BuildKey, ScmRepository> repositories = new LinkedHashMap<>();
+        final Set<String> installed = new TreeSet<>();
+        final Set<String> unmapped = new TreeSet<>();
+        if (!configurationService.getConfiguration().isSkip()) {
+            for (SourceDependency dep : dependencies) {
+                final String reason = getBuildReason(dep);
+                final ScmRepository scmRepo = reason == null ? null : findScmRepository(dep);
+                if (reason == null) {
+                    installed.add(dep.toString());
+                } else if (scmRepo == null) {
+                    unmapped.add(dep.toString());
+                } else {
+                    addToPlan(builds, repositories, scmRepo, dep, reason, null);
+                }
+            }
+        }
+        /* the list grows while the transitive source dependencies are being found */
+        final List<BuildKey> keys = new ArrayList<>(builds.keySet());
+        for (int i = 0; i < keys.size(); i++) {
+            final BuildKey key = keys.get(i);
+            final ModuleIndex modules = gitMirrors.indexModules(repositories.get(key), key.getSrcVersion());
+            if (modules == null) {
+                continue;
+            }
+            ScmRepositoryIndex nestedIndex = null;
+            try {
+                nestedIndex = modules.getSrcdepsYaml() == null ? null
+                        : ConfigurationService.readScmRepositoryIndex(modules.getSrcdepsYaml());
+            } catch (IOException | ConfigurationException e) {
+                log.debug("srcdeps: Could not read the srcdeps.yaml of {}", key, e);
+            }
+            for (SourceDependency dep : modules.getSourceDependencies()) {
+                final String reason = getBuildReason(dep);
+                ScmRepository depRepo = reason == null || nestedIndex == null ? null
+                        : nestedIndex.find(dep.getGroupId(), dep.getArtifactId(), dep.getVersion());
+                if (reason != null && depRepo == null) {
+                    depRepo = findScmRepository(dep);
+                }
+                if (depRepo == null || new BuildKey(depRepo.getId(), SrcVersion.parse(dep.getVersion())).equals(key)) {
+                    /* installed, left to the nested build or a dependency between the modules of the same tree */
+                    continue;
+                }
+                final BuildKey depKey = addToPlan(builds, repositories, depRepo, dep, reason, key);
+                if (!keys.contains(depKey)) {
+                    keys.add(depKey);
+                }
+            }
+        }
+
+        final List<Map<String, Object>> entries = new ArrayList<>(builds.size());
+        long estimatedMillis = 0;
+        for (Map.Entry<BuildKey, Map<String, Object>> build : builds.entrySet()) {
+            final ScmRepository scmRepo = repositories.get(build.getKey());
+            final String cacheKey = cacheKey(scmRepo, build.getKey().getSrcVersion());
+            final Map<String, Object> entry = build.getValue();
+            if (cacheKey != null && artifactCache.contains(cacheKey)) {
+                entry.put("action", "restore");
+                entry.put("estimatedMillis", null);
+            } else {
+                final Long estimate = buildHistory.estimate(scmRepo.getId());
+                entry.put("action", "build");
+                entry.put("estimatedMillis", estimate);
+                estimatedMillis += estimate == null ? 0 : estimate;
+            }
+            entries.add(entry);
+        }
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("builds", entries);
+        result.put("estimatedMillis", estimatedMillis);
+        result.put("installed", new ArrayList<>(installed));
+        result.put("unmapped", new ArrayList<>(unmapped));
+        return result;
+    }
+
+    /**
+     * @param builds
+     *            the plan entries by {@link BuildKey} to add to
+     * @param repositories
+     *            the {@link ScmRepository}s of the {@link BuildKey}s in {@code builds}
+     * @param scmRepo
+     *            the {@link ScmRepository} of the given {@code dependency}
+     * @param dependency
+     *            the {@link SourceDependency} to add
+     * @param reason
+     *            why the given {@code dependency} needs to be built
+     * @param requiredBy
+     *            the {@link BuildKey} whose source tree declares the given {@code dependency} or {@code null} if it
+     *            is declared in the outer build
+     * @return the {@link BuildKey} of the given {@code dependency}
+     */
+    private static BuildKey addToPlan(Map<BuildKey, Map<String, Object>> builds,
+            Map<BuildKey, ScmRepository> repositories, ScmRepository scmRepo, SourceDependency dependency,
+            String reason, BuildKey requiredBy) {
+        final SrcVersion srcVersion = SrcVersion.parse(dependency.getVersion());
+        final BuildKey key = new BuildKey(scmRepo.getId(), srcVersion);
+        Map<String, Object> entry = builds.get(key);
+        if (entry == null) {
+            entry = new LinkedHashMap<>();
+            entry.put("repository", scmRepo.getId());
+            entry.put("version", srcVersion.toString());
+            entry.put("artifacts", new ArrayList<String>());
+            entry.put("reason", reason);
+            entry.put("requiredBy", requiredBy == null ? null : requiredBy.toString());
+            builds.put(key, entry);
+            repositories.put(key, scmRepo);
+        }
+        @SuppressWarnings("unchecked")
+        final List<String> artifacts = (List<String>) entry.get("artifacts");
+        final String artifact = dependency.getGroupId() + ":" + dependency.getArtifactId();
+        if (!artifacts.contains(artifact)) {
+            artifacts.add(artifact);
+        }
+        return key;
+    }
+
+    /**
+     * Checks whether the given {@code dependency} is installed like {@link #isInstalled(SourceDependency, Path)}
+     * does, but compares branches and tags with their cached resolutions only.
+     *
+     * @param dependency
+     *            the {@link SourceDependency} to check
+     * @return why the given {@code dependency} needs to be built or {@code null} if it is installed
+     */
+    private String getBuildReason(SourceDependency dependency) {
+        if (satisfiedDependencies.contains(dependency)) {
+            return null;
+        }
+        switch (lockfile.check(dependency)) {
+        case valid:
+            return null;
+        case invalid:
+            return "the installed artifacts differ from " + SrcdepsLockfile.FILE_NAME;
+        default:
+            final Path artifactPath = resolveArtifact(dependency);
+            if (!Files.exists(artifactPath)) {
+                return "not installed";
+            }
+            return isCurrent(dependency, artifactPath, true) ? null : "the installed artifacts are outdated";
+        }
+    }
+
+    /**
+     * @param scmRepo
+     *            the repository the given {@code srcVersion} comes from
+     * @param srcVersion
+     *            the version to resolve
+     * @return the commit the given {@code srcVersion} currently points to or {@code null} if not known, see
+     *         {@link RefResolutionCache#resolve(ScmRepository, SrcVersion)}
+     */
+    public String resolveCommit(ScmRepository scmRepo, SrcVersion srcVersion) {
+        return refResolutionCache.resolve(scmRepo, srcVersion);
+    }
+
+    /**
+     * @param dependency
+     *            the {@link SourceDependency} to resolve
+     * @return the path to the main artifact of the given {@code dependency} in the Local Maven Repository
+     */
+    public Path resolveArtifact(SourceDependency dependency) {
+        return localRepository.resolve(
+                new Gavtc(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion(), "jar"));
+    }
+
+    /**
+     * Groups the given {@code dependencies} by {@link BuildKey} and builds the distinct groups in parallel on at most
+     * {@code maxWorkers} threads. The source dependencies of the groups, found in the build files of their source
+     * trees, are added to a {@link BuildPlan}, so that the transitive source dependencies are built before the
+     * groups depending on them, as many at once as the plan allows, instead of one by one by the nested builds. This
+     * method returns immediately; {@link #buildIfNecessary(String, String, String)} joins the scheduled build of its
+     * artifact through the {@link BuildRegistry}.
+     *
+     * @param dependencies
+     *            the {@link SourceDependency}s to build
+     * @param maxWorkers
+     *            the upper bound of concurrently running nested builds, typically Gradle's {@code --max-workers}
+     */
+    public void scheduleBuilds(Collection<SourceDependency> dependencies, int maxWorkers) {
+        final Configuration configuration = configurationService.getConfiguration();
+        if (configuration.isSkip()) {
+            return;
+        }
+
+        final Map<BuildKey, Callable<Void>> builds = new LinkedHashMap<>();
+        final Map<BuildKey, ScmRepository> repositories = new ConcurrentHashMap<>();
+        for (SourceDependency dep : dependencies) {
+            final Path artifactPath = resolveArtifact(dep);
+            if (isInstalled(dep, artifactPath)) {
+                continue;
+            }
+            final ScmRepository scmRepo;
+            final long lookupStart = System.nanoTime();
+            try {
+                scmRepo = findScmRepo(configurationService.getScmRepositoryIndex(), dep.getGroupId(),
+                        dep.getArtifactId(), dep.getVersion());
+            } catch (IllegalStateException e) {
+                /* Leave it to buildIfNecessary() to report in case the artifact gets really resolved */
+                log.debug("srcdeps: Not scheduling a build of {}: {}", dep, e.getMessage());
+                continue;
+            }
+            final SrcVersion srcVersion = SrcVersion.parse(dep.getVersion());
+            final BuildKey key = new BuildKey(scmRepo.getId(), srcVersion);
+            buildTimings.record(key, Phase.repositoryLookup, lookupStart);
+            requestArtifact(key, dep);
+            if (!builds.containsKey(key) && buildRegistry.get(key) == null) {
+                repositories.put(key, scmRepo);
+                builds.put(key, newBuild(scmRepo, srcVersion, dep, artifactPath, true));
+            }
+        }
+        if (builds.isEmpty()) {
+            return;
+        }
+
+        nestedBuildSlots.setMaxWorkers(maxWorkers);
+        final int slots = nestedBuildSlots.getLimit();
+        final ExecutorService executor;
+        synchronized (this) {
+            if (scheduledBuildsExecutor == null) {
+                scheduledBuildsExecutor = Executors.newFixedThreadPool(slots, threadFactory);
+            }
+            executor = scheduledBuildsExecutor;
+        }
+        log.info("srcdeps: Scheduling {} source dependency build(s) on up to {} worker(s)", builds.size(), slots);
+        final BuildPlan plan = new BuildPlan(buildRegistry, executor, new BuildPlan.Explorer() {
+            @Override
+            public Map<BuildKey, Callable<Void>> explore(BuildKey key) throws Exception {
+                return findSourceDependencyBuilds(key, repositories);
+            }
+        });
+        for (Map.Entry<BuildKey, Callable<Void>> build : builds.entrySet()) {
+            plan.add(build.getKey(), build.getValue());
+        }
+        synchronized (this) {
+            buildPlans.add(plan);
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                plan.explore();
+                log.debug("srcdeps: Planned {} source dependency build(s)", plan.size());
+            }
+        });
+    }
+
+    /**
+     * @param key
+     *            the {@link BuildKey} whose source tree should be searched through
+     * @param repositories
+     *            the {@link ScmRepository}s of the {@link BuildKey}s known so far; the {@link ScmRepository}s of the
+     *            returned {@link BuildKey}s are added to it
+     * @return the builds of the source dependencies declared in the build files of the source tree of the given
+     *         {@code key} and not installed yet, by {@link BuildKey}
+     * @throws IOException
+     * @throws ConfigurationException
+     */
+    private Map<BuildKey, Callable<Void>> findSourceDependencyBuilds(BuildKey key,
+            Map<BuildKey, ScmRepository> repositories) throws IOException, ConfigurationException {
+        final ScmRepository scmRepo = repositories.get(key);
+        final SrcVersion srcVersion = key.getSrcVersion();
+        final long fetchStart = System.nanoTime();
+        final boolean mirrored = gitMirrors.mirror(scmRepo, srcVersion);
+        buildTimings.record(key, Phase.scmFetch, fetchStart);
+        final ModuleIndex modules = mirrored ? gitMirrors.indexModules(scmRepo, srcVersion) : null;
+        if (modules == null) {
+            return Collections.emptyMap();
+        }
+        /* the nested build would look the repositories up in its own srcdeps.yaml */
+        final ScmRepositoryIndex nestedIndex = modules.getSrcdepsYaml() == null ? null
+                : ConfigurationService.readScmRepositoryIndex(modules.getSrcdepsYaml());
+        final Map<BuildKey, Callable<Void>> result = new LinkedHashMap<>();
+        for (SourceDependency dep : modules.getSourceDependencies()) {
+            final Path artifactPath = resolveArtifact(dep);
+            if (isInstalled(dep, artifactPath)) {
+                continue;
+            }
+            ScmRepository depRepo = nestedIndex == null ? null
+                    : nestedIndex.find(dep.getGroupId(), dep.getArtifactId(), dep.getVersion());
+            if (depRepo == null) {
+                depRepo = findScmRepository(dep);
+            }
+            if (depRepo == null) {
+                log.debug("srcdeps: Leaving {} required by {} to the nested build", dep, key);
+                continue;
+            }
+            final SrcVersion depVersion = SrcVersion.parse(dep.getVersion());
+            final BuildKey depKey = new BuildKey(depRepo.getId(), depVersion);
+            if (depKey.equals(key)) {
+                /* a dependency between the modules of the same tree */
+                continue;
+            }
+            requestArtifact(depKey, dep);
+            if (!result.containsKey(depKey)) {
+                repositories.put(depKey, depRepo);
+                result.put(depKey, newBuild(depRepo, depVersion, dep, artifactPath, true));
             }
         }
+        return result;
     }
 }
@@ -1,8 +1,13 @@
 package org.srcdeps.gradle.plugin;
 
+import java.lang.ref.WeakReference;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
 
+import org.eclipse.sisu.space.BeanScanning;
 import org.eclipse.sisu.space.SpaceModule;
 import org.eclipse.sisu.space.URLClassSpace;
 import org.eclipse.sisu.wire.WireModule;
@@ -27,22 +32,67 @@ import com.google.inject.name.Names;
 
 /**
  * A manual Wiring for the Gradle environment.
+ * <p>
+ * There is just one {@link Injector} per {@link Gradle} invocation, shared by all projects of the given build. It is
+ * created lazily, typically when the first source dependency is found. In a Gradle daemon, the {@link Injector} and
+ * thus the state of its singletons is reused by the next build as long as the inputs of the wiring stay the same:
+ * the paths, the {@link ConfigurationService.Fingerprint}s of {@code srcdeps.yaml} and of the {@link SrcdepsLockfile}
+ * and the {@code srcdeps.*} system properties, which the singletons may have read when they were created. If any of
+ * them changes, a new {@link Injector} is created.
+ * <p>
+ * By default, the components are found through the Sisu index ({@code META-INF/sisu/javax.inject.Named}) and not
+ * by scanning all jars on the plugin's class path, so that the initialization time does not depend on the size of
+ * the class path. The scanning can be enabled through {@link SrcdepsGradleOptions#WIRING}.
  *
  * @author <a href="https://github.com/ppalaga">Peter Palaga</a>
  */
 public class Wiring {
+    /** The name of the {@link Path} binding of the directory where srcdeps stores the checkouts and other data */
+    public static final String SRCDEPS_DIRECTORY = "SRCDEPS_DIRECTORY";
+
     private static Injector injector;
 
-    public static Injector getInjector() {
+    /** The inputs the {@link #injector} was created from, see {@link #getInputs(Path, MavenLocalRepository)} */
+    private static List<Object> injectorInputs;
+
+    /** The {@link Gradle} invocation for which the {@link #injector} was created */
+    private static WeakReference<Gradle> injectorGradle;
+
+    /**
+     * @param gradle
+     *            the current {@link Gradle} invocation
+     * @return the {@link Injector} created for the given {@link Gradle} invocation or {@code null} if the wiring has
+     *         not been performed for it
+     */
+    public static synchronized Injector findInjector(Gradle gradle) {
+        return isInitialized(gradle) ? injector : null;
+    }
+
+    public static synchronized Injector getInjector() {
         return injector;
     }
 
     /**
-     * Performs the wiring for the given Gradle {@link Project}.
+     * @param project
+     *            the {@link Project} asking for the {@link Injector}
+     * @return the {@link Injector} for the build of the given {@link Project}, performing the wiring if it has not
+     *         been performed for the given build yet
+     */
+    public static synchronized Injector getInjector(Project project) {
+        init(project);
+        return injector;
+    }
+
+    /**
+     * Performs the wiring for the given Gradle {@link Project} unless it was performed for the build of the given
+     * {@link Project} already.
      *
      * @param project
      */
-    public static void init(final Project project) {
+    public static synchronized void init(final Project project) {
+        if (isInitialized(project.getGradle())) {
+            return;
+        }
 
         final Path srcdepsYamlPath = project.getRootDir().toPath().resolve("srcdeps.yaml");
 
@@ -67,11 +117,51 @@ public class Wiring {
         final MavenLocalRepository localRepository = new MavenLocalRepository(Paths.get(((MavenArtifactRepository) repo).getUrl()));
 
         final Path scrdepsDir = localRepository.getRootDirectory().getParent().resolve("srcdeps");
+
+        final List<Object> inputs = getInputs(srcdepsYamlPath, localRepository);
+        if (injector == null || !inputs.equals(injectorInputs)) {
+            injector = createInjector(srcdepsYamlPath, localRepository, scrdepsDir, SrcdepsGradleOptions.getWiring());
+            injectorInputs = inputs;
+        }
+        injectorGradle = new WeakReference<>(gradle);
+    }
+
+    /**
+     * @param srcdepsYamlPath
+     *            the path to {@code srcdeps.yaml}
+     * @param localRepository
+     *            the Local Maven Repository
+     * @return the values that would make a difference if the wiring was performed anew
+     */
+    static List<Object> getInputs(Path srcdepsYamlPath, MavenLocalRepository localRepository) {
+        final Path lockfilePath = srcdepsYamlPath.resolveSibling(SrcdepsLockfile.FILE_NAME);
+        return Arrays.<Object> asList(srcdepsYamlPath, localRepository.getRootDirectory(),
+                SrcdepsGradleOptions.getWiring(),
+                ConfigurationService.Fingerprint.of(srcdepsYamlPath, System.getProperties()),
+                ConfigurationService.Fingerprint.of(lockfilePath, new Properties()));
+    }
+
+    /**
+     * Creates a new {@link Injector}.
+     *
+     * @param srcdepsYamlPath
+     *            the path to {@code srcdeps.yaml}
+     * @param localRepository
+     *            the Local Maven Repository
+     * @param scrdepsDir
+     *            the directory where srcdeps should store the checkouts and other data
+     * @param scanning
+     *            the way how the components should be found, typically either {@link BeanScanning#INDEX} or
+     *            {@link BeanScanning#ON}
+     * @return a new {@link Injector}
+     */
+    static Injector createInjector(final Path srcdepsYamlPath, final MavenLocalRepository localRepository,
+            final Path scrdepsDir, BeanScanning scanning) {
         final PathLocker<SrcVersion> pathLocker = new PathLocker<>();
         final BuildDirectoriesManager buildDirectoriesManager = new BuildDirectoriesManager(scrdepsDir, pathLocker);
 
         ClassLoader classloader = Wiring.class.getClassLoader();
-        final Module spaceModule = new SpaceModule(new URLClassSpace(classloader));
+        final Module spaceModule = new SpaceModule(new URLClassSpace(classloader), scanning);
         Module wrappedWiremodule = new Module() {
             @Override
             public void configure(Binder binder) {
@@ -80,6 +170,7 @@ public class Wiring {
 
                 binder.bind(Path.class).annotatedWith(Names.named(ConfigurationService.SRCDEPS_YAML_PATH))
                         .toInstance(srcdepsYamlPath);
+                binder.bind(Path.class).annotatedWith(Names.named(SRCDEPS_DIRECTORY)).toInstance(scrdepsDir);
                 binder.bind(MavenLocalRepository.class).toInstance(localRepository);
                 binder.bind(new TypeLiteral<PathLocker<SrcVersion>>() {
                 }).toInstance(pathLocker);
@@ -87,6 +178,10 @@ public class Wiring {
             }
         };
         final Module wireModule = new WireModule(wrappedWiremodule);
-        injector = Guice.createInjector(wireModule);
+        return Guice.createInjector(wireModule);
+    }
+
+    private static boolean isInitialized(Gradle gradle) {
+        return injector != null && injectorGradle != null && injectorGradle.get() == gradle;
     }
 }
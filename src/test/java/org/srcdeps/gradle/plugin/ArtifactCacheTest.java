@@ -0,0 +1,85 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class ArtifactCacheTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+    private static final String VERSION = "1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567";
+
+    private ArtifactCache cache;
+    private Path localRepoDir;
+
+    private Path artifact(String groupPath, String artifactId, String version, String extension) {
+        return localRepoDir.resolve(groupPath).resolve(artifactId).resolve(version)
+                .resolve(artifactId + "-" + version + "." + extension);
+    }
+
+    @Before
+    public void before() throws IOException {
+        final Path testDir = projectBuilDir.resolve("test-artifact-cache");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+        localRepoDir = testDir.resolve("repository");
+        SrcdepsCoreUtils.ensureDirectoryExists(localRepoDir);
+        cache = new ArtifactCache(new MavenLocalRepository(localRepoDir), testDir.resolve("cache"));
+    }
+
+    @Test
+    public void keyDependsOnAllInputs() {
+        final String key = ArtifactCache.newKeyBuilder().input("a", "1").input("b", Arrays.asList("x", "y")).build();
+        Assert.assertEquals(key,
+                ArtifactCache.newKeyBuilder().input("a", "1").input("b", Arrays.asList("x", "y")).build());
+        Assert.assertNotEquals(key,
+                ArtifactCache.newKeyBuilder().input("a", "1").input("b", Arrays.asList("x", "z")).build());
+        Assert.assertNotEquals(key, ArtifactCache.newKeyBuilder().input("a", "1").build());
+    }
+
+    @Test
+    public void storeAndRestore() throws IOException {
+        final String key = ArtifactCache.newKeyBuilder().input("version", VERSION).build();
+        Assert.assertFalse(cache.contains(key));
+        Assert.assertFalse(cache.restore(key));
+
+        final Path[] artifacts = new Path[] { //
+                artifact("org/example", "api", VERSION, "jar"), //
+                artifact("org/example", "api", VERSION, "pom"), //
+                artifact("org/example/impl", "impl", VERSION, "jar") //
+        };
+        for (Path artifact : artifacts) {
+            Files.createDirectories(artifact.getParent());
+            Files.write(artifact, artifact.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        final Path otherVersion = artifact("org/example", "api", "1.0", "jar");
+        Files.createDirectories(otherVersion.getParent());
+        Files.write(otherVersion, new byte[] { 1 });
+        /* a nested groupId not asked for */
+        final Path otherGroup = artifact("org/example/other", "other", VERSION, "jar");
+        Files.createDirectories(otherGroup.getParent());
+        Files.write(otherGroup, new byte[] { 1 });
+
+        cache.store(key, VERSION, Arrays.asList("org.example", "org.example.impl"));
+        Assert.assertTrue(cache.contains(key));
+
+        SrcdepsCoreUtils.deleteDirectory(localRepoDir);
+        Assert.assertTrue(cache.restore(key));
+        for (Path artifact : artifacts) {
+            Assert.assertEquals(artifact.getFileName().toString(),
+                    new String(Files.readAllBytes(artifact), StandardCharsets.UTF_8));
+        }
+        Assert.assertFalse(Files.exists(otherVersion));
+        Assert.assertFalse(Files.exists(otherGroup));
+    }
+
+}
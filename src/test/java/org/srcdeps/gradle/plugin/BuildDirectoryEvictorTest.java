@@ -0,0 +1,205 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class BuildDirectoryEvictorTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+
+    private Path srcdepsDir;
+
+    /**
+     * Creates a build directory of the given {@code size} and records an access to it {@code daysAgo}.
+     */
+    private Path buildDir(BuildDirectoryEvictor evictor, String repo, int index, int size, int daysAgo)
+            throws IOException {
+        final Path dir = srcdepsDir.resolve(repo).resolve(String.valueOf(index));
+        SrcdepsCoreUtils.ensureDirectoryExists(dir);
+        Files.write(dir.resolve("data.bin"), new byte[size]);
+        evictor.access(dir).close();
+        Files.setLastModifiedTime(dir.resolveSibling(index + BuildDirectoryEvictor.MARKER_SUFFIX),
+                FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(daysAgo)));
+        return dir;
+    }
+
+    private static void setDaysAgo(Path path, int daysAgo) throws IOException {
+        Files.setLastModifiedTime(path,
+                FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(daysAgo)));
+    }
+
+    @Before
+    public void before() throws IOException {
+        srcdepsDir = projectBuilDir.resolve("test-build-directory-evictor").resolve("srcdeps");
+        SrcdepsCoreUtils.deleteDirectory(srcdepsDir.getParent());
+    }
+
+    @Test
+    public void evictByAge() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(0, TimeUnit.DAYS.toMillis(10), 0));
+        final Path fresh = buildDir(evictor, "repo1", 0, 10, 1);
+        final Path stale = buildDir(evictor, "repo1", 1, 10, 20);
+        evictor.evict();
+        Assert.assertTrue(Files.exists(fresh));
+        Assert.assertFalse(Files.exists(stale));
+    }
+
+    @Test
+    public void evictByRevisionsPerRepository() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(0, 0, 2));
+        final Path r1Newest = buildDir(evictor, "repo1", 0, 10, 1);
+        final Path r1Middle = buildDir(evictor, "repo1", 1, 10, 2);
+        final Path r1Oldest = buildDir(evictor, "repo1", 2, 10, 3);
+        final Path r2Oldest = buildDir(evictor, "repo2", 0, 10, 30);
+        evictor.evict();
+        Assert.assertTrue(Files.exists(r1Newest));
+        Assert.assertTrue(Files.exists(r1Middle));
+        Assert.assertFalse(Files.exists(r1Oldest));
+        Assert.assertTrue(Files.exists(r2Oldest));
+    }
+
+    @Test
+    public void evictBySizeLeastRecentlyUsedFirst() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(250, 0, 0));
+        final Path newest = buildDir(evictor, "repo1", 0, 100, 1);
+        final Path middle = buildDir(evictor, "repo2", 0, 100, 2);
+        final Path oldest = buildDir(evictor, "repo3", 0, 100, 3);
+        Assert.assertEquals(100L, evictor.evict());
+        Assert.assertTrue(Files.exists(newest));
+        Assert.assertTrue(Files.exists(middle));
+        Assert.assertFalse(Files.exists(oldest));
+    }
+
+    @Test
+    public void neverEvictInUse() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(0, TimeUnit.DAYS.toMillis(10), 0));
+        final Path stale = buildDir(evictor, "repo1", 0, 10, 20);
+        try (Closeable access = evictor.access(stale)) {
+            Files.setLastModifiedTime(stale.resolveSibling("0" + BuildDirectoryEvictor.MARKER_SUFFIX),
+                    FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(20)));
+            evictor.evict();
+            Assert.assertTrue(Files.exists(stale));
+        }
+        evictor.evict();
+        Assert.assertFalse(Files.exists(stale));
+    }
+
+    @Test
+    public void neverEvictPathLocked() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(0, TimeUnit.DAYS.toMillis(10), 0));
+        final Path stale = buildDir(evictor, "repo1", 0, 10, 20);
+        /* as held by the PathLock of srcdeps-core, e.g. in a srcdeps-maven build not touching the marker */
+        final Path pathLockFile = stale.resolveSibling("0" + BuildDirectoryEvictor.PATH_LOCK_SUFFIX);
+        try (FileChannel channel = FileChannel.open(pathLockFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+            evictor.evict();
+            Assert.assertTrue(Files.exists(stale));
+        }
+        evictor.evict();
+        Assert.assertFalse(Files.exists(stale));
+    }
+
+    @Test
+    public void evictLogs() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(0, TimeUnit.DAYS.toMillis(10), 0));
+        final Path logs = srcdepsDir.resolve("logs/org/example/repo1");
+        SrcdepsCoreUtils.ensureDirectoryExists(logs);
+        final Path fresh = Files.write(logs.resolve("1.0-SRC-revision-1.log"), new byte[10]);
+        final Path stale = Files.write(logs.resolve("1.0-SRC-revision-2.log"), new byte[10]);
+        setDaysAgo(fresh, 1);
+        setDaysAgo(stale, 20);
+        evictor.evict();
+        Assert.assertTrue(Files.exists(fresh));
+        Assert.assertFalse(Files.exists(stale));
+    }
+
+    @Test
+    public void evictMirrorsNotUsedByBuildDirectories() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(0, TimeUnit.DAYS.toMillis(10), 0));
+        final Path mirrors = srcdepsDir.resolve("mirrors");
+        final Path used = mirrors.resolve("used.git");
+        final Path unused = mirrors.resolve("unused.git");
+        SrcdepsCoreUtils.ensureDirectoryExists(used.resolve("objects"));
+        SrcdepsCoreUtils.ensureDirectoryExists(unused.resolve("objects"));
+        setDaysAgo(Files.write(mirrors.resolve("used.git.lock"), new byte[0]), 20);
+        setDaysAgo(Files.write(mirrors.resolve("unused.git.lock"), new byte[0]), 20);
+
+        final Path dir = buildDir(evictor, "repo1", 0, 10, 1);
+        final Path alternates = dir.resolve(".git/objects/info/alternates");
+        SrcdepsCoreUtils.ensureDirectoryExists(alternates.getParent());
+        Files.write(alternates, Collections.singletonList(used.resolve("objects").toAbsolutePath().toString()),
+                StandardCharsets.UTF_8);
+
+        evictor.evict();
+        Assert.assertTrue(Files.exists(dir));
+        Assert.assertTrue(Files.exists(used));
+        Assert.assertFalse(Files.exists(unused));
+    }
+
+    @Test
+    public void evictUnmarkedByModificationTime() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(0, TimeUnit.DAYS.toMillis(10), 0));
+        final Path fresh = srcdepsDir.resolve("repo1/0");
+        final Path stale = srcdepsDir.resolve("repo1/1");
+        for (Path dir : Arrays.asList(fresh, stale)) {
+            /* as left behind by a build not recording any access */
+            SrcdepsCoreUtils.ensureDirectoryExists(dir.resolve("nested/dir"));
+            Files.write(dir.resolveSibling(dir.getFileName() + BuildDirectoryEvictor.PATH_LOCK_SUFFIX), new byte[0]);
+        }
+        setDaysAgo(fresh, 1);
+        setDaysAgo(stale, 20);
+        evictor.evict();
+        Assert.assertTrue(Files.exists(fresh));
+        Assert.assertFalse(Files.exists(stale));
+    }
+
+    @Test
+    public void storeSize() throws IOException {
+        final BuildDirectoryEvictor evictor = new BuildDirectoryEvictor(srcdepsDir,
+                new BuildDirectoryEvictor.Limits(1000, 0, 0));
+        final Path dir = buildDir(evictor, "repo1", 0, 100, 1);
+        final Path marker = dir.resolveSibling("0" + BuildDirectoryEvictor.MARKER_SUFFIX);
+        Assert.assertEquals("100", new String(Files.readAllBytes(marker), StandardCharsets.US_ASCII));
+
+        /* the stored size is used rather than walking the build directory */
+        Files.write(dir.resolve("data.bin"), new byte[2000]);
+        evictor.evict();
+        Assert.assertTrue(Files.exists(dir));
+
+        /* the size is stored also for the build directories having no marker yet */
+        final Path unmarked = srcdepsDir.resolve("repo2/0");
+        SrcdepsCoreUtils.ensureDirectoryExists(unmarked);
+        Files.write(unmarked.resolve("data.bin"), new byte[50]);
+        Files.write(unmarked.resolveSibling("0" + BuildDirectoryEvictor.PATH_LOCK_SUFFIX), new byte[0]);
+        setDaysAgo(unmarked, 5);
+        evictor.evict();
+        final Path unmarkedMarker = unmarked.resolveSibling("0" + BuildDirectoryEvictor.MARKER_SUFFIX);
+        Assert.assertEquals("50", new String(Files.readAllBytes(unmarkedMarker), StandardCharsets.US_ASCII));
+        Assert.assertEquals(Files.getLastModifiedTime(unmarked), Files.getLastModifiedTime(unmarkedMarker));
+    }
+}
@@ -0,0 +1,75 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class BuildHistoryTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+
+    private Path srcdepsDir;
+
+    @Before
+    public void before() throws IOException {
+        srcdepsDir = projectBuilDir.resolve("test-build-history");
+        SrcdepsCoreUtils.deleteDirectory(srcdepsDir);
+        SrcdepsCoreUtils.ensureDirectoryExists(srcdepsDir);
+    }
+
+    @Test
+    public void estimate() {
+        final BuildHistory history = new BuildHistory(srcdepsDir);
+        Assert.assertNull(history.estimate("org.example"));
+        history.record("org.example", 1000);
+        history.record("org.example", 2000);
+        Assert.assertEquals(Long.valueOf(1500), history.estimate("org.example"));
+        Assert.assertNull(history.estimate("org.other"));
+
+        /* only the last samples count */
+        for (int i = 0; i < BuildHistory.MAX_SAMPLES; i++) {
+            history.record("org.example", 4000);
+        }
+        Assert.assertEquals(Long.valueOf(4000), history.estimate("org.example"));
+    }
+
+    @Test
+    public void save() throws IOException {
+        final BuildHistory history = new BuildHistory(srcdepsDir);
+        history.record("org.example", 1000);
+        history.save();
+
+        /* another process */
+        final BuildHistory other = new BuildHistory(srcdepsDir);
+        Assert.assertEquals(Long.valueOf(1000), other.estimate("org.example"));
+        other.record("org.example", 3000);
+        other.record("org.other", 500);
+        other.save();
+
+        history.record("org.example", 2000);
+        history.save();
+        Assert.assertEquals(Arrays.asList(1000L, 3000L, 2000L),
+                BuildHistory.read(srcdepsDir.resolve(BuildHistory.FILE_NAME)).get("org.example"));
+        Assert.assertEquals(Long.valueOf(2000), new BuildHistory(srcdepsDir).estimate("org.example"));
+        Assert.assertEquals(Long.valueOf(500), new BuildHistory(srcdepsDir).estimate("org.other"));
+    }
+
+    @Test
+    public void unreadable() throws IOException {
+        Files.write(srcdepsDir.resolve(BuildHistory.FILE_NAME), "org.example=x\n".getBytes(StandardCharsets.UTF_8));
+        final BuildHistory history = new BuildHistory(srcdepsDir);
+        Assert.assertNull(history.estimate("org.example"));
+        history.record("org.example", 1000);
+        history.save();
+        Assert.assertEquals(Long.valueOf(1000), new BuildHistory(srcdepsDir).estimate("org.example"));
+    }
+}
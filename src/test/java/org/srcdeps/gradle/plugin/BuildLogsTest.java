@@ -0,0 +1,61 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class BuildLogsTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+
+    private Path testDir;
+
+    @Before
+    public void before() throws IOException {
+        testDir = projectBuilDir.resolve("test-build-logs");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+        SrcdepsCoreUtils.ensureDirectoryExists(testDir);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        final Path file = testDir.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void tailOfLargeFile() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            lines.add("line " + i);
+        }
+        final Path file = testDir.resolve("large.log");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        Assert.assertEquals(Arrays.asList("line 19997", "line 19998", "line 19999"), BuildLogs.tail(file, 3));
+        /* spans several blocks */
+        Assert.assertEquals(lines.subList(19000, 20000), BuildLogs.tail(file, 1000));
+        Assert.assertEquals(lines, BuildLogs.tail(file, 30000));
+        Assert.assertEquals(Collections.<String> emptyList(), BuildLogs.tail(file, 0));
+    }
+
+    @Test
+    public void tailOfSmallFile() throws IOException {
+        Assert.assertEquals(Arrays.asList("a", "", "c"), BuildLogs.tail(write("unterminated.log", "a\n\nc"), 5));
+        Assert.assertEquals(Arrays.asList("b", "c"), BuildLogs.tail(write("crlf.log", "a\r\nb\r\nc\r\n"), 2));
+        Assert.assertEquals(Collections.<String> emptyList(), BuildLogs.tail(write("empty.log", ""), 5));
+        Assert.assertEquals(Arrays.asList("", ""), BuildLogs.tail(write("blank.log", "\n\n"), 5));
+    }
+}
@@ -0,0 +1,125 @@
+package org.srcdeps.gradle.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.SrcVersion;
+
+public class BuildPlanTest {
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static BuildKey key(String name) {
+        return new BuildKey(name, SrcVersion.parse("1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567"));
+    }
+
+    /** The builds in the order of their completion */
+    private final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+    /** The dependencies of the nodes by node name */
+    private final Map<String, List<String>> graph = new LinkedHashMap<>();
+    private final Map<String, Integer> runs = Collections.synchronizedMap(new LinkedHashMap<String, Integer>());
+    private ExecutorService executor;
+    private BuildRegistry registry;
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Before
+    public void before() {
+        executor = Executors.newFixedThreadPool(4);
+        registry = new BuildRegistry();
+    }
+
+    private Callable<Void> build(final String name, final CountDownLatch latch) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                synchronized (runs) {
+                    final Integer count = runs.get(name);
+                    runs.put(name, count == null ? 1 : count + 1);
+                }
+                if (latch != null) {
+                    /* passes only if the other builds holding the same latch run concurrently */
+                    latch.countDown();
+                    if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException(name + " did not run concurrently");
+                    }
+                }
+                completed.add(name);
+                return null;
+            }
+        };
+    }
+
+    private BuildPlan.Explorer explorer(final CountDownLatch latch, final String... concurrent) {
+        return new BuildPlan.Explorer() {
+            @Override
+            public Map<BuildKey, Callable<Void>> explore(BuildKey key) throws Exception {
+                final Map<BuildKey, Callable<Void>> result = new LinkedHashMap<>();
+                final List<String> deps = graph.get(key.getScmRepositoryId());
+                if (deps != null) {
+                    for (String dep : deps) {
+                        result.put(key(dep), build(dep, Arrays.asList(concurrent).contains(dep) ? latch : null));
+                    }
+                }
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void cycle() throws InterruptedException {
+        graph.put("x", Arrays.asList("y"));
+        graph.put("y", Arrays.asList("x"));
+        final BuildPlan plan = new BuildPlan(registry, executor, explorer(null));
+        plan.add(key("x"), build("x", null));
+        plan.explore();
+        Assert.assertTrue(plan.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("y", "x"), completed);
+    }
+
+    @Test
+    public void topologicalAndParallel() throws InterruptedException, ExecutionException {
+        /* a -> b -> d, a -> c -> d, e independent */
+        graph.put("a", Arrays.asList("b", "c"));
+        graph.put("b", Arrays.asList("d"));
+        graph.put("c", Arrays.asList("d"));
+        final CountDownLatch latch = new CountDownLatch(2);
+        final BuildPlan plan = new BuildPlan(registry, executor, explorer(latch, "b", "c"));
+        Assert.assertTrue(plan.add(key("a"), build("a", null)));
+        Assert.assertTrue(plan.add(key("e"), build("e", null)));
+        Assert.assertFalse(plan.add(key("a"), build("a", null)));
+
+        /* a thread asking for a planned node joins the planned build */
+        Assert.assertNotNull(registry.get(key("a")));
+
+        plan.explore();
+        Assert.assertTrue(plan.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        registry.get(key("a")).get();
+
+        Assert.assertEquals(5, plan.size());
+        Assert.assertEquals(5, completed.size());
+        for (String name : Arrays.asList("a", "b", "c", "d", "e")) {
+            Assert.assertEquals(name, Integer.valueOf(1), runs.get(name));
+        }
+        Assert.assertTrue(completed.indexOf("d") < completed.indexOf("b"));
+        Assert.assertTrue(completed.indexOf("d") < completed.indexOf("c"));
+        Assert.assertTrue(completed.indexOf("b") < completed.indexOf("a"));
+        Assert.assertTrue(completed.indexOf("c") < completed.indexOf("a"));
+    }
+}
@@ -0,0 +1,48 @@
+package org.srcdeps.gradle.plugin;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.gradle.plugin.BuildTimings.Phase;
+
+public class BuildTimingsTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void report() {
+        final BuildTimings timings = new BuildTimings();
+        Assert.assertTrue(timings.isEmpty());
+
+        final BuildKey cheap = new BuildKey("repo1", SrcVersion.parse("1.0-SRC-revision-deadbeef"));
+        final BuildKey expensive = new BuildKey("repo2", SrcVersion.parse("2.0-SRC-branch-master"));
+        timings.recordDuration(null, Phase.configurationLoad, 5 * MS);
+        timings.recordDuration(cheap, Phase.repositoryLookup, 1 * MS);
+        timings.recordDuration(cheap, Phase.nestedBuild, 10 * MS);
+        timings.recordDuration(expensive, Phase.lockWait, 2 * MS);
+        timings.recordDuration(expensive, Phase.nestedBuild, 100 * MS);
+        timings.recordDuration(expensive, Phase.nestedBuild, 100 * MS);
+
+        final Map<String, Object> report = timings.toReport();
+        final Map<String, Object> totals = (Map<String, Object>) report.get("totals");
+        Assert.assertEquals(Long.valueOf(5), totals.get("configurationLoad"));
+        Assert.assertEquals(Long.valueOf(210), totals.get("nestedBuild"));
+        Assert.assertEquals(Long.valueOf(218), totals.get("total"));
+        Assert.assertFalse(totals.containsKey("scmFetch"));
+
+        final List<Map<String, Object>> dependencies = (List<Map<String, Object>>) report.get("dependencies");
+        Assert.assertEquals(2, dependencies.size());
+        Assert.assertEquals(expensive.toString(), dependencies.get(0).get("dependency"));
+        Assert.assertEquals(Long.valueOf(202), dependencies.get(0).get("total"));
+        Assert.assertEquals(cheap.toString(), dependencies.get(1).get("dependency"));
+
+        Assert.assertTrue(timings.toSummary(), timings.toSummary().startsWith("srcdeps: 2 source dependency"));
+
+        timings.clear();
+        Assert.assertTrue(timings.isEmpty());
+    }
+}
@@ -0,0 +1,130 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class GitMirrorsTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+
+    private static RevCommit commit(Git git, String content) throws IOException, GitAPIException {
+        final Path file = git.getRepository().getWorkTree().toPath().resolve("file.txt");
+        Files.write(file, Collections.singletonList(content), StandardCharsets.UTF_8);
+        git.add().addFilepattern("file.txt").call();
+        return git.commit().setMessage(content).call();
+    }
+
+    private static boolean hasObject(Path mirrorDir, ObjectId id) throws IOException {
+        try (Repository repo = new FileRepositoryBuilder().setGitDir(mirrorDir.toFile()).setBare().build()) {
+            return repo.hasObject(id);
+        }
+    }
+
+    private GitMirrors mirrors;
+    private Git upstream;
+    private Path upstreamDir;
+
+    @After
+    public void after() {
+        if (upstream != null) {
+            upstream.close();
+        }
+    }
+
+    @Before
+    public void before() throws IOException, GitAPIException {
+        final Path testDir = projectBuilDir.resolve("test-git-mirrors");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+        upstreamDir = testDir.resolve("upstream");
+        SrcdepsCoreUtils.ensureDirectoryExists(upstreamDir);
+        upstream = Git.init().setDirectory(upstreamDir.toFile()).call();
+        mirrors = new GitMirrors(testDir.resolve("srcdeps"));
+    }
+
+    @Test
+    public void fetchBranch() throws IOException, GitAPIException {
+        final RevCommit c1 = commit(upstream, "1");
+        final String url = upstreamDir.toUri().toString();
+        final Path mirrorDir = mirrors.fetch(url, SrcVersion.parse("1.0-SRC-branch-master"));
+        Assert.assertTrue(hasObject(mirrorDir, c1));
+
+        final RevCommit c2 = commit(upstream, "2");
+        Assert.assertEquals(mirrorDir, mirrors.fetch(url, SrcVersion.parse("1.0-SRC-branch-master")));
+        try (Repository repo = new FileRepositoryBuilder().setGitDir(mirrorDir.toFile()).setBare().build()) {
+            Assert.assertEquals(c2, repo.exactRef(Constants.R_HEADS + "master").getObjectId());
+        }
+    }
+
+    @Test
+    public void fetchRevisionIncrementally() throws IOException, GitAPIException {
+        final RevCommit c1 = commit(upstream, "1");
+        final String url = upstreamDir.toUri().toString();
+        final Path mirrorDir = mirrors.fetch(url, SrcVersion.parse("1.0-SRC-revision-" + c1.name()));
+        Assert.assertTrue(hasObject(mirrorDir, c1));
+
+        final RevCommit c2 = commit(upstream, "2");
+        Assert.assertFalse(hasObject(mirrorDir, c2));
+        Assert.assertEquals(mirrorDir, mirrors.fetch(url, SrcVersion.parse("1.0-SRC-revision-" + c2.name())));
+        Assert.assertTrue(hasObject(mirrorDir, c2));
+
+        /* Commits already in the mirror must not require the remote at all */
+        upstream.close();
+        upstream = null;
+        SrcdepsCoreUtils.deleteDirectory(upstreamDir);
+        Assert.assertEquals(mirrorDir, mirrors.fetch(url, SrcVersion.parse("1.0-SRC-revision-" + c1.name())));
+    }
+
+    @Test
+    public void oneMirrorPerUrl() throws IOException, GitAPIException {
+        final RevCommit c1 = commit(upstream, "1");
+        final SrcVersion version = SrcVersion.parse("1.0-SRC-revision-" + c1.name());
+        final Path mirrorDir = mirrors.fetch(upstreamDir.toUri().toString(), version);
+        Assert.assertEquals(mirrorDir, mirrors.fetch(upstreamDir.toUri().toString(), version));
+        Assert.assertNotEquals(mirrorDir, mirrors.fetch(upstreamDir.toUri().toString() + "/.git", version));
+    }
+
+    @Test
+    public void pinLockedCommit() throws IOException, GitAPIException {
+        final SrcVersion version = SrcVersion.parse("1.0-SRC-branch-master");
+        final RevCommit c1 = commit(upstream, "1");
+        final RevCommit c2 = commit(upstream, "2");
+        final String url = upstreamDir.toUri().toString();
+        final Path mirrorDir = mirrors.fetch(url, version, c1.name());
+        try (Repository repo = new FileRepositoryBuilder().setGitDir(mirrorDir.toFile()).setBare().build()) {
+            Assert.assertEquals(c1, repo.exactRef(Constants.R_HEADS + "master").getObjectId());
+        }
+
+        /* unlocked again */
+        mirrors.fetch(url, version);
+        try (Repository repo = new FileRepositoryBuilder().setGitDir(mirrorDir.toFile()).setBare().build()) {
+            Assert.assertEquals(c2, repo.exactRef(Constants.R_HEADS + "master").getObjectId());
+        }
+    }
+
+    @Test
+    public void readHead() throws IOException, GitAPIException {
+        Assert.assertNull(GitMirrors.readHead(upstreamDir));
+        final RevCommit c1 = commit(upstream, "1");
+        Assert.assertEquals(c1.name(), GitMirrors.readHead(upstreamDir));
+        Assert.assertNull(GitMirrors.readHead(upstreamDir.resolve("no-such-dir")));
+    }
+}
@@ -0,0 +1,197 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class ModuleIndexTest {
+    private static final String SRC_VERSION = "1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567";
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+
+    private static String pom(String artifactId, String... modules) {
+        final StringBuilder result = new StringBuilder("<project>\n") //
+                .append("  <parent><artifactId>parent</artifactId></parent>\n") //
+                .append("  <artifactId>").append(artifactId).append("</artifactId>\n");
+        if (modules.length > 0) {
+            result.append("  <modules>\n");
+            for (String module : modules) {
+                result.append("    <module>").append(module).append("</module>\n");
+            }
+            result.append("  </modules>\n");
+        }
+        return result.append("</project>\n").toString();
+    }
+
+    private static Git repo(String name) throws IOException, GitAPIException {
+        final Path dir = projectBuilDir.resolve("test-module-index").resolve(name);
+        SrcdepsCoreUtils.deleteDirectory(dir);
+        SrcdepsCoreUtils.ensureDirectoryExists(dir);
+        return Git.init().setDirectory(dir.toFile()).call();
+    }
+
+    private static void write(Git git, String path, String content) throws IOException, GitAPIException {
+        final Path file = git.getRepository().getWorkTree().toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        git.add().addFilepattern(path).call();
+    }
+
+    @Test
+    public void gradle() throws IOException, GitAPIException {
+        try (Git git = repo("gradle")) {
+            write(git, "settings.gradle", "rootProject.name = 'root'\n" //
+                    + "include 'core', ':tools:cli'\n" //
+                    + "include(\"api\")\n");
+            write(git, "build.gradle", "allprojects {\n" //
+                    + "    group = 'org.src.tools'\n" //
+                    + "}\n" //
+                    + "dependencies { compile 'org.regular:lib:1.0' }\n");
+            write(git, "gradle.properties", "org.gradle.jvmargs=-Xmx2g -Dfile.encoding=UTF-8\n");
+            write(git, "tools/cli/build.gradle", "dependencies {\n" //
+                    + "    compile 'org.src:lib:" + SRC_VERSION + "'\n" //
+                    + "    compile \"org.src:other:1.0-SRC-branch-master\"\n" //
+                    + "    compile project(':core')\n" //
+                    + "}\n");
+            write(git, "core/build.gradle", "dependencies {\n" //
+                    + "    compile project(path: \":api\", configuration: 'default')\n" //
+                    + "    compile project(':not-included')\n" //
+                    + "}\n");
+            final RevCommit commit = git.commit().setMessage("gradle").call();
+            /* the working tree does not matter */
+            Files.delete(git.getRepository().getWorkTree().toPath().resolve("settings.gradle"));
+
+            final ModuleIndex index = ModuleIndex.read(git.getRepository(), commit);
+            Assert.assertEquals(BuildTool.gradle, index.getBuildTool());
+            Assert.assertEquals("-Xmx2g -Dfile.encoding=UTF-8", index.getGradleJvmArgs());
+            Assert.assertEquals(Collections.singleton("org.src.tools"), index.getGroupIds());
+            Assert.assertEquals(Arrays.asList(":api:install", ":core:install", ":tools:cli:install"),
+                    index.getPartialBuildArguments(Arrays.asList("cli", "api")));
+            Assert.assertEquals(Arrays.asList(":api:install", ":core:install"),
+                    index.getPartialBuildArguments(Collections.singleton("core")));
+            Assert.assertEquals(Collections.singletonList(":api:install"),
+                    index.getPartialBuildArguments(Collections.singleton("api")));
+            Assert.assertEquals(Collections.singletonList(":install"),
+                    index.getPartialBuildArguments(Collections.singleton("root")));
+            Assert.assertNull(index.getPartialBuildArguments(Arrays.asList("core", "unknown")));
+            Assert.assertEquals(
+                    new LinkedHashSet<>(Arrays.asList(new SourceDependency("org.src", "lib", SRC_VERSION),
+                            new SourceDependency("org.src", "other", "1.0-SRC-branch-master"))),
+                    index.getSourceDependencies());
+            Assert.assertNull(index.getSrcdepsYaml());
+        }
+    }
+
+    @Test
+    public void maven() throws IOException, GitAPIException {
+        try (Git git = repo("maven")) {
+            write(git, "pom.xml", pom("root", "core", "tools"));
+            write(git, "core/pom.xml", "<project>\n" //
+                    + "  <groupId>org.example</groupId>\n" //
+                    + "  <artifactId>core</artifactId>\n" //
+                    + "  <properties><src.version>" + SRC_VERSION + "</src.version></properties>\n" //
+                    + "  <dependencies>\n" //
+                    + "    <dependency><groupId>org.src</groupId><artifactId>lib</artifactId>" //
+                    + "<version>${src.version}</version></dependency>\n" //
+                    + "    <dependency><groupId>org.regular</groupId><artifactId>lib</artifactId>" //
+                    + "<version>1.0</version></dependency>\n" //
+                    + "    <dependency><groupId>org.src</groupId><artifactId>unresolved</artifactId>" //
+                    + "<version>${unknown}</version></dependency>\n" //
+                    + "  </dependencies>\n" //
+                    + "</project>\n");
+            write(git, "srcdeps.yaml", "configModelVersion: 2.2\n");
+            write(git, "tools/pom.xml", pom("tools", "cli", "../core", "../outside/x"));
+            write(git, "tools/cli/pom.xml", pom("cli"));
+            /* not a module */
+            write(git, "src/it/pom.xml", pom("it"));
+            final RevCommit commit = git.commit().setMessage("maven").call();
+
+            final ModuleIndex index = ModuleIndex.read(git.getRepository(), commit);
+            Assert.assertEquals(BuildTool.maven, index.getBuildTool());
+            Assert.assertNull(index.getGradleJvmArgs());
+            Assert.assertEquals(Collections.singleton("org.example"), index.getGroupIds());
+            Assert.assertEquals(Arrays.asList("root", "core", "tools", "cli"),
+                    Arrays.asList(index.getModules().keySet().toArray()));
+            Assert.assertEquals(Arrays.asList("-pl", ":cli,:core", "-am"),
+                    index.getPartialBuildArguments(Arrays.asList("core", "cli", "core")));
+            Assert.assertNull(index.getPartialBuildArguments(Collections.singleton("it")));
+            Assert.assertNull(index.getPartialBuildArguments(Collections.<String> emptySet()));
+            Assert.assertEquals(Collections.singleton(new SourceDependency("org.src", "lib", SRC_VERSION)),
+                    index.getSourceDependencies());
+            Assert.assertEquals("configModelVersion: 2.2\n", index.getSrcdepsYaml());
+        }
+    }
+
+    @Test
+    public void mavenPropertiesScopedToModuleAndParents() throws IOException, GitAPIException {
+        try (Git git = repo("maven-properties")) {
+            write(git, "pom.xml", "<project>\n" //
+                    + "  <artifactId>root</artifactId>\n" //
+                    + "  <properties><lib.version>1.0</lib.version></properties>\n" //
+                    + "  <modules><module>a</module><module>b</module><module>c</module></modules>\n" //
+                    + "</project>\n");
+            write(git, "a/pom.xml", "<project>\n" //
+                    + "  <parent><artifactId>root</artifactId></parent>\n" //
+                    + "  <artifactId>a</artifactId>\n" //
+                    + "  <properties><lib.version>1.0-SRC-branch-a</lib.version>" //
+                    + "<a.version>" + SRC_VERSION + "</a.version></properties>\n" //
+                    + "  <dependencies><dependency><groupId>org.src</groupId><artifactId>a-lib</artifactId>" //
+                    + "<version>${lib.version}</version></dependency></dependencies>\n" //
+                    + "</project>\n");
+            write(git, "b/pom.xml", "<project>\n" //
+                    + "  <parent><artifactId>root</artifactId></parent>\n" //
+                    + "  <artifactId>b</artifactId>\n" //
+                    + "  <dependencies>\n" //
+                    + "    <dependency><groupId>org.src</groupId><artifactId>b-lib</artifactId>" //
+                    + "<version>${lib.version}</version></dependency>\n" //
+                    + "    <dependency><groupId>org.src</groupId><artifactId>sibling</artifactId>" //
+                    + "<version>${a.version}</version></dependency>\n" //
+                    + "  </dependencies>\n" //
+                    + "</project>\n");
+            write(git, "c/pom.xml", "<project>\n" //
+                    + "  <parent><artifactId>parent</artifactId><relativePath>../parent</relativePath></parent>\n" //
+                    + "  <artifactId>c</artifactId>\n" //
+                    + "  <dependencies><dependency><groupId>org.src</groupId><artifactId>c-lib</artifactId>" //
+                    + "<version>${c.version}</version></dependency></dependencies>\n" //
+                    + "</project>\n");
+            /* not a module */
+            write(git, "parent/pom.xml", "<project>\n" //
+                    + "  <artifactId>parent</artifactId>\n" //
+                    + "  <properties><c.version>" + SRC_VERSION + "</c.version></properties>\n" //
+                    + "</project>\n");
+            final RevCommit commit = git.commit().setMessage("maven").call();
+
+            final ModuleIndex index = ModuleIndex.read(git.getRepository(), commit);
+            Assert.assertEquals(Arrays.asList("root", "a", "b", "c"),
+                    Arrays.asList(index.getModules().keySet().toArray()));
+            Assert.assertEquals(
+                    new LinkedHashSet<>(Arrays.asList(new SourceDependency("org.src", "a-lib", "1.0-SRC-branch-a"),
+                            new SourceDependency("org.src", "c-lib", SRC_VERSION))),
+                    index.getSourceDependencies());
+        }
+    }
+
+    @Test
+    public void unknown() throws IOException, GitAPIException {
+        try (Git git = repo("unknown")) {
+            write(git, "Makefile", "all:\n");
+            final RevCommit commit = git.commit().setMessage("make").call();
+            final ModuleIndex index = ModuleIndex.read(git.getRepository(), commit);
+            Assert.assertEquals(BuildTool.unknown, index.getBuildTool());
+            Assert.assertNull(index.getPartialBuildArguments(Collections.singleton("all")));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class NestedBuildSlotsTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Test
+    public void acquireBlocksAboveLimit() throws InterruptedException {
+        final NestedBuildSlots slots = new NestedBuildSlots();
+        slots.setMaxWorkers(2);
+        Assert.assertEquals(2, slots.getLimit());
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        slots.acquire();
+                        try {
+                            final int current = running.incrementAndGet();
+                            synchronized (maxRunning) {
+                                maxRunning.set(Math.max(maxRunning.get(), current));
+                            }
+                            Thread.sleep(20);
+                            running.decrementAndGet();
+                        } finally {
+                            slots.release();
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        Assert.assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(String.valueOf(maxRunning.get()), maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void defaultHeap() {
+        Assert.assertEquals(2L << 30, NestedBuildSlots.getDefaultHeap(8L << 30, 4));
+        Assert.assertEquals(1536L << 20, NestedBuildSlots.getDefaultHeap((3L << 30) + (100L << 20), 2));
+        Assert.assertEquals(0L, NestedBuildSlots.getDefaultHeap(0L, 2));
+    }
+
+    @Test
+    public void limit() {
+        Assert.assertEquals(4, NestedBuildSlots.getLimit(4, 0));
+        Assert.assertEquals(2, NestedBuildSlots.getLimit(4, 2));
+        Assert.assertEquals(4, NestedBuildSlots.getLimit(4, 8));
+        Assert.assertEquals(1, NestedBuildSlots.getLimit(0, 0));
+    }
+
+    @Test
+    public void limitResources() {
+        final List<String> args = Arrays.asList("clean", "install");
+        Assert.assertSame(args, NestedBuildSlots.limit(args, BuildTool.maven, 2, 1L << 30, ""));
+        Assert.assertEquals(Arrays.asList("clean", "install", "--max-workers=2", "-Dorg.gradle.jvmargs=-Xmx1024m"),
+                NestedBuildSlots.limit(args, BuildTool.gradle, 2, 1L << 30, ""));
+        /* the upstream's own settings are kept */
+        Assert.assertEquals(
+                Arrays.asList("clean", "install", "--max-workers=2",
+                        "-Dorg.gradle.jvmargs=-XX:MaxMetaspaceSize=512m -Dfile.encoding=UTF-8 -Xmx1024m"),
+                NestedBuildSlots.limit(args, BuildTool.gradle, 2, 1L << 30,
+                        " -XX:MaxMetaspaceSize=512m -Dfile.encoding=UTF-8\n"));
+        /* too little memory left to impose a limit */
+        Assert.assertEquals(Arrays.asList("clean", "install", "--max-workers=1"),
+                NestedBuildSlots.limit(args, BuildTool.gradle, 1, NestedBuildSlots.MIN_HEAP - 1, ""));
+        /* the user's settings win */
+        final List<String> userArgs = Arrays.asList("install", "--max-workers=8", "-Dorg.gradle.jvmargs=-Xmx4g");
+        Assert.assertEquals(userArgs, NestedBuildSlots.limit(userArgs, BuildTool.gradle, 2, 1L << 30, null));
+        Assert.assertEquals(Collections.singletonList("--max-workers=3"),
+                NestedBuildSlots.limit(Collections.<String> emptyList(), BuildTool.gradle, 3, 0L, null));
+    }
+
+    @Test
+    public void limitResourcesStable() {
+        final NestedBuildSlots slots = new NestedBuildSlots();
+        slots.setMaxWorkers(4);
+        final List<String> args = Arrays.asList("clean", "install");
+        /* different arguments would make each nested build start a new Gradle daemon */
+        Assert.assertEquals(slots.limitResources(args, BuildTool.gradle, ""),
+                slots.limitResources(args, BuildTool.gradle, ""));
+    }
+
+    @Test
+    public void upstreamJvmArgs() throws IOException {
+        final Path gradleUserHome = projectBuilDir.resolve("test-nested-build-slots");
+        SrcdepsCoreUtils.deleteDirectory(gradleUserHome);
+        SrcdepsCoreUtils.ensureDirectoryExists(gradleUserHome);
+        /* no index, no way to tell */
+        Assert.assertNull(NestedBuildSlots.getUpstreamJvmArgs(gradleUserHome, null));
+
+        Files.write(gradleUserHome.resolve("gradle.properties"),
+                "org.gradle.parallel=true\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(NestedBuildSlots.getUpstreamJvmArgs(gradleUserHome, null));
+
+        /* the Gradle user home wins over the source tree */
+        Files.write(gradleUserHome.resolve("gradle.properties"),
+                "org.gradle.jvmargs=-Xmx3g\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("-Xmx3g", NestedBuildSlots.getUpstreamJvmArgs(gradleUserHome, null));
+    }
+}
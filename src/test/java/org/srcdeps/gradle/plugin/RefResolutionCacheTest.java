@@ -0,0 +1,136 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class RefResolutionCacheTest {
+    private static final String MASTER = Constants.R_HEADS + "master";
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+
+    private static RevCommit commit(Git git, String content) throws IOException, GitAPIException {
+        final Path file = git.getRepository().getWorkTree().toPath().resolve("file.txt");
+        Files.write(file, Collections.singletonList(content), StandardCharsets.UTF_8);
+        git.add().addFilepattern("file.txt").call();
+        return git.commit().setMessage(content).call();
+    }
+
+    private String bareUrl;
+    private Path srcdepsDir;
+    private Git work;
+
+    @After
+    public void after() {
+        if (work != null) {
+            work.close();
+        }
+    }
+
+    @Before
+    public void before() throws IOException, GitAPIException {
+        final Path testDir = projectBuilDir.resolve("test-ref-resolution-cache");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+        final Path bareDir = testDir.resolve("upstream.git");
+        Git.init().setBare(true).setDirectory(bareDir.toFile()).call().close();
+        bareUrl = bareDir.toUri().toString();
+        final Path workDir = testDir.resolve("work");
+        SrcdepsCoreUtils.ensureDirectoryExists(workDir);
+        work = Git.init().setDirectory(workDir.toFile()).call();
+        srcdepsDir = testDir.resolve("srcdeps");
+    }
+
+    private void push(String ref) throws GitAPIException {
+        work.push().setRemote(bareUrl).setForce(true).setRefSpecs(new RefSpec(ref + ":" + ref)).call();
+    }
+
+    @Test
+    public void branchResolutionExpires() throws IOException, GitAPIException {
+        final RevCommit c1 = commit(work, "1");
+        push(MASTER);
+        final RefResolutionCache cache = new RefResolutionCache(srcdepsDir);
+        Assert.assertEquals(c1.name(), cache.resolve(bareUrl, MASTER, HOUR_MS));
+
+        /* move the branch */
+        final RevCommit c2 = commit(work, "2");
+        push(MASTER);
+
+        /* cached in memory and on disk */
+        Assert.assertEquals(c1.name(), cache.resolve(bareUrl, MASTER, HOUR_MS));
+        Assert.assertEquals(c1.name(), new RefResolutionCache(srcdepsDir).resolve(bareUrl, MASTER, HOUR_MS));
+
+        /* expired */
+        Assert.assertEquals(c2.name(), cache.resolve(bareUrl, MASTER, 0));
+        Assert.assertEquals(c2.name(), new RefResolutionCache(srcdepsDir).resolve(bareUrl, MASTER, HOUR_MS));
+    }
+
+    @Test
+    public void installedCommit() throws IOException {
+        final Path versionDir = srcdepsDir.resolve("repository/org/example/lib/1.0-SRC-branch-master");
+        Assert.assertNull(RefResolutionCache.readInstalledCommit(versionDir));
+        SrcdepsCoreUtils.ensureDirectoryExists(versionDir);
+        final String commit = "0123456789abcdef0123456789abcdef01234567";
+        RefResolutionCache.writeInstalledCommit(versionDir, commit);
+        Assert.assertEquals(commit, RefResolutionCache.readInstalledCommit(versionDir));
+    }
+
+    @Test
+    public void resolveCachedNeverQueriesTheRemote() throws IOException, GitAPIException {
+        final RevCommit c1 = commit(work, "1");
+        push(MASTER);
+        final RefResolutionCache cache = new RefResolutionCache(srcdepsDir);
+        Assert.assertNull(cache.resolveCached(bareUrl, MASTER));
+        Assert.assertEquals(c1.name(), cache.resolve(bareUrl, MASTER, HOUR_MS));
+
+        /* a remote that cannot be reached anymore */
+        SrcdepsCoreUtils.deleteDirectory(Paths.get(URI.create(bareUrl)));
+        Assert.assertEquals(c1.name(), cache.resolveCached(bareUrl, MASTER));
+        /* even when expired */
+        Assert.assertEquals(c1.name(), new RefResolutionCache(srcdepsDir).resolveCached(bareUrl, MASTER));
+        Assert.assertNull(cache.resolveCached(bareUrl, Constants.R_HEADS + "other"));
+    }
+
+    @Test
+    public void tagResolvesToPeeledCommit() throws IOException, GitAPIException {
+        final RevCommit c1 = commit(work, "1");
+        work.tag().setName("1.0").setAnnotated(true).setMessage("1.0").call();
+        final String tag = RefResolutionCache.refName(SrcVersion.parse("1.0-SRC-tag-1.0"));
+        Assert.assertEquals(Constants.R_TAGS + "1.0", tag);
+        push(tag);
+        final RefResolutionCache cache = new RefResolutionCache(srcdepsDir);
+        Assert.assertEquals(c1.name(), cache.resolve(bareUrl, tag, HOUR_MS));
+
+        /* re-tag */
+        final RevCommit c2 = commit(work, "2");
+        work.tag().setName("1.0").setAnnotated(true).setMessage("1.0").setForceUpdate(true).call();
+        push(tag);
+        Assert.assertEquals(c1.name(), cache.resolve(bareUrl, tag, HOUR_MS));
+        Assert.assertEquals(c2.name(), cache.resolve(bareUrl, tag, 0));
+    }
+
+    @Test
+    public void unknownRef() throws IOException, GitAPIException {
+        commit(work, "1");
+        push(MASTER);
+        Assert.assertNull(new RefResolutionCache(srcdepsDir).resolve(bareUrl, Constants.R_HEADS + "missing", 0));
+    }
+}
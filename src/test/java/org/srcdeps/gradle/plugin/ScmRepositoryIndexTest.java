@@ -0,0 +1,115 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.srcdeps.core.config.Configuration;
+import org.srcdeps.core.config.ScmRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class ScmRepositoryIndexTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+    private static final int REPO_COUNT = 300;
+    private static ConfigurationService configurationService;
+
+    /**
+     * The reference implementation: a linear search through all repositories.
+     */
+    private static ScmRepository findLinear(List<ScmRepository> repositories, String groupId, String artifactId,
+            String version) {
+        for (ScmRepository scmRepository : repositories) {
+            if (scmRepository.getGavSet().contains(groupId, artifactId, version)) {
+                return scmRepository;
+            }
+        }
+        return null;
+    }
+
+    private static String include(int i) {
+        switch (i % 6) {
+        case 0:
+            return "org.example.exact" + i;
+        case 1:
+            return "org.example.prefix" + i + "*";
+        case 2:
+            return "org.example.exact" + (i - 2) + ":artifact" + i;
+        case 3:
+            return "org.*.wild" + i;
+        case 4:
+            return "org.example.prefix" + (i - 3) + ".sub*:*:1.*";
+        default:
+            return "*:artifact-any" + i;
+        }
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        final Path testDir = projectBuilDir.resolve("test-scm-repository-index");
+        SrcdepsCoreUtils.ensureDirectoryExists(testDir);
+        final Path srcdepsYaml = testDir.resolve("srcdeps.yaml");
+        try (Writer w = Files.newBufferedWriter(srcdepsYaml, StandardCharsets.UTF_8)) {
+            w.write("configModelVersion: 2.2\n");
+            w.write("repositories:\n");
+            for (int i = 0; i < REPO_COUNT; i++) {
+                w.write("  repo" + i + ":\n");
+                w.write("    includes:\n");
+                w.write("    - '" + include(i) + "'\n");
+                if (i % 10 == 1) {
+                    w.write("    excludes:\n");
+                    w.write("    - org.example.prefix" + i + ".excluded\n");
+                }
+                w.write("    urls:\n");
+                w.write("    - git:https://example.com/repo" + i + ".git\n");
+            }
+        }
+        configurationService = new ConfigurationService(srcdepsYaml);
+    }
+
+    @Test
+    public void sameAsLinearSearch() {
+        final Configuration configuration = configurationService.getConfiguration();
+        final List<ScmRepository> repositories = configuration.getRepositories();
+        Assert.assertEquals(REPO_COUNT, repositories.size());
+        final ScmRepositoryIndex index = configurationService.getScmRepositoryIndex();
+
+        final List<String[]> gavs = new ArrayList<>();
+        for (int i = 0; i < REPO_COUNT; i++) {
+            gavs.add(new String[] { "org.example.exact" + i, "artifact" + i, "1.0-SRC-revision-deadbeef" });
+            gavs.add(new String[] { "org.example.exact" + i, "other", "1.0-SRC-revision-deadbeef" });
+            gavs.add(new String[] { "org.example.prefix" + i, "a", "1.0-SRC-revision-deadbeef" });
+            gavs.add(new String[] { "org.example.prefix" + i + ".foo", "a", "1.0-SRC-revision-deadbeef" });
+            gavs.add(new String[] { "org.example.prefix" + i + ".excluded", "a", "1.0-SRC-revision-deadbeef" });
+            gavs.add(new String[] { "org.example.prefix" + i + ".sub", "a", "1.0-SRC-revision-deadbeef" });
+            gavs.add(new String[] { "org.example.prefix" + i + ".sub", "a", "2.0-SRC-revision-deadbeef" });
+            gavs.add(new String[] { "org.acme.wild" + i, "a", "1.0-SRC-revision-deadbeef" });
+            gavs.add(new String[] { "com.acme", "artifact-any" + i, "1.0-SRC-revision-deadbeef" });
+        }
+        gavs.add(new String[] { "org", "a", "1.0-SRC-revision-deadbeef" });
+        gavs.add(new String[] { "", "a", "1.0-SRC-revision-deadbeef" });
+        gavs.add(new String[] { "com.unknown", "unknown", "1.0-SRC-revision-deadbeef" });
+
+        int matched = 0;
+        for (String[] gav : gavs) {
+            final ScmRepository expected = findLinear(repositories, gav[0], gav[1], gav[2]);
+            final ScmRepository actual = index.find(gav[0], gav[1], gav[2]);
+            Assert.assertSame(gav[0] + ":" + gav[1] + ":" + gav[2], expected, actual);
+            if (expected != null) {
+                matched++;
+            }
+        }
+        /* make sure that the test data is not trivial */
+        Assert.assertTrue("Too few matches: " + matched, matched > REPO_COUNT);
+    }
+
+}
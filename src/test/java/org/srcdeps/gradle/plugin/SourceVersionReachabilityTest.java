@@ -0,0 +1,217 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.dsl.DependencyHandler;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.srcdeps.core.Gavtc;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class SourceVersionReachabilityTest {
+    private static final int CONFIGURATIONS_PER_PROJECT = 5;
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+    private static final int PROJECT_COUNT = 100;
+    private static final String SRC_VERSION = "1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567";
+
+    private static String pom(String parent, String... dependencies) {
+        final StringBuilder result = new StringBuilder("<project>");
+        if (parent != null) {
+            final String[] gav = parent.split(":");
+            result.append("<parent><groupId>").append(gav[0]).append("</groupId><artifactId>").append(gav[1])
+                    .append("</artifactId><version>").append(gav[2]).append("</version></parent>");
+        }
+        result.append("<dependencies>");
+        for (String dependency : dependencies) {
+            final String[] gavs = dependency.split(":");
+            result.append("<dependency><groupId>").append(gavs[0]).append("</groupId><artifactId>").append(gavs[1])
+                    .append("</artifactId><version>").append(gavs[2]).append("</version>");
+            if (gavs.length > 3) {
+                result.append("<scope>").append(gavs[3]).append("</scope>");
+            }
+            result.append("</dependency>");
+        }
+        return result.append("</dependencies></project>").toString();
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeGradleCachePom(Path gradleModuleCache, String groupId, String artifactId, String version,
+            String content) throws IOException {
+        write(gradleModuleCache.resolve(groupId).resolve(artifactId).resolve(version)
+                .resolve("0123456789abcdef0123456789abcdef01234567").resolve(artifactId + "-" + version + ".pom"),
+                content);
+    }
+
+    private static Configuration conf(Project project) {
+        return project.getConfigurations().getByName("conf");
+    }
+
+    private static void dependOn(Project project, Project target) {
+        final Map<String, String> notation = new LinkedHashMap<>();
+        notation.put("path", target.getPath());
+        notation.put("configuration", "conf");
+        project.getDependencies().add("conf", project.getDependencies().project(notation));
+    }
+
+    @Test
+    public void cyclesAndTransitiveDependencies() throws IOException {
+        final Path testDir = projectBuilDir.resolve("test-source-version-reachability-transitive");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+        final MavenLocalRepository localRepository = new MavenLocalRepository(testDir.resolve("repository"));
+        final Path gradleModuleCache = testDir.resolve("gradle-cache");
+        /* a released artifact from a remote repository depending on a source version two levels deep */
+        writeGradleCachePom(gradleModuleCache, "org.remote", "a", "1.0", pom(null, "org.remote:b:1.0"));
+        write(localRepository.resolve(new Gavtc("org.remote", "b", "1.0", "pom")),
+                pom(null, "org.src:lib:" + SRC_VERSION));
+        /* a clean one with a clean parent; the test dependency is not transitive */
+        writeGradleCachePom(gradleModuleCache, "org.clean", "a", "1.0",
+                pom("org.clean:parent:1", "org.clean:b:${project.version}", "org.unknown:x:1.0:test"));
+        writeGradleCachePom(gradleModuleCache, "org.clean", "b", "1.0", pom(null));
+        writeGradleCachePom(gradleModuleCache, "org.clean", "parent", "1", pom(null));
+        final Path srcdepsYaml = testDir.resolve("srcdeps.yaml");
+        write(srcdepsYaml, "configModelVersion: 2.2\n" //
+                + "repositories:\n" //
+                + "  src:\n" //
+                + "    includes:\n" //
+                + "    - org.src\n" //
+                + "    urls:\n" //
+                + "    - git:https://example.com/src.git\n");
+        final ScmRepositoryIndex index = new ConfigurationService(srcdepsYaml).getScmRepositoryIndex();
+
+        final Project root = ProjectBuilder.builder().withName("root").withProjectDir(testDir.resolve("root").toFile())
+                .build();
+        final Project[] projects = new Project[8];
+        for (int i = 0; i < projects.length; i++) {
+            projects[i] = ProjectBuilder.builder().withName("p" + i).withParent(root)
+                    .withProjectDir(testDir.resolve("root/p" + i).toFile()).build();
+            projects[i].getConfigurations().create("conf");
+        }
+        /* p0 -> p1 -> p0 and p0 -> p2 reaching a source version */
+        dependOn(projects[0], projects[1]);
+        dependOn(projects[1], projects[0]);
+        dependOn(projects[0], projects[2]);
+        projects[2].getDependencies().add("conf", "org.src:lib:" + SRC_VERSION);
+        projects[3].getDependencies().add("conf", "org.remote:a:1.0");
+        projects[4].getDependencies().add("conf", "org.clean:a:1.0");
+        /* no POM anywhere */
+        projects[5].getDependencies().add("conf", "org.unknown:x:1.0");
+        /* p6 -> p7 -> p6 without any source version */
+        dependOn(projects[6], projects[7]);
+        dependOn(projects[7], projects[6]);
+        projects[7].getDependencies().add("conf", "org.clean:b:1.0");
+
+        final SourceVersionReachability reachability = new SourceVersionReachability(index, localRepository,
+                gradleModuleCache);
+        Assert.assertTrue(reachability.canReachSourceVersions(conf(projects[0])));
+        /* p1 was visited while p0 was still being searched through */
+        Assert.assertTrue(reachability.canReachSourceVersions(conf(projects[1])));
+        Assert.assertTrue(reachability.canReachSourceVersions(conf(projects[3])));
+        Assert.assertFalse(reachability.canReachSourceVersions(conf(projects[4])));
+        Assert.assertTrue(reachability.canReachSourceVersions(conf(projects[5])));
+        Assert.assertFalse(reachability.canReachSourceVersions(conf(projects[6])));
+        Assert.assertFalse(reachability.canReachSourceVersions(conf(projects[7])));
+    }
+
+    @Test
+    public void hookOnlyConfigurationsReachingSourceVersions() throws IOException {
+        final Path testDir = projectBuilDir.resolve("test-source-version-reachability");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+
+        final Path srcdepsYaml = testDir.resolve("srcdeps.yaml");
+        write(srcdepsYaml, "configModelVersion: 2.2\n" //
+                + "repositories:\n" //
+                + "  src:\n" //
+                + "    includes:\n" //
+                + "    - org.src\n" //
+                + "    urls:\n" //
+                + "    - git:https://example.com/src.git\n" //
+                + "  managed:\n" //
+                + "    includes:\n" //
+                + "    - org.managed\n" //
+                + "    urls:\n" //
+                + "    - git:https://example.com/managed.git\n");
+        final MavenLocalRepository localRepository = new MavenLocalRepository(testDir.resolve("repository"));
+        /* a released artifact whose POM depends on a source version */
+        write(localRepository.resolve(new Gavtc("org.local", "lib", "1.0", "pom")),
+                pom(null, "org.src:lib:" + SRC_VERSION));
+        /* released artifacts proven free of source versions, one from a remote repository */
+        final Path gradleModuleCache = testDir.resolve("gradle-cache");
+        writeGradleCachePom(gradleModuleCache, "org.regular", "lib", "1.0", pom(null, "org.regular:other:2.0"));
+        write(localRepository.resolve(new Gavtc("org.regular", "other", "2.0", "pom")), pom(null));
+        final ScmRepositoryIndex index = new ConfigurationService(srcdepsYaml).getScmRepositoryIndex();
+
+        final Project root = ProjectBuilder.builder().withName("root").withProjectDir(testDir.resolve("root").toFile())
+                .build();
+        final Project[] projects = new Project[PROJECT_COUNT];
+        for (int i = 0; i < PROJECT_COUNT; i++) {
+            final Project p = ProjectBuilder.builder().withName("p" + i).withParent(root)
+                    .withProjectDir(testDir.resolve("root/p" + i).toFile()).build();
+            projects[i] = p;
+            for (int c = 0; c < CONFIGURATIONS_PER_PROJECT; c++) {
+                p.getConfigurations().create("conf" + c);
+            }
+            final DependencyHandler deps = p.getDependencies();
+            /* conf0: regular dependencies only */
+            deps.add("conf0", "org.regular:lib:1.0");
+            /* conf1: a direct source dependency in every tenth project */
+            deps.add("conf1", "org.regular:other:2.0");
+            if (i % 10 == 0) {
+                deps.add("conf1", "org.src:lib:" + SRC_VERSION);
+            }
+            /* conf2: inherits from conf1 */
+            p.getConfigurations().getByName("conf2").extendsFrom(p.getConfigurations().getByName("conf1"));
+            /* conf4: artifacts from a repository managed by srcdeps or with a POM referring to a source version */
+            if (i % 25 == 0) {
+                deps.add("conf4", "org.managed:lib:1.0");
+            } else if (i % 25 == 1) {
+                deps.add("conf4", "org.local:lib:1.0");
+            } else {
+                deps.add("conf4", "org.regular:lib:1.0");
+            }
+        }
+        for (int i = 1; i < PROJECT_COUNT; i++) {
+            /* conf3: depends on conf1 of the previous project */
+            final Map<String, String> notation = new LinkedHashMap<>();
+            notation.put("path", projects[i - 1].getPath());
+            notation.put("configuration", "conf1");
+            projects[i].getDependencies().add("conf3", projects[i].getDependencies().project(notation));
+        }
+
+        final SourceVersionReachability reachability = new SourceVersionReachability(index, localRepository,
+                gradleModuleCache);
+        int hooked = 0;
+        int total = 0;
+        for (Project p : projects) {
+            for (Configuration configuration : p.getConfigurations()) {
+                total++;
+                if (reachability.canReachSourceVersions(configuration)) {
+                    hooked++;
+                }
+            }
+        }
+        Assert.assertEquals(PROJECT_COUNT * CONFIGURATIONS_PER_PROJECT, total);
+        /* conf1 + conf2 + conf3: 10 each; conf4: 4 managed + 4 local POMs */
+        Assert.assertEquals(38, hooked);
+
+        Assert.assertFalse(reachability.canReachSourceVersions(projects[5].getConfigurations().getByName("conf0")));
+        Assert.assertTrue(reachability.canReachSourceVersions(projects[20].getConfigurations().getByName("conf2")));
+        Assert.assertTrue(reachability.canReachSourceVersions(projects[21].getConfigurations().getByName("conf3")));
+        Assert.assertFalse(reachability.canReachSourceVersions(projects[22].getConfigurations().getByName("conf3")));
+    }
+}
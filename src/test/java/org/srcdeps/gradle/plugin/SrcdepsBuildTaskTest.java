@@ -0,0 +1,113 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.eclipse.sisu.space.BeanScanning;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class SrcdepsBuildTaskTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+    private static final String SRC_VERSION = "1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567";
+
+    private Path testDir;
+
+    @Before
+    public void before() throws IOException {
+        testDir = projectBuilDir.resolve("test-srcdeps-build-task");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+        SrcdepsCoreUtils.ensureDirectoryExists(testDir);
+    }
+
+    @Test
+    public void findExecutable() throws IOException {
+        final Path bin1 = testDir.resolve("bin1");
+        final Path bin2 = testDir.resolve("tools/gradle-3.5/bin");
+        Files.createDirectories(bin1);
+        Files.createDirectories(bin2);
+        final Path gradle = Files.write(bin2.resolve("gradle"), new byte[0]);
+        gradle.toFile().setExecutable(true);
+        /* not executable */
+        Files.write(bin1.resolve("mvn"), new byte[0]);
+
+        final String path = bin1 + File.pathSeparator + File.pathSeparator + bin2;
+        Assert.assertEquals(gradle.toRealPath().toString(), SrcdepsBuildTask.findExecutable("gradle", path));
+        Assert.assertNull(SrcdepsBuildTask.findExecutable("mvn", path));
+        Assert.assertNull(SrcdepsBuildTask.findExecutable("gradle", null));
+    }
+
+    @Test
+    public void register() throws IOException {
+        final Path srcdepsYaml = testDir.resolve("srcdeps.yaml");
+        Files.write(srcdepsYaml, ("configModelVersion: 2.2\n" //
+                + "repositories:\n" //
+                + "  org.src:\n" //
+                + "    includes:\n" //
+                + "    - org.src\n" //
+                + "    urls:\n" //
+                + "    - git:https://example.com/src.git\n").getBytes(StandardCharsets.UTF_8));
+        final SrcdepsService srcdepsService = Wiring.createInjector(srcdepsYaml,
+                new MavenLocalRepository(testDir.resolve("repository")), testDir.resolve("srcdeps"), BeanScanning.INDEX)
+                .getInstance(SrcdepsService.class);
+        final Project project = ProjectBuilder.builder().withProjectDir(testDir.resolve("project").toFile()).build();
+
+        final SourceDependency lib = new SourceDependency("org.src", "lib", SRC_VERSION);
+        final SourceDependency api = new SourceDependency("org.src", "api", SRC_VERSION);
+        final SrcdepsBuildTask task = SrcdepsBuildTask.register(project, srcdepsService, lib);
+        Assert.assertSame(task, SrcdepsBuildTask.register(project, srcdepsService, api));
+        Assert.assertSame(task, SrcdepsBuildTask.register(project, srcdepsService, lib));
+        Assert.assertEquals(Arrays.asList(lib, api), task.getDependencies());
+        final SourceDependency unmapped = new SourceDependency("org.other", "x", SRC_VERSION);
+        Assert.assertNull(SrcdepsBuildTask.register(project, srcdepsService, unmapped));
+
+        final Map<String, Object> inputs = task.getInputs().getProperties();
+        Assert.assertEquals(SRC_VERSION, inputs.get("version"));
+        Assert.assertFalse(inputs.containsKey("gradleVersion"));
+        Assert.assertEquals(String.valueOf(SrcdepsBuildTask.findExecutable("gradle", System.getenv("PATH"))),
+                inputs.get("gradleExecutable"));
+        Assert.assertEquals(2, task.getOutputs().getFiles().getFiles().size());
+
+        /* resolved only once the task graph is ready */
+        Assert.assertFalse(inputs.containsKey("commit"));
+        task.addCommitInput(srcdepsService);
+        Assert.assertEquals(SrcVersion.parse(SRC_VERSION).getScmVersion(),
+                task.getInputs().getProperties().get("commit"));
+    }
+
+    @Test
+    public void resolverDeferredUntilTaskGraphIsReady() {
+        final Project project = ProjectBuilder.builder().withProjectDir(testDir.resolve("project").toFile()).build();
+        final String original = System.getProperty(SrcdepsGradleOptions.TASKS);
+        try {
+            System.clearProperty(SrcdepsGradleOptions.TASKS);
+            Assert.assertFalse(SrcdepsResolver.isDeferred(project));
+
+            System.setProperty(SrcdepsGradleOptions.TASKS, "true");
+            Assert.assertTrue(SrcdepsResolver.isDeferred(project));
+            Assert.assertFalse(SrcdepsResolver.isDeferred(null));
+
+            project.getExtensions().getExtraProperties().set(SrcdepsResolver.TASK_GRAPH_READY, true);
+            Assert.assertFalse(SrcdepsResolver.isDeferred(project));
+        } finally {
+            if (original == null) {
+                System.clearProperty(SrcdepsGradleOptions.TASKS);
+            } else {
+                System.setProperty(SrcdepsGradleOptions.TASKS, original);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+public class SrcdepsLockfileTest {
+    private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+    private static final SourceDependency DEPENDENCY = new SourceDependency("org.example", "api",
+            "1.0-SRC-branch-master");
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+
+    private Path lockfilePath;
+    private MavenLocalRepository localRepository;
+    private Path versionDir;
+
+    @Before
+    public void before() throws IOException {
+        final Path testDir = projectBuilDir.resolve("test-srcdeps-lockfile");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+        localRepository = new MavenLocalRepository(testDir.resolve("repository"));
+        lockfilePath = testDir.resolve(SrcdepsLockfile.FILE_NAME);
+        versionDir = testDir.resolve("repository/org/example/api/1.0-SRC-branch-master");
+        Files.createDirectories(versionDir);
+        for (String fileName : new String[] { "api-1.0-SRC-branch-master.jar", "api-1.0-SRC-branch-master.pom",
+                "api-1.0-SRC-branch-master-sources.jar", "_remote.repositories" }) {
+            Files.write(versionDir.resolve(fileName), fileName.getBytes(StandardCharsets.UTF_8));
+        }
+        RefResolutionCache.writeInstalledCommit(versionDir, COMMIT);
+        new SrcdepsLockfile(lockfilePath, localRepository)
+                .write(Collections.singletonMap(DEPENDENCY, COMMIT));
+    }
+
+    @Test
+    public void builtFromOtherCommit() throws IOException {
+        RefResolutionCache.writeInstalledCommit(versionDir, "fedcba9876543210fedcba9876543210fedcba98");
+        Assert.assertEquals(SrcdepsLockfile.State.invalid,
+                new SrcdepsLockfile(lockfilePath, localRepository).check(DEPENDENCY));
+    }
+
+    @Test
+    public void corrupted() throws IOException {
+        final SrcdepsLockfile lockfile = new SrcdepsLockfile(lockfilePath, localRepository);
+        Assert.assertEquals(SrcdepsLockfile.State.valid, lockfile.check(DEPENDENCY));
+
+        /* same size, different content */
+        final Path pom = versionDir.resolve("api-1.0-SRC-branch-master.pom");
+        final FileTime lastModified = Files.getLastModifiedTime(pom);
+        Files.write(pom, "api-1.0-SRC-branch-master.xxx".getBytes(StandardCharsets.UTF_8));
+        /* make sure the modification is visible even on file systems with a coarse time resolution */
+        Files.setLastModifiedTime(pom, FileTime.fromMillis(lastModified.toMillis() + 2000));
+        Assert.assertEquals(SrcdepsLockfile.State.invalid, lockfile.check(DEPENDENCY));
+        /* left for the build to overwrite */
+        Assert.assertTrue(Files.exists(pom));
+    }
+
+    @Test
+    public void lockedCommit() {
+        final SrcdepsLockfile lockfile = new SrcdepsLockfile(lockfilePath, localRepository);
+        Assert.assertEquals(COMMIT, lockfile.getLockedCommit(DEPENDENCY));
+        Assert.assertNull(lockfile.getLockedCommit(new SourceDependency("org.example", "api", "1.0-SRC-branch-other")));
+    }
+
+    @Test
+    public void missingClassifier() throws IOException {
+        Files.delete(versionDir.resolve("api-1.0-SRC-branch-master-sources.jar"));
+        Assert.assertEquals(SrcdepsLockfile.State.invalid,
+                new SrcdepsLockfile(lockfilePath, localRepository).check(DEPENDENCY));
+    }
+
+    @Test
+    public void notLocked() {
+        Assert.assertEquals(SrcdepsLockfile.State.notLocked, new SrcdepsLockfile(lockfilePath, localRepository)
+                .check(new SourceDependency("org.example", "api", "1.0-SRC-branch-other")));
+    }
+
+    @Test
+    public void otherMachine() throws IOException {
+        /* the same files built elsewhere differ in their timestamps and thus in their checksums */
+        Files.write(versionDir.resolve("api-1.0-SRC-branch-master.jar"), new byte[] { 1, 2, 3 });
+        SrcdepsLockfile.deleteStamps(versionDir);
+        Assert.assertEquals(SrcdepsLockfile.State.valid,
+                new SrcdepsLockfile(lockfilePath, localRepository).check(DEPENDENCY));
+    }
+
+    @Test
+    public void persistedStamps() throws IOException {
+        Assert.assertEquals(SrcdepsLockfile.State.valid,
+                new SrcdepsLockfile(lockfilePath, localRepository).check(DEPENDENCY));
+        final Path jar = versionDir.resolve("api-1.0-SRC-branch-master.jar");
+        final Map<String, SrcdepsLockfile.Stamp> stamps = SrcdepsLockfile.readStamps(versionDir);
+        Assert.assertEquals(3, stamps.size());
+        Assert.assertEquals(Files.getLastModifiedTime(jar).toMillis(),
+                stamps.get("api-1.0-SRC-branch-master.jar").getLastModified());
+
+        /* a wrong checksum is trusted as long as the size and the modification time match, i.e. no file is hashed */
+        final SrcdepsLockfile.Stamp jarStamp = stamps.get(jar.getFileName().toString());
+        stamps.put(jar.getFileName().toString(), new SrcdepsLockfile.Stamp(COMMIT, jarStamp.getSize(),
+                jarStamp.getLastModified()));
+        SrcdepsLockfile.writeStamps(versionDir, stamps);
+        Assert.assertEquals(SrcdepsLockfile.State.valid,
+                new SrcdepsLockfile(lockfilePath, localRepository).check(DEPENDENCY));
+
+        /* a new modification time forces hashing the file again */
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(jarStamp.getLastModified() + 2000));
+        Assert.assertEquals(SrcdepsLockfile.State.invalid,
+                new SrcdepsLockfile(lockfilePath, localRepository).check(DEPENDENCY));
+
+        /* after a build, the files are stamped again */
+        SrcdepsLockfile.deleteStamps(versionDir);
+        Assert.assertEquals(SrcdepsLockfile.State.valid,
+                new SrcdepsLockfile(lockfilePath, localRepository).check(DEPENDENCY));
+        Assert.assertEquals(jarStamp.getSha1(),
+                SrcdepsLockfile.readStamps(versionDir).get(jar.getFileName().toString()).getSha1());
+    }
+
+    @Test
+    public void readLegacyFormat() throws IOException {
+        Files.write(lockfilePath, Arrays.asList("org.example:api:1.0-SRC-branch-master " + COMMIT,
+                "    " + COMMIT + " 29 api-1.0-SRC-branch-master.jar"), StandardCharsets.UTF_8);
+        final SrcdepsLockfile.Entry entry = SrcdepsLockfile.read(lockfilePath).get(DEPENDENCY);
+        Assert.assertEquals(Collections.singleton("api-1.0-SRC-branch-master.jar"), entry.getFiles());
+    }
+
+    @Test
+    public void readWritten() throws IOException {
+        final Map<SourceDependency, SrcdepsLockfile.Entry> entries = SrcdepsLockfile.read(lockfilePath);
+        Assert.assertEquals(1, entries.size());
+        final SrcdepsLockfile.Entry entry = entries.get(DEPENDENCY);
+        Assert.assertEquals(COMMIT, entry.getCommit());
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("api-1.0-SRC-branch-master-sources.jar",
+                "api-1.0-SRC-branch-master.jar", "api-1.0-SRC-branch-master.pom")), entry.getFiles());
+        /* nothing machine dependent */
+        for (String line : Files.readAllLines(lockfilePath, StandardCharsets.UTF_8)) {
+            Assert.assertFalse(line, line.contains(" 29 "));
+        }
+        Assert.assertEquals(SrcdepsLockfile.State.valid,
+                new SrcdepsLockfile(lockfilePath, localRepository).check(DEPENDENCY));
+    }
+}
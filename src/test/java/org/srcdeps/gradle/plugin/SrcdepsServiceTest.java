@@ -0,0 +1,235 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.srcdeps.core.BuildException;
+import org.srcdeps.core.BuildRequest;
+import org.srcdeps.core.BuildService;
+import org.srcdeps.core.Gavtc;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.SrcVersion;
+import org.srcdeps.core.config.ConfigurationException;
+import org.srcdeps.core.config.ScmRepository;
+import org.srcdeps.core.fs.BuildDirectoriesManager;
+import org.srcdeps.core.fs.PathLocker;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+import org.srcdeps.gradle.plugin.SrcdepsGradleOptions.NestedBuildMode;
+
+public class SrcdepsServiceTest {
+    private static final String REVISION = "1.0-SRC-revision-0123456789abcdef0123456789abcdef01234567";
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+
+    /**
+     * A {@link BuildService} that does not build anything and just counts the requests and creates the given files.
+     */
+    static class CountingBuildService implements BuildService {
+        private int count;
+        private final Path[] installs;
+
+        CountingBuildService(Path... installs) {
+            super();
+            this.installs = installs;
+        }
+
+        @Override
+        public synchronized void build(BuildRequest request) throws BuildException {
+            count++;
+            try {
+                for (Path install : installs) {
+                    Files.createDirectories(install.getParent());
+                    Files.write(install, String.valueOf(count).getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                throw new BuildException("Could not install", e);
+            }
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+    }
+
+    private static RevCommit commit(Git git, String content) throws IOException, GitAPIException {
+        final Path file = git.getRepository().getWorkTree().toPath().resolve("file.txt");
+        Files.write(file, Collections.singletonList(content), StandardCharsets.UTF_8);
+        git.add().addFilepattern("file.txt").call();
+        return git.commit().setMessage(content).call();
+    }
+
+    private Path testDir;
+
+    @Before
+    public void before() throws IOException {
+        testDir = projectBuilDir.resolve("test-srcdeps-service");
+        SrcdepsCoreUtils.deleteDirectory(testDir);
+        SrcdepsCoreUtils.ensureDirectoryExists(testDir);
+    }
+
+    private SrcdepsService newService(Path srcdepsYaml, Path localRepo, BuildService buildService) {
+        final Path srcdepsDir = testDir.resolve("srcdeps");
+        final MavenLocalRepository localRepository = new MavenLocalRepository(localRepo);
+        final ConfigurationService configurationService = new ConfigurationService(srcdepsYaml);
+        return new SrcdepsService(configurationService,
+                new BuildDirectoriesManager(srcdepsDir, new PathLocker<SrcVersion>()), buildService, localRepository,
+                new BuildRegistry(), new ArtifactCache(localRepository, testDir.resolve("cache")),
+                new GitMirrors(srcdepsDir), new BuildDirectoryEvictor(srcdepsDir), new BuildTimings(),
+                new SrcdepsLockfile(configurationService, localRepository), new RefResolutionCache(srcdepsDir),
+                new BuildLogs(srcdepsDir), new NestedBuildSlots(), new BuildHistory(srcdepsDir));
+    }
+
+    private Path writeSrcdepsYaml(String url, String... includes) throws IOException {
+        final StringBuilder yaml = new StringBuilder("configModelVersion: 2.2\n") //
+                .append("repositories:\n") //
+                .append("  org.example:\n") //
+                .append("    includes:\n");
+        for (String include : includes) {
+            yaml.append("    - '").append(include).append("'\n");
+        }
+        yaml.append("    urls:\n") //
+                .append("    - ").append(url).append("\n");
+        final Path result = testDir.resolve("srcdeps.yaml");
+        Files.write(result, yaml.toString().getBytes(StandardCharsets.UTF_8));
+        return result;
+    }
+
+    @Test
+    public void adjustForNestedBuildMode() {
+        final List<String> args = Arrays.asList("clean", "install");
+        Assert.assertEquals(Arrays.asList("clean", "install", "--daemon"),
+                SrcdepsService.adjustForNestedBuildMode(args, BuildTool.gradle, NestedBuildMode.warm));
+        Assert.assertSame(args, SrcdepsService.adjustForNestedBuildMode(args, BuildTool.gradle, NestedBuildMode.fork));
+        Assert.assertSame(args, SrcdepsService.adjustForNestedBuildMode(args, BuildTool.maven, NestedBuildMode.warm));
+        Assert.assertSame(args,
+                SrcdepsService.adjustForNestedBuildMode(args, BuildTool.unknown, NestedBuildMode.warm));
+
+        final List<String> noDaemon = Arrays.asList("install", "--no-daemon");
+        Assert.assertSame(noDaemon,
+                SrcdepsService.adjustForNestedBuildMode(noDaemon, BuildTool.gradle, NestedBuildMode.warm));
+        final List<String> daemon = Arrays.asList("install", "--daemon");
+        Assert.assertSame(daemon,
+                SrcdepsService.adjustForNestedBuildMode(daemon, BuildTool.gradle, NestedBuildMode.warm));
+    }
+
+    @Test
+    public void cacheKeyDoesNotDependOnLocalRepository() throws IOException {
+        final Path srcdepsYaml = writeSrcdepsYaml("git:https://example.com/repo.git", "org.example");
+        final CountingBuildService buildService = new CountingBuildService();
+        final SrcdepsService service1 = newService(srcdepsYaml, testDir.resolve("repository1"), buildService);
+        final SrcdepsService service2 = newService(srcdepsYaml, testDir.resolve("repository2"), buildService);
+        final SourceDependency dependency = new SourceDependency("org.example", "lib", REVISION);
+        final ScmRepository scmRepo = service1.findScmRepository(dependency);
+        final SrcVersion srcVersion = SrcVersion.parse(REVISION);
+
+        Assert.assertNotEquals(service1.getBuildArguments(scmRepo), service2.getBuildArguments(scmRepo));
+        Assert.assertNotNull(service1.cacheKey(scmRepo, srcVersion));
+        Assert.assertEquals(service1.cacheKey(scmRepo, srcVersion), service2.cacheKey(scmRepo, srcVersion));
+    }
+
+    @Test
+    public void checkLockedCommit() throws IOException, ConfigurationException, BuildException {
+        final Path srcdepsYaml = writeSrcdepsYaml("git:https://example.com/repo.git", "org.example");
+        final ScmRepository scmRepo = ConfigurationService
+                .readScmRepositoryIndex(new String(Files.readAllBytes(srcdepsYaml), StandardCharsets.UTF_8))
+                .find("org.example", "lib", "1.0-SRC-branch-master");
+        final SrcVersion srcVersion = SrcVersion.parse("1.0-SRC-branch-master");
+        final String locked = "0123456789abcdef0123456789abcdef01234567";
+        SrcdepsService.checkLockedCommit(scmRepo, srcVersion, locked, locked);
+        SrcdepsService.checkLockedCommit(scmRepo, srcVersion, null, "fedcba9876543210fedcba9876543210fedcba98");
+        SrcdepsService.checkLockedCommit(scmRepo, srcVersion, locked, null);
+        try {
+            SrcdepsService.checkLockedCommit(scmRepo, srcVersion, locked, "fedcba9876543210fedcba9876543210fedcba98");
+            Assert.fail("BuildException expected");
+        } catch (BuildException expected) {
+            Assert.assertTrue(expected.getMessage().contains(locked));
+        }
+    }
+
+    @Test
+    public void findOwnVersionDirectories() throws IOException, ConfigurationException {
+        final String version = "1.0-SRC-branch-master";
+        final Path srcdepsYaml = writeSrcdepsYaml("git:https://example.com/repo.git", "org.example:lib",
+                "org.example:api");
+        final ScmRepository scmRepo = ConfigurationService
+                .readScmRepositoryIndex(new String(Files.readAllBytes(srcdepsYaml), StandardCharsets.UTF_8))
+                .find("org.example", "lib", version);
+        final Path localRepo = testDir.resolve("repository");
+        final MavenLocalRepository localRepository = new MavenLocalRepository(localRepo);
+        for (String artifactId : Arrays.asList("lib", "api", "other")) {
+            /* other is built from another SCM repository using the same branch */
+            SrcdepsCoreUtils
+                    .ensureDirectoryExists(localRepo.resolve("org/example").resolve(artifactId).resolve(version));
+        }
+        final List<Path> found = SrcdepsService.findOwnVersionDirectories(
+                new ArtifactCache(localRepository, testDir.resolve("cache")), scmRepo, version,
+                Collections.singleton("org.example"));
+        Assert.assertEquals(new TreeSet<>(Arrays.asList(localRepo.resolve("org/example/api").resolve(version),
+                localRepo.resolve("org/example/lib").resolve(version))), new TreeSet<>(found));
+    }
+
+    @Test
+    public void installedGroupIds() throws IOException, ConfigurationException {
+        final Path srcdepsYaml = writeSrcdepsYaml("git:https://example.com/repo.git", "org.example", "org.acme.*:*",
+                "com.exam*", "*:foo");
+        final ScmRepository scmRepo = ConfigurationService
+                .readScmRepositoryIndex(new String(Files.readAllBytes(srcdepsYaml), StandardCharsets.UTF_8))
+                .find("org.example", "lib", REVISION);
+        /* wildcard includes are not expanded */
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("org.example", "org.example.lib")),
+                SrcdepsService.getInstalledGroupIds(scmRepo, Collections.singleton("org.example.lib"), null));
+    }
+
+    @Test
+    public void movedRefRebuiltOnce() throws IOException, GitAPIException {
+        final String version = "1.0-SRC-branch-master";
+        final Path upstreamDir = testDir.resolve("upstream");
+        final Path localRepo = testDir.resolve("repository");
+        final Path jar = new MavenLocalRepository(localRepo).resolve(new Gavtc("org.example", "lib", version, "jar"));
+        final CountingBuildService buildService = new CountingBuildService(jar);
+        final String ttlKey = SrcdepsGradleOptions.REFS_TTL + ".org.example";
+        System.setProperty(ttlKey, "3600");
+        try (Git upstream = Git.init().setDirectory(upstreamDir.toFile()).call()) {
+            final RevCommit c1 = commit(upstream, "1");
+            final SrcdepsService service = newService(writeSrcdepsYaml("git:" + upstreamDir.toUri(), "org.example"),
+                    localRepo, buildService);
+            service.buildIfNecessary("org.example", "lib", version);
+            service.buildFinished();
+            Assert.assertEquals(1, buildService.getCount());
+            Assert.assertEquals(c1.name(), RefResolutionCache.readInstalledCommit(jar.getParent()));
+
+            /* the branch moves within the time to live and something forces a rebuild */
+            final RevCommit c2 = commit(upstream, "2");
+            Files.delete(jar);
+            service.buildIfNecessary("org.example", "lib", version);
+            service.buildFinished();
+            Assert.assertEquals(2, buildService.getCount());
+            Assert.assertEquals(c2.name(), RefResolutionCache.readInstalledCommit(jar.getParent()));
+
+            /* the resolution agrees with the rebuilt commit, in this JVM and in the next one */
+            for (int i = 0; i < 3; i++) {
+                service.buildIfNecessary("org.example", "lib", version);
+                service.buildFinished();
+            }
+            newService(writeSrcdepsYaml("git:" + upstreamDir.toUri(), "org.example"), localRepo, buildService)
+                    .buildIfNecessary("org.example", "lib", version);
+            Assert.assertEquals(2, buildService.getCount());
+        } finally {
+            System.clearProperty(ttlKey);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.srcdeps.gradle.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.sisu.space.BeanScanning;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.srcdeps.core.BuildService;
+import org.srcdeps.core.MavenLocalRepository;
+import org.srcdeps.core.util.SrcdepsCoreUtils;
+
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+
+public class WiringTest {
+    private static final Path projectBuilDir = Paths
+            .get(System.getProperty("project.build.directory", new File("build").getAbsolutePath()));
+    private static Path testDir;
+
+    /**
+     * @return the sorted names of the classes provided by the explicit {@link Binding}s of the given
+     *         {@link Injector} whose {@link Key}s refer to the {@code org.srcdeps} namespace
+     */
+    private static Set<String> srcdepsComponents(Injector injector) {
+        Set<String> result = new TreeSet<>();
+        for (Map.Entry<Key<?>, Binding<?>> en : injector.getBindings().entrySet()) {
+            if (en.getKey().toString().contains("org.srcdeps.")) {
+                result.add(en.getValue().getProvider().get().getClass().getName());
+            }
+        }
+        return result;
+    }
+
+    private static Injector createInjector(BeanScanning scanning) {
+        final MavenLocalRepository localRepository = new MavenLocalRepository(testDir.resolve("repository"));
+        return Wiring.createInjector(testDir.resolve("srcdeps.yaml"), localRepository, testDir.resolve("srcdeps"),
+                scanning);
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        testDir = projectBuilDir.resolve("test-wiring");
+        SrcdepsCoreUtils.ensureDirectoryExists(testDir);
+    }
+
+    @Test
+    public void indexedResolvesTheSameAsScanning() {
+        final Injector indexed = createInjector(BeanScanning.INDEX);
+        final Injector scanning = createInjector(BeanScanning.ON);
+
+        Assert.assertNotNull(indexed.getInstance(SrcdepsService.class));
+        Assert.assertNotNull(indexed.getInstance(ConfigurationService.class));
+        Assert.assertEquals(scanning.getInstance(BuildService.class).getClass(),
+                indexed.getInstance(BuildService.class).getClass());
+
+        Assert.assertEquals(srcdepsComponents(scanning), srcdepsComponents(indexed));
+    }
+
+    @Test
+    public void indexListsAllNamedPluginComponents() {
+        final Set<String> components = srcdepsComponents(createInjector(BeanScanning.INDEX));
+        for (Class<?> cl : new Class<?>[] { ArtifactCache.class, BuildDirectoryEvictor.class, BuildHistory.class,
+                BuildLogs.class, BuildRegistry.class, BuildTimings.class, ConfigurationService.class, GitMirrors.class,
+                NestedBuildSlots.class, RefResolutionCache.class, SrcdepsLockfile.class, SrcdepsService.class }) {
+            Assert.assertTrue(cl.getName() + " not found in " + components, components.contains(cl.getName()));
+        }
+    }
+
+    @Test
+    public void inputs() throws IOException {
+        final Path dir = testDir.resolve("inputs");
+        SrcdepsCoreUtils.deleteDirectory(dir);
+        SrcdepsCoreUtils.ensureDirectoryExists(dir);
+        final Path srcdepsYaml = dir.resolve("srcdeps.yaml");
+        final MavenLocalRepository localRepository = new MavenLocalRepository(dir.resolve("repository"));
+
+        final List<Object> initial = Wiring.getInputs(srcdepsYaml, localRepository);
+        Assert.assertEquals(initial, Wiring.getInputs(srcdepsYaml, localRepository));
+
+        Files.write(srcdepsYaml, "configModelVersion: 2.2\n".getBytes(StandardCharsets.UTF_8));
+        final List<Object> withYaml = Wiring.getInputs(srcdepsYaml, localRepository);
+        Assert.assertNotEquals(initial, withYaml);
+
+        Files.write(dir.resolve(SrcdepsLockfile.FILE_NAME), "{}".getBytes(StandardCharsets.UTF_8));
+        final List<Object> withLockfile = Wiring.getInputs(srcdepsYaml, localRepository);
+        Assert.assertNotEquals(withYaml, withLockfile);
+
+        final String key = SrcdepsGradleOptions.GIT_MIRRORS;
+        final String original = System.getProperty(key);
+        System.setProperty(key, "false");
+        try {
+            Assert.assertNotEquals(withLockfile, Wiring.getInputs(srcdepsYaml, localRepository));
+        } finally {
+            if (original == null) {
+                System.clearProperty(key);
+            } else {
+                System.setProperty(key, original);
+            }
+        }
+        Assert.assertEquals(withLockfile, Wiring.getInputs(srcdepsYaml, localRepository));
+        Assert.assertNotEquals(withLockfile,
+                Wiring.getInputs(srcdepsYaml, new MavenLocalRepository(dir.resolve("other-repository"))));
+    }
+
+}